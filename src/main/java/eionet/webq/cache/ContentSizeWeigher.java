@@ -0,0 +1,42 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.cache;
+
+import com.google.common.cache.Weigher;
+import eionet.webq.dao.orm.ProjectFile;
+
+/**
+ * Weighs cached files and contents by their size in bytes, so that caches could be bounded by memory they take.
+ * Other values weigh 1.
+ */
+public class ContentSizeWeigher implements Weigher<Object, Object> {
+
+    @Override
+    public int weigh(Object key, Object value) {
+        long size = 0;
+        if (value instanceof ProjectFile) {
+            size = ((ProjectFile) value).getFileSizeInBytes();
+        } else if (value instanceof byte[]) {
+            size = ((byte[]) value).length;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, size));
+    }
+}
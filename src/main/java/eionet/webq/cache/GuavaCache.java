@@ -17,7 +17,16 @@ package eionet.webq.cache;
 
 import java.io.Serializable;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import org.apache.log4j.Logger;
 import org.springframework.cache.Cache;
 import org.springframework.cache.support.SimpleValueWrapper;
 import org.springframework.util.Assert;
@@ -27,6 +36,13 @@ import org.springframework.util.Assert;
  * {@link com.google.common.cache.Cache} instance.
  *
  * <p>
+ * If refresh interval is set, values loaded through {@link #get(Object, Callable)}
+ * are stored together with their value loader and reloaded with it once they are
+ * read after refresh interval. The stale value is returned while reload is in
+ * progress and kept if reload fails. Values stored through
+ * {@link #put(Object, Object)} are kept as they are.
+ *
+ * <p>
  * Requires Google Guava 12.0 or higher.
  *
  * @author Juergen Hoeller
@@ -35,6 +51,8 @@ import org.springframework.util.Assert;
  */
 public class GuavaCache implements Cache {
 
+    private static final Logger LOGGER = Logger.getLogger(GuavaCache.class);
+
     private static final Object NULL_HOLDER = new NullHolder();
 
     private final String name;
@@ -43,6 +61,12 @@ public class GuavaCache implements Cache {
 
     private final boolean allowNullValues;
 
+    private final long refreshNanos;
+
+    private final Ticker ticker;
+
+    private final Executor reloadExecutor;
+
     /**
      * Create a {@link GuavaCache} instance.
      *
@@ -62,11 +86,33 @@ public class GuavaCache implements Cache {
      * cache
      */
     public GuavaCache(String name, com.google.common.cache.Cache<Object, Object> cache, boolean allowNullValues) {
+        this(name, cache, allowNullValues, 0, Ticker.systemTicker(), null);
+    }
+
+    /**
+     * Create a {@link GuavaCache} instance.
+     *
+     * @param name the name of the cache
+     * @param cache backing Guava Cache instance
+     * @param allowNullValues whether to accept and convert null values for this
+     * cache
+     * @param refreshNanos refresh interval of loaded values, 0 if values are not
+     * refreshed
+     * @param ticker time source for refresh interval
+     * @param reloadExecutor executor for reloads, or null to reload in the thread
+     * reading the value
+     */
+    public GuavaCache(String name, com.google.common.cache.Cache<Object, Object> cache, boolean allowNullValues,
+            long refreshNanos, Ticker ticker, Executor reloadExecutor) {
         Assert.notNull(name, "Name must not be null");
         Assert.notNull(cache, "Cache must not be null");
+        Assert.notNull(ticker, "Ticker must not be null");
         this.name = name;
         this.cache = cache;
         this.allowNullValues = allowNullValues;
+        this.refreshNanos = refreshNanos;
+        this.ticker = ticker;
+        this.reloadExecutor = reloadExecutor;
     }
 
     @Override
@@ -83,20 +129,56 @@ public class GuavaCache implements Cache {
         return this.allowNullValues;
     }
 
+    public final boolean isRefreshing() {
+        return this.refreshNanos > 0;
+    }
+
+    /**
+     * Approximate number of entries in this cache.
+     *
+     * @return cache size
+     */
+    public long size() {
+        return this.cache.size();
+    }
+
     @Override
     public ValueWrapper get(Object key) {
         Object value = this.cache.getIfPresent(key);
+        refreshIfDue(key, value);
         return toWrapper(value);
     }
 
     @Override
-    public <T> T get(Object o, Class<T> aClass) {
-        return null;
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        Object storeValue = this.cache.getIfPresent(key);
+        refreshIfDue(key, storeValue);
+        Object value = fromStoreValue(storeValue);
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException(
+                    "Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
     }
 
     @Override
-    public <T> T get(Object o, Callable<T> callable) {
-        return null;
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, final Callable<T> valueLoader) {
+        try {
+            Object value = this.cache.get(key, new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return loadedValue(valueLoader);
+                }
+            });
+            refreshIfDue(key, value);
+            return (T) fromStoreValue(value);
+        } catch (ExecutionException ex) {
+            throw new ValueRetrievalException(key, valueLoader, ex.getCause());
+        } catch (UncheckedExecutionException ex) {
+            throw new ValueRetrievalException(key, valueLoader, ex.getCause());
+        }
     }
 
     @Override
@@ -105,8 +187,10 @@ public class GuavaCache implements Cache {
     }
 
     @Override
-    public ValueWrapper putIfAbsent(Object o, Object o1) {
-        return null;
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        Object existing = this.cache.asMap().putIfAbsent(key, toStoreValue(value));
+        refreshIfDue(key, existing);
+        return toWrapper(existing);
     }
 
     @Override
@@ -119,6 +203,72 @@ public class GuavaCache implements Cache {
         this.cache.invalidateAll();
     }
 
+    /**
+     * Return hit, miss, load time and eviction statistics of this cache.
+     * Statistics are collected only if backing cache is built with {@code recordStats}.
+     *
+     * @return cache statistics
+     */
+    public CacheStats getStats() {
+        return this.cache.stats();
+    }
+
+    /**
+     * Load value, storing it together with its value loader if this cache is refreshing.
+     *
+     * @param valueLoader value loader
+     * @return value to store
+     * @throws Exception if value loader fails
+     */
+    private Object loadedValue(Callable<?> valueLoader) throws Exception {
+        Object storeValue = toStoreValue(valueLoader.call());
+        if (isRefreshing() && storeValue != null) {
+            return new LoadedValue(storeValue, valueLoader, this.ticker.read());
+        }
+        return storeValue;
+    }
+
+    /**
+     * Start reload of loaded value if its refresh interval has passed and it is not being reloaded already.
+     * Reloaded value replaces the old one unless the entry was changed meanwhile.
+     *
+     * @param key the key
+     * @param value stored value
+     */
+    private void refreshIfDue(final Object key, Object value) {
+        if (!(value instanceof LoadedValue)) {
+            return;
+        }
+        final LoadedValue loaded = (LoadedValue) value;
+        if (this.ticker.read() - loaded.loadedAt < this.refreshNanos || !loaded.reloading.compareAndSet(false, true)) {
+            return;
+        }
+        Runnable reload = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Object reloaded = loadedValue(loaded.valueLoader);
+                    if (reloaded != null) {
+                        cache.asMap().replace(key, loaded, reloaded);
+                    }
+                } catch (Exception e) {
+                    LOGGER.warn("Unable to reload value of cache=" + name + ", key=" + key + ", keeping stale value", e);
+                } finally {
+                    loaded.reloading.set(false);
+                }
+            }
+        };
+        if (this.reloadExecutor == null) {
+            reload.run();
+            return;
+        }
+        try {
+            this.reloadExecutor.execute(reload);
+        } catch (RejectedExecutionException e) {
+            loaded.reloading.set(false);
+        }
+    }
+
     /**
      * Convert the given value from the internal store to a user value returned
      * from the get method (adapting {@code null}).
@@ -127,6 +277,9 @@ public class GuavaCache implements Cache {
      * @return the value to return to the user
      */
     protected Object fromStoreValue(Object storeValue) {
+        if (storeValue instanceof LoadedValue) {
+            storeValue = ((LoadedValue) storeValue).value;
+        }
         if (this.allowNullValues && storeValue == NULL_HOLDER) {
             return null;
         }
@@ -155,4 +308,39 @@ public class GuavaCache implements Cache {
     private static class NullHolder implements Serializable {
     }
 
+    /**
+     * Value stored together with value loader it was loaded with and load time, so that it could be reloaded.
+     */
+    private static final class LoadedValue {
+        /**
+         * Store value.
+         */
+        private final Object value;
+        /**
+         * Value loader.
+         */
+        private final Callable<?> valueLoader;
+        /**
+         * Ticker reading at load time.
+         */
+        private final long loadedAt;
+        /**
+         * Whether reload of this value is in progress.
+         */
+        private final AtomicBoolean reloading = new AtomicBoolean();
+
+        /**
+         * Create loaded value.
+         *
+         * @param value store value
+         * @param valueLoader value loader
+         * @param loadedAt ticker reading at load time
+         */
+        private LoadedValue(Object value, Callable<?> valueLoader, long loadedAt) {
+            this.value = value;
+            this.valueLoader = valueLoader;
+            this.loadedAt = loadedAt;
+        }
+    }
+
 }
@@ -18,12 +18,18 @@ package eionet.webq.cache;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
+import com.google.common.base.Ticker;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheBuilderSpec;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.Weigher;
 
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
@@ -43,6 +49,12 @@ import org.springframework.util.Assert;
  * the {@link #setCacheSpecification "cacheSpecification"} bean property.
  *
  * <p>
+ * Caches having refresh interval set through {@link #setCacheRefreshIntervals}
+ * reload values in background through {@link #setReloadExecutor "reloadExecutor"},
+ * serving stale values meanwhile, see {@link GuavaCache}.
+ * Statistics are recorded for all caches, see {@link GuavaCache#getStats()}.
+ *
+ * <p>
  * Requires Google Guava 12.0 or higher.
  *
  * @author Juergen Hoeller
@@ -59,8 +71,16 @@ public class GuavaCacheManager implements CacheManager {
 
     private CacheLoader<Object, Object> cacheLoader;
 
+    private Map<String, CacheBuilderSpec> cacheSpecifications = Collections.emptyMap();
+
+    private Map<String, Weigher<Object, Object>> cacheWeighers = Collections.emptyMap();
+
     private boolean allowNullValues = true;
 
+    private Map<String, Long> cacheRefreshIntervals = Collections.emptyMap();
+
+    private Executor reloadExecutor;
+
     /**
      * Construct a dynamic GuavaCacheManager, lazily creating cache instances as
      * they are being requested.
@@ -126,6 +146,55 @@ public class GuavaCacheManager implements CacheManager {
         this.cacheBuilder = CacheBuilder.from(cacheSpecification);
     }
 
+    /**
+     * Set Guava cache specification Strings for individual caches, overriding
+     * the default specification for these caches. Caches bounded by
+     * {@code maximumWeight} must have their weigher set beforehand through
+     * {@link #setCacheWeighers}.
+     *
+     * @see com.google.common.cache.CacheBuilderSpec#parse(String)
+     */
+    public void setCacheSpecifications(Map<String, String> cacheSpecifications) {
+        Map<String, CacheBuilderSpec> specifications = new HashMap<String, CacheBuilderSpec>();
+        for (Map.Entry<String, String> specification : cacheSpecifications.entrySet()) {
+            specifications.put(specification.getKey(), CacheBuilderSpec.parse(specification.getValue()));
+        }
+        this.cacheSpecifications = specifications;
+        refreshKnownCaches();
+    }
+
+    /**
+     * Set refresh intervals in seconds for individual caches. Values loaded into
+     * these caches are reloaded with their value loaders once read after the
+     * interval, see {@link GuavaCache}. Guava's own {@code refreshAfterWrite}
+     * requires a cache loader and is not supported in specifications.
+     */
+    public void setCacheRefreshIntervals(Map<String, Long> cacheRefreshIntervals) {
+        this.cacheRefreshIntervals = new HashMap<String, Long>(cacheRefreshIntervals);
+        refreshKnownCaches();
+    }
+
+    /**
+     * Set Guava Weighers for individual caches. A weigher is applied only to a
+     * cache having its own specification set through
+     * {@link #setCacheSpecifications}.
+     *
+     * @see com.google.common.cache.CacheBuilder#weigher(Weigher)
+     */
+    public void setCacheWeighers(Map<String, Weigher<Object, Object>> cacheWeighers) {
+        this.cacheWeighers = new HashMap<String, Weigher<Object, Object>>(cacheWeighers);
+        refreshKnownCaches();
+    }
+
+    /**
+     * Set the executor reloading values of caches with refresh interval. Without executor values are reloaded in the thread reading
+     * them.
+     */
+    public void setReloadExecutor(Executor reloadExecutor) {
+        this.reloadExecutor = reloadExecutor;
+        refreshKnownCaches();
+    }
+
     /**
      * Set the Guava CacheLoader to use for building each individual
      * {@link GuavaCache} instance, turning it into a LoadingCache.
@@ -185,7 +254,8 @@ public class GuavaCacheManager implements CacheManager {
      * @return the Spring GuavaCache adapter (or a decorator thereof)
      */
     protected Cache createGuavaCache(String name) {
-        return new GuavaCache(name, createNativeGuavaCache(name), isAllowNullValues());
+        return new GuavaCache(name, createNativeGuavaCache(name), isAllowNullValues(), refreshNanos(name),
+                Ticker.systemTicker(), this.reloadExecutor);
     }
 
     /**
@@ -195,10 +265,40 @@ public class GuavaCacheManager implements CacheManager {
      * @return the native Guava Cache instance
      */
     protected com.google.common.cache.Cache<Object, Object> createNativeGuavaCache(String name) {
+        CacheBuilder<Object, Object> builder = this.cacheBuilder;
+        CacheBuilderSpec specification = this.cacheSpecifications.get(name);
+        if (specification != null) {
+            builder = CacheBuilder.from(specification);
+            Weigher<Object, Object> weigher = this.cacheWeighers.get(name);
+            if (weigher != null) {
+                builder = builder.weigher(weigher);
+            }
+        }
+        builder.recordStats();
         if (this.cacheLoader != null) {
-            return this.cacheBuilder.build(this.cacheLoader);
+            return builder.build(this.cacheLoader);
         } else {
-            return this.cacheBuilder.build();
+            return builder.build();
+        }
+    }
+
+    /**
+     * Refresh interval of cache with the specified name.
+     *
+     * @param name the name of the cache
+     * @return refresh interval in nanoseconds, 0 if cache is not refreshed
+     */
+    private long refreshNanos(String name) {
+        Long refreshInterval = this.cacheRefreshIntervals.get(name);
+        return refreshInterval != null ? TimeUnit.SECONDS.toNanos(refreshInterval) : 0;
+    }
+
+    /**
+     * Recreate known caches, so that changed configuration is applied to them.
+     */
+    private void refreshKnownCaches() {
+        for (Map.Entry<String, Cache> entry : this.cacheMap.entrySet()) {
+            entry.setValue(createGuavaCache(entry.getKey()));
         }
     }
 
@@ -0,0 +1,429 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.spi.CacheDataDescription;
+import org.hibernate.cache.spi.CollectionRegion;
+import org.hibernate.cache.spi.EntityRegion;
+import org.hibernate.cache.spi.NaturalIdRegion;
+import org.hibernate.cache.spi.QueryResultsRegion;
+import org.hibernate.cache.spi.Region;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cache.spi.TimestampsRegion;
+import org.hibernate.cache.spi.access.AccessType;
+import org.hibernate.cache.spi.access.CollectionRegionAccessStrategy;
+import org.hibernate.cache.spi.access.EntityRegionAccessStrategy;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.cfg.Settings;
+import org.springframework.cache.CacheManager;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hibernate second-level cache backed by caches of {@link GuavaCacheManager}. Each region is a cache with the same
+ * name, which must be configured in cache manager, so that region size, expiry and statistics are managed together
+ * with other application caches. Entity and collection regions support read-only and nonstrict-read-write access.
+ * Update timestamps region is the exception: query results are valid only as long as timestamps of tables they depend
+ * on are known, so timestamps are kept in a cache owned by this factory, without size or expiry limits, and cannot
+ * be evicted or cleared through cache manager.
+ */
+public class GuavaRegionFactory implements RegionFactory {
+    /**
+     * Serial version.
+     */
+    private static final long serialVersionUID = 1L;
+    /**
+     * Timestamp units per millisecond, allows to generate distinct timestamps within one millisecond.
+     */
+    private static final int TIMESTAMPS_PER_MILLISECOND = 1 << 12;
+    /**
+     * Time in timestamp units to consider query spaces locked while being updated.
+     */
+    private static final int LOCK_TIMEOUT = 60000 * TIMESTAMPS_PER_MILLISECOND;
+    /**
+     * Last generated timestamp.
+     */
+    private static final AtomicLong LAST_TIMESTAMP = new AtomicLong();
+    /**
+     * Cache manager providing region caches.
+     */
+    private final CacheManager cacheManager;
+
+    /**
+     * Creates region factory.
+     *
+     * @param cacheManager cache manager providing region caches
+     */
+    public GuavaRegionFactory(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    @Override
+    public void start(Settings settings, Properties properties) throws CacheException {
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public boolean isMinimalPutsEnabledByDefault() {
+        return true;
+    }
+
+    @Override
+    public AccessType getDefaultAccessType() {
+        return AccessType.NONSTRICT_READ_WRITE;
+    }
+
+    @Override
+    public long nextTimestamp() {
+        long now = System.currentTimeMillis() * TIMESTAMPS_PER_MILLISECOND;
+        while (true) {
+            long last = LAST_TIMESTAMP.get();
+            long next = Math.max(now, last + 1);
+            if (LAST_TIMESTAMP.compareAndSet(last, next)) {
+                return next;
+            }
+        }
+    }
+
+    @Override
+    public EntityRegion buildEntityRegion(String regionName, Properties properties, CacheDataDescription metadata)
+            throws CacheException {
+        return new TransactionalDataRegion(regionName, nativeCache(regionName), metadata);
+    }
+
+    @Override
+    public NaturalIdRegion buildNaturalIdRegion(String regionName, Properties properties, CacheDataDescription metadata)
+            throws CacheException {
+        throw new CacheException("Natural id caching is not supported, region=" + regionName);
+    }
+
+    @Override
+    public CollectionRegion buildCollectionRegion(String regionName, Properties properties, CacheDataDescription metadata)
+            throws CacheException {
+        return new TransactionalDataRegion(regionName, nativeCache(regionName), metadata);
+    }
+
+    @Override
+    public QueryResultsRegion buildQueryResultsRegion(String regionName, Properties properties) throws CacheException {
+        return new GeneralDataRegion(regionName, nativeCache(regionName));
+    }
+
+    @Override
+    public TimestampsRegion buildTimestampsRegion(String regionName, Properties properties) throws CacheException {
+        return new GeneralDataRegion(regionName, CacheBuilder.newBuilder().build());
+    }
+
+    /**
+     * Returns native cache of region.
+     *
+     * @param regionName region name
+     * @return guava cache
+     * @throws CacheException if region is not configured in cache manager
+     */
+    private Cache<Object, Object> nativeCache(String regionName) throws CacheException {
+        org.springframework.cache.Cache cache = cacheManager.getCache(regionName);
+        if (!(cache instanceof GuavaCache)) {
+            throw new CacheException("Cache region " + regionName + " is not configured in cache manager");
+        }
+        return ((GuavaCache) cache).getNativeCache();
+    }
+
+    /**
+     * Region stored in guava cache.
+     */
+    private class CacheRegion implements Region {
+        /**
+         * Region name.
+         */
+        private final String name;
+        /**
+         * Region cache.
+         */
+        final Cache<Object, Object> cache;
+
+        /**
+         * Creates region.
+         *
+         * @param name region name
+         * @param cache region cache
+         */
+        CacheRegion(String name, Cache<Object, Object> cache) {
+            this.name = name;
+            this.cache = cache;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void destroy() throws CacheException {
+            cache.invalidateAll();
+        }
+
+        @Override
+        public boolean contains(Object key) {
+            return cache.getIfPresent(key) != null;
+        }
+
+        @Override
+        public long getSizeInMemory() {
+            return -1;
+        }
+
+        @Override
+        public long getElementCountInMemory() {
+            return cache.size();
+        }
+
+        @Override
+        public long getElementCountOnDisk() {
+            return 0;
+        }
+
+        @Override
+        public Map<Object, Object> toMap() {
+            return new HashMap<Object, Object>(cache.asMap());
+        }
+
+        @Override
+        public long nextTimestamp() {
+            return GuavaRegionFactory.this.nextTimestamp();
+        }
+
+        @Override
+        public int getTimeout() {
+            return LOCK_TIMEOUT;
+        }
+
+        /**
+         * Removes entry from region.
+         *
+         * @param key key
+         */
+        public void evict(Object key) {
+            cache.invalidate(key);
+        }
+
+        /**
+         * Removes all entries from region.
+         */
+        public void evictAll() {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Region of query results or update timestamps of query spaces.
+     */
+    private class GeneralDataRegion extends CacheRegion implements QueryResultsRegion, TimestampsRegion {
+        /**
+         * Creates region.
+         *
+         * @param name region name
+         * @param cache region cache
+         */
+        GeneralDataRegion(String name, Cache<Object, Object> cache) {
+            super(name, cache);
+        }
+
+        @Override
+        public Object get(Object key) throws CacheException {
+            return cache.getIfPresent(key);
+        }
+
+        @Override
+        public void put(Object key, Object value) throws CacheException {
+            cache.put(key, value);
+        }
+    }
+
+    /**
+     * Region of entities or collections.
+     */
+    private class TransactionalDataRegion extends CacheRegion implements EntityRegion, CollectionRegion {
+        /**
+         * Description of cached data.
+         */
+        private final CacheDataDescription metadata;
+
+        /**
+         * Creates region.
+         *
+         * @param name region name
+         * @param cache region cache
+         * @param metadata description of cached data
+         */
+        TransactionalDataRegion(String name, Cache<Object, Object> cache, CacheDataDescription metadata) {
+            super(name, cache);
+            this.metadata = metadata;
+        }
+
+        @Override
+        public boolean isTransactionAware() {
+            return false;
+        }
+
+        @Override
+        public CacheDataDescription getCacheDataDescription() {
+            return metadata;
+        }
+
+        @Override
+        public AccessStrategy buildAccessStrategy(AccessType accessType) throws CacheException {
+            if (accessType == AccessType.READ_ONLY) {
+                return new AccessStrategy(this, true);
+            }
+            if (accessType == AccessType.NONSTRICT_READ_WRITE) {
+                return new AccessStrategy(this, false);
+            }
+            throw new CacheException("Access type " + accessType + " is not supported, region=" + getName());
+        }
+    }
+
+    /**
+     * Access to entity or collection region. Entries are not locked, entries changed are removed from region after
+     * transaction completion and loaded again on next read.
+     */
+    private static final class AccessStrategy implements EntityRegionAccessStrategy, CollectionRegionAccessStrategy {
+        /**
+         * Accessed region.
+         */
+        private final TransactionalDataRegion region;
+        /**
+         * Whether cached data must not be updated.
+         */
+        private final boolean readOnly;
+
+        /**
+         * Creates access strategy.
+         *
+         * @param region accessed region
+         * @param readOnly whether cached data must not be updated
+         */
+        private AccessStrategy(TransactionalDataRegion region, boolean readOnly) {
+            this.region = region;
+            this.readOnly = readOnly;
+        }
+
+        @Override
+        public TransactionalDataRegion getRegion() {
+            return region;
+        }
+
+        @Override
+        public Object get(Object key, long txTimestamp) throws CacheException {
+            return region.cache.getIfPresent(key);
+        }
+
+        @Override
+        public boolean putFromLoad(Object key, Object value, long txTimestamp, Object version) throws CacheException {
+            return putFromLoad(key, value, txTimestamp, version, true);
+        }
+
+        @Override
+        public boolean putFromLoad(Object key, Object value, long txTimestamp, Object version,
+                boolean minimalPutOverride) throws CacheException {
+            if (minimalPutOverride) {
+                return region.cache.asMap().putIfAbsent(key, value) == null;
+            }
+            region.cache.put(key, value);
+            return true;
+        }
+
+        @Override
+        public SoftLock lockItem(Object key, Object version) throws CacheException {
+            return null;
+        }
+
+        @Override
+        public SoftLock lockRegion() throws CacheException {
+            return null;
+        }
+
+        @Override
+        public void unlockItem(Object key, SoftLock lock) throws CacheException {
+            region.evict(key);
+        }
+
+        @Override
+        public void unlockRegion(SoftLock lock) throws CacheException {
+            region.evictAll();
+        }
+
+        @Override
+        public void remove(Object key) throws CacheException {
+            region.evict(key);
+        }
+
+        @Override
+        public void removeAll() throws CacheException {
+            region.evictAll();
+        }
+
+        @Override
+        public void evict(Object key) throws CacheException {
+            region.evict(key);
+        }
+
+        @Override
+        public void evictAll() throws CacheException {
+            region.evictAll();
+        }
+
+        @Override
+        public boolean insert(Object key, Object value, Object version) throws CacheException {
+            return false;
+        }
+
+        @Override
+        public boolean afterInsert(Object key, Object value, Object version) throws CacheException {
+            return false;
+        }
+
+        @Override
+        public boolean update(Object key, Object value, Object currentVersion, Object previousVersion)
+                throws CacheException {
+            if (readOnly) {
+                throw new UnsupportedOperationException("Can't update read-only data in region " + region.getName());
+            }
+            region.evict(key);
+            return false;
+        }
+
+        @Override
+        public boolean afterUpdate(Object key, Object value, Object currentVersion, Object previousVersion,
+                SoftLock lock) throws CacheException {
+            unlockItem(key, lock);
+            return false;
+        }
+    }
+}
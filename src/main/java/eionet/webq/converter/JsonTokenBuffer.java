@@ -0,0 +1,294 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.converter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.odysseus.staxon.json.stream.JsonStreamFactory;
+import de.odysseus.staxon.json.stream.JsonStreamSource;
+import de.odysseus.staxon.json.stream.JsonStreamTarget;
+import de.odysseus.staxon.json.stream.JsonStreamToken;
+
+/**
+ * In-memory buffer of json tokens. Tokens written by json writer are replayed to json reader, so that xml can be
+ * converted to json structure and back without serializing and parsing json text. Buffer is used by single conversion
+ * and is not thread safe.
+ * <p>
+ * Json readers and writers are created by shared factories configured with {@link #STREAM_FACTORY}, which take buffer
+ * streams from {@link #outputStream()} and {@link #inputStream()} in place of byte streams.
+ * <p>
+ * The whole document is held in memory: one entry per json token, with names and values kept as strings. Memory use
+ * thus grows linearly with document size, in the order of the document text held as java strings. Buffer is meant for
+ * documents already held in memory, such as stored user files.
+ */
+class JsonTokenBuffer {
+    /**
+     * Stream factory reading and writing tokens of buffer, whose stream is passed to created reader or writer.
+     * Factory is stateless and shared.
+     */
+    static final JsonStreamFactory STREAM_FACTORY = new JsonStreamFactory() {
+        @Override
+        public JsonStreamSource createJsonStreamSource(InputStream input) throws IOException {
+            if (!(input instanceof BufferInputStream)) {
+                throw new IOException("Json tokens are read from token buffer only");
+            }
+            return ((BufferInputStream) input).buffer().new Source();
+        }
+
+        @Override
+        public JsonStreamSource createJsonStreamSource(Reader reader) throws IOException {
+            throw new IOException("Json tokens are read from token buffer only");
+        }
+
+        @Override
+        public JsonStreamTarget createJsonStreamTarget(OutputStream output, boolean pretty) throws IOException {
+            if (!(output instanceof BufferOutputStream)) {
+                throw new IOException("Json tokens are written to token buffer only");
+            }
+            return ((BufferOutputStream) output).buffer().new Target();
+        }
+
+        @Override
+        public JsonStreamTarget createJsonStreamTarget(Writer writer, boolean pretty) throws IOException {
+            throw new IOException("Json tokens are written to token buffer only");
+        }
+    };
+    /**
+     * Token types in written order.
+     */
+    private final List<JsonStreamToken> tokens = new ArrayList<JsonStreamToken>();
+    /**
+     * Names and values of tokens, null for other tokens.
+     */
+    private final List<Object> values = new ArrayList<Object>();
+
+    /**
+     * Stream to create json writer with, through factory using {@link #STREAM_FACTORY}.
+     *
+     * @return stream standing for this buffer, bytes cannot be written to it
+     */
+    OutputStream outputStream() {
+        return new BufferOutputStream();
+    }
+
+    /**
+     * Stream to create json reader with, through factory using {@link #STREAM_FACTORY}.
+     *
+     * @return stream standing for this buffer, bytes cannot be read from it
+     */
+    InputStream inputStream() {
+        return new BufferInputStream();
+    }
+
+    /**
+     * Adds token to buffer.
+     *
+     * @param token token type
+     * @param value token name or value
+     */
+    private void add(JsonStreamToken token, Object value) {
+        tokens.add(token);
+        values.add(value);
+    }
+
+    /**
+     * Output stream standing for buffer.
+     */
+    private final class BufferOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            throw new IOException("Json tokens are not written as bytes");
+        }
+
+        /**
+         * Buffer of this stream.
+         *
+         * @return token buffer
+         */
+        private JsonTokenBuffer buffer() {
+            return JsonTokenBuffer.this;
+        }
+    }
+
+    /**
+     * Input stream standing for buffer.
+     */
+    private final class BufferInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            throw new IOException("Json tokens are not read as bytes");
+        }
+
+        /**
+         * Buffer of this stream.
+         *
+         * @return token buffer
+         */
+        private JsonTokenBuffer buffer() {
+            return JsonTokenBuffer.this;
+        }
+    }
+
+    /**
+     * Records written tokens.
+     */
+    private class Target implements JsonStreamTarget {
+        @Override
+        public void name(String name) {
+            add(JsonStreamToken.NAME, name);
+        }
+
+        @Override
+        public void value(Object value) {
+            add(JsonStreamToken.VALUE, value);
+        }
+
+        @Override
+        public void startObject() {
+            add(JsonStreamToken.START_OBJECT, null);
+        }
+
+        @Override
+        public void endObject() {
+            add(JsonStreamToken.END_OBJECT, null);
+        }
+
+        @Override
+        public void startArray() {
+            add(JsonStreamToken.START_ARRAY, null);
+        }
+
+        @Override
+        public void endArray() {
+            add(JsonStreamToken.END_ARRAY, null);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Replays recorded tokens.
+     */
+    private class Source implements JsonStreamSource {
+        /**
+         * Index of next token.
+         */
+        private int position;
+
+        @Override
+        public JsonStreamToken peek() {
+            return position < tokens.size() ? tokens.get(position) : JsonStreamToken.NONE;
+        }
+
+        @Override
+        public String name() throws IOException {
+            return (String) next(JsonStreamToken.NAME);
+        }
+
+        @Override
+        public Value value() throws IOException {
+            Object value = next(JsonStreamToken.VALUE);
+            if (value == null) {
+                return NULL;
+            } else if (value instanceof Boolean) {
+                return (Boolean) value ? TRUE : FALSE;
+            } else if (value instanceof Number) {
+                return new Value(value.toString(), (Number) value);
+            }
+            return new Value(value.toString());
+        }
+
+        @Override
+        public void startObject() throws IOException {
+            next(JsonStreamToken.START_OBJECT);
+        }
+
+        @Override
+        public void endObject() throws IOException {
+            next(JsonStreamToken.END_OBJECT);
+        }
+
+        @Override
+        public void startArray() throws IOException {
+            next(JsonStreamToken.START_ARRAY);
+        }
+
+        @Override
+        public void endArray() throws IOException {
+            next(JsonStreamToken.END_ARRAY);
+        }
+
+        /**
+         * Consumes next token.
+         *
+         * @param expected expected token type
+         * @return token name or value
+         * @throws IOException if next token is of other type
+         */
+        private Object next(JsonStreamToken expected) throws IOException {
+            if (peek() != expected) {
+                throw new IOException("Expected " + expected + " but was " + peek() + " at token " + position);
+            }
+            return values.get(position++);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public int getLineNumber() {
+            return -1;
+        }
+
+        @Override
+        public int getColumnNumber() {
+            return -1;
+        }
+
+        @Override
+        public int getCharacterOffset() {
+            return position;
+        }
+
+        @Override
+        public String getPublicId() {
+            return null;
+        }
+
+        @Override
+        public String getSystemId() {
+            return null;
+        }
+    }
+}
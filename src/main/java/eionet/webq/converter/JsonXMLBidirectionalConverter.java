@@ -23,15 +23,20 @@ package eionet.webq.converter;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
 
-import javax.xml.stream.XMLEventReader;
-import javax.xml.stream.XMLEventWriter;
+import javax.xml.XMLConstants;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.Result;
+import javax.xml.transform.sax.SAXResult;
 
-import de.odysseus.staxon.xml.util.PrettyXMLEventWriter;
-import org.apache.commons.io.IOUtils;
+import de.odysseus.staxon.xml.util.PrettyXMLStreamWriter;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.springframework.stereotype.Component;
 
@@ -41,7 +46,8 @@ import de.odysseus.staxon.json.JsonXMLInputFactory;
 import de.odysseus.staxon.json.JsonXMLOutputFactory;
 
 /**
- * Converter for performing bi-directional conversion between XML and json.
+ * Converter for performing bi-directional conversion between XML and json. Conversion streams from input to output using
+ * StAX cursor API. Factories are configured once and shared, as they are thread safe after configuration.
  */
 @Component
 public class JsonXMLBidirectionalConverter {
@@ -49,6 +55,40 @@ public class JsonXMLBidirectionalConverter {
      * Logger for this class.
      */
     private static final Logger LOGGER = Logger.getLogger(JsonXMLBidirectionalConverter.class);
+    /**
+     * Input and output encoding.
+     */
+    private static final String ENCODING = "utf-8";
+    /**
+     * XML reader factory.
+     */
+    private final XMLInputFactory xmlInputFactory = createXmlInputFactory();
+    /**
+     * XML writer factory.
+     */
+    private final XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
+    /**
+     * Json reader factory.
+     */
+    private final XMLInputFactory jsonInputFactory = createJsonInputFactory();
+    /**
+     * Json writer factory producing indented json.
+     */
+    private final XMLOutputFactory prettyJsonOutputFactory = new JsonXMLOutputFactory(xmlToJsonConfig(true));
+    /**
+     * Json writer factory producing compact json.
+     */
+    private final XMLOutputFactory compactJsonOutputFactory = new JsonXMLOutputFactory(xmlToJsonConfig(false));
+    /**
+     * Json writer factory writing tokens to {@link JsonTokenBuffer}.
+     */
+    private final XMLOutputFactory tokenOutputFactory =
+            new JsonXMLOutputFactory(xmlToJsonConfig(false), JsonTokenBuffer.STREAM_FACTORY);
+    /**
+     * Json reader factory reading tokens from {@link JsonTokenBuffer}.
+     */
+    private final XMLInputFactory tokenInputFactory =
+            new JsonXMLInputFactory(jsonToXmlConfig(), JsonTokenBuffer.STREAM_FACTORY);
 
     /**
      * Converts xml to json.
@@ -57,16 +97,41 @@ public class JsonXMLBidirectionalConverter {
      * @return json as byte array.
      */
     public byte[] convertXmlToJson(byte[] xml) {
-        JsonXMLConfig config = new JsonXMLConfigBuilder()
-                .prettyPrint(true)
-                .autoArray(true)
-                .autoPrimitive(true)
-                .build();
-        XMLInputFactory reader = XMLInputFactory.newInstance();
-        reader.setProperty(XMLInputFactory.SUPPORT_DTD,false);
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        convertXmlToJson(new ByteArrayInputStream(xml), json, true);
+        return json.toByteArray();
+    }
+
+    /**
+     * Converts xml read from input stream to json written to output stream. Streams are not closed.
+     *
+     * @param xml xml input stream.
+     * @param json json output stream.
+     * @param prettyPrint whether to indent json.
+     */
+    public void convertXmlToJson(InputStream xml, OutputStream json, boolean prettyPrint) {
+        XMLOutputFactory outputFactory = prettyPrint ? prettyJsonOutputFactory : compactJsonOutputFactory;
+        try {
+            convert(xmlInputFactory.createXMLStreamReader(xml, ENCODING), outputFactory.createXMLStreamWriter(json, ENCODING));
+        } catch (XMLStreamException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
-        JsonXMLOutputFactory writer = new JsonXMLOutputFactory(config);
-        return convert(reader, writer, xml);
+    /**
+     * Creates transformation result, which converts received xml to indented json and writes it to output stream.
+     * Json is written in the same format as json downloads of user and project files. Output stream is not closed.
+     *
+     * @param json json output stream.
+     * @return transformation result.
+     */
+    public Result xmlToJsonResult(OutputStream json) {
+        try {
+            XMLStreamWriter writer = prettyJsonOutputFactory.createXMLStreamWriter(json, ENCODING);
+            return new SAXResult(new XMLStreamWriterContentHandler(writer));
+        } catch (XMLStreamException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     /**
@@ -76,59 +141,230 @@ public class JsonXMLBidirectionalConverter {
      * @return xml as byte array.
      */
     public byte[] convertJsonToXml(byte[] json) {
-        JsonXMLConfig config = new JsonXMLConfigBuilder()
-            .prettyPrint(true)
-            .multiplePI(false)
-            .build();
-        XMLInputFactory reader = new JsonXMLInputFactory(config);
-        reader.setProperty(XMLInputFactory.SUPPORT_DTD,false);
-
-        XMLOutputFactory writer = XMLOutputFactory.newInstance();
-        return convert(reader, writer, json);
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        convertJsonToXml(new ByteArrayInputStream(json), xml, true);
+        return xml.toByteArray();
     }
 
     /**
-     * Template for conversion.
+     * Converts json read from input stream to xml written to output stream. Streams are not closed.
      *
-     * @param inputFactory input factory.
-     * @param outputFactory output factory.
-     * @param source source to convert.
-     * @return conversion result as byte array.
-     */
-    private byte[] convert(XMLInputFactory inputFactory, XMLOutputFactory outputFactory,
-                           byte[] source) {
-        InputStream input = new ByteArrayInputStream(source);
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
+     * @param json json input stream.
+     * @param xml xml output stream.
+     * @param prettyPrint whether to indent xml.
+     */
+    public void convertJsonToXml(InputStream json, OutputStream xml, boolean prettyPrint) {
         try {
-            XMLEventReader reader = inputFactory.createXMLEventReader(input, "utf-8");
-            XMLEventWriter writer = outputFactory.createXMLEventWriter(output, "utf-8");
-            writer = new PrettyXMLEventWriter(writer);
-            writer.add(reader);
-            closeQuietly(reader, writer);
-            return output.toByteArray();
+            XMLStreamWriter writer = xmlOutputFactory.createXMLStreamWriter(xml, ENCODING);
+            if (prettyPrint) {
+                writer = new PrettyXMLStreamWriter(writer);
+            }
+            convert(jsonInputFactory.createXMLStreamReader(json, ENCODING), writer);
         } catch (XMLStreamException e) {
             throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Normalizes xml the same way as converting it to json and back to xml does, e.g. repeated elements, primitive values,
+     * comments and whitespace are handled as in json. Json structure is passed between conversions as tokens, so that
+     * json text is not serialized and parsed again. Json structure of the whole document is held in memory, see
+     * {@link JsonTokenBuffer}.
+     *
+     * @param xml xml as byte array.
+     * @return normalized xml as byte array.
+     */
+    public byte[] normalizeXml(byte[] xml) {
+        ByteArrayOutputStream normalized = new ByteArrayOutputStream();
+        normalizeXml(new ByteArrayInputStream(xml), normalized, true);
+        return normalized.toByteArray();
+    }
+
+    /**
+     * Normalizes xml read from input stream and writes it to output stream, see {@link #normalizeXml(byte[])}.
+     * Streams are not closed.
+     *
+     * @param xml xml input stream.
+     * @param normalized normalized xml output stream.
+     * @param prettyPrint whether to indent xml.
+     */
+    public void normalizeXml(InputStream xml, OutputStream normalized, boolean prettyPrint) {
+        JsonTokenBuffer tokens = new JsonTokenBuffer();
+        try {
+            convert(xmlInputFactory.createXMLStreamReader(xml, ENCODING),
+                    tokenOutputFactory.createXMLStreamWriter(tokens.outputStream()));
+
+            XMLStreamWriter writer = xmlOutputFactory.createXMLStreamWriter(normalized, ENCODING);
+            if (prettyPrint) {
+                writer = new PrettyXMLStreamWriter(writer);
+            }
+            convert(tokenInputFactory.createXMLStreamReader(tokens.inputStream()), writer);
+        } catch (XMLStreamException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Configuration for xml to json conversion.
+     *
+     * @param prettyPrint whether to indent json.
+     * @return json configuration.
+     */
+    private static JsonXMLConfig xmlToJsonConfig(boolean prettyPrint) {
+        return new JsonXMLConfigBuilder()
+                .prettyPrint(prettyPrint)
+                .autoArray(true)
+                .autoPrimitive(true)
+                .build();
+    }
+
+    /**
+     * Creates xml reader factory, DTDs are not supported.
+     *
+     * @return xml input factory.
+     */
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        return factory;
+    }
+
+    /**
+     * Creates json reader factory.
+     *
+     * @return json input factory.
+     */
+    private static XMLInputFactory createJsonInputFactory() {
+        XMLInputFactory factory = new JsonXMLInputFactory(jsonToXmlConfig());
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        return factory;
+    }
+
+    /**
+     * Configuration for json to xml conversion.
+     *
+     * @return json configuration.
+     */
+    private static JsonXMLConfig jsonToXmlConfig() {
+        return new JsonXMLConfigBuilder()
+                .multiplePI(false)
+                .build();
+    }
+
+    /**
+     * Copies document from reader to writer using cursor API, then closes both.
+     *
+     * @param reader xml stream reader.
+     * @param writer xml stream writer.
+     * @throws XMLStreamException if reading or writing fails.
+     */
+    private void convert(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+        try {
+            copy(reader, writer);
+            writer.flush();
         } finally {
-            IOUtils.closeQuietly(output);
-            IOUtils.closeQuietly(input);
+            closeQuietly(reader, writer);
+        }
+    }
+
+    /**
+     * Copies all events from reader to writer.
+     *
+     * @param reader xml stream reader.
+     * @param writer xml stream writer.
+     * @throws XMLStreamException if reading or writing fails.
+     */
+    private void copy(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+        int event = reader.getEventType();
+        while (true) {
+            switch (event) {
+                case XMLStreamConstants.START_DOCUMENT:
+                    writer.writeStartDocument(StringUtils.defaultString(reader.getCharacterEncodingScheme(), "UTF-8"),
+                            StringUtils.defaultString(reader.getVersion(), "1.0"));
+                    break;
+                case XMLStreamConstants.START_ELEMENT:
+                    writeStartElement(reader, writer);
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    writer.writeEndElement();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+                case XMLStreamConstants.CDATA:
+                    writer.writeCData(reader.getText());
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    writer.writeComment(reader.getText());
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    if (reader.getPIData() != null) {
+                        writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+                    } else {
+                        writer.writeProcessingInstruction(reader.getPITarget());
+                    }
+                    break;
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    writer.writeEntityRef(reader.getLocalName());
+                    break;
+                case XMLStreamConstants.END_DOCUMENT:
+                    writer.writeEndDocument();
+                    return;
+                default:
+                    break;
+            }
+            if (!reader.hasNext()) {
+                return;
+            }
+            event = reader.next();
+        }
+    }
+
+    /**
+     * Writes start element with its namespace declarations and attributes.
+     *
+     * @param reader xml stream reader positioned at start element.
+     * @param writer xml stream writer.
+     * @throws XMLStreamException if writing fails.
+     */
+    private void writeStartElement(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeStartElement(StringUtils.defaultString(reader.getPrefix()), reader.getLocalName(),
+                StringUtils.defaultString(reader.getNamespaceURI()));
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            if (StringUtils.isEmpty(prefix) || XMLConstants.XMLNS_ATTRIBUTE.equals(prefix)) {
+                writer.writeDefaultNamespace(StringUtils.defaultString(reader.getNamespaceURI(i)));
+            } else {
+                writer.writeNamespace(prefix, StringUtils.defaultString(reader.getNamespaceURI(i)));
+            }
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String namespace = reader.getAttributeNamespace(i);
+            if (StringUtils.isEmpty(namespace)) {
+                writer.writeAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            } else {
+                writer.writeAttribute(StringUtils.defaultString(reader.getAttributePrefix(i)), namespace,
+                        reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            }
         }
     }
 
     /**
      * Closes quietly reader and writer.
-     * @param reader xml event reader
-     * @param writer xml event writer
+     * @param reader xml stream reader
+     * @param writer xml stream writer
      */
-    private void closeQuietly(XMLEventReader reader, XMLEventWriter writer) {
+    private void closeQuietly(XMLStreamReader reader, XMLStreamWriter writer) {
         try {
             reader.close();
         } catch (XMLStreamException e) {
-            LOGGER.warn("Unable to close XMLEventReader", e);
+            LOGGER.warn("Unable to close XMLStreamReader", e);
         }
         try {
             writer.close();
         } catch (XMLStreamException e) {
-            LOGGER.warn("Unable to close XMLEventWriter", e);
+            LOGGER.warn("Unable to close XMLStreamWriter", e);
         }
     }
 }
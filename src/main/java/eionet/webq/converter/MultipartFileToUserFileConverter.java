@@ -31,7 +31,6 @@ import org.springframework.web.multipart.MultipartFile;
 import org.zeroturnaround.zip.ZipEntryCallback;
 import org.zeroturnaround.zip.ZipUtil;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -44,7 +43,8 @@ import static eionet.webq.dao.orm.util.UserFileInfo.DUMMY_XML_SCHEMA;
 import static org.apache.commons.lang3.StringUtils.defaultString;
 
 /**
- * Performs converting from {@link MultipartFile} to {@link eionet.webq.dao.orm.UserFile}.
+ * Performs converting from {@link MultipartFile} to {@link eionet.webq.dao.orm.UserFile}. Uploaded content is not read
+ * into memory, only xml schema is sniffed from its beginning. Content is streamed to storage when files are saved.
  *
  * @see Converter
  */
@@ -59,10 +59,9 @@ public class MultipartFileToUserFileConverter implements Converter<MultipartFile
      */
     public static final String ZIP_ATTACHMENT_MEDIA_TYPE = "application/zip";
     /**
-     * Converter to {@link UploadedFile}.
+     * Size in bytes above which extracted zip entries are spooled to temporary files instead of memory.
      */
-    @Autowired
-    private MultipartFileToUploadedFile toUploadedFileConverter;
+    static final int ZIP_ENTRY_MEMORY_THRESHOLD = 64 * 1024;
     /**
      * Xml schema extractor.
      */
@@ -71,44 +70,81 @@ public class MultipartFileToUserFileConverter implements Converter<MultipartFile
 
     @Override
     public Collection<UserFile> convert(MultipartFile multipartFile) {
-        UploadedFile uploadedFile = toUploadedFileConverter.convert(multipartFile);
-        if (isZipArchive(uploadedFile)) {
-            return extractFromZip(uploadedFile);
+        if (isZipArchive(multipartFile)) {
+            return extractFromZip(multipartFile);
         }
+        UploadedFile uploadedFile =
+                new UploadedFile(multipartFile.getOriginalFilename(), multipartFile, multipartFile.getSize());
+        uploadedFile.setContentType(multipartFile.getContentType());
         LOGGER.info("Converting " + uploadedFile);
-        return Arrays.asList(new UserFile(uploadedFile, xmlSchemaExtractor.extractXmlSchema(uploadedFile.getContent()
-                .getFileContent())));
+        return Arrays.asList(new UserFile(uploadedFile, extractXmlSchema(multipartFile)));
     }
 
     /**
      * Check whether provided uploaded file is zip archive.
      *
-     * @param uploadedFile uploaded file
+     * @param multipartFile uploaded file
      * @return file is zip archive.
      */
-    private boolean isZipArchive(UploadedFile uploadedFile) {
-        return ZIP_ATTACHMENT_MEDIA_TYPE.equals(uploadedFile.getContentType()) || uploadedFile.getName().endsWith(".zip");
+    private boolean isZipArchive(MultipartFile multipartFile) {
+        return ZIP_ATTACHMENT_MEDIA_TYPE.equals(multipartFile.getContentType())
+                || defaultString(multipartFile.getOriginalFilename()).endsWith(".zip");
+    }
+
+    /**
+     * Sniffs xml schema from the beginning of uploaded file.
+     *
+     * @param multipartFile uploaded file
+     * @return xml schema or null
+     */
+    private String extractXmlSchema(MultipartFile multipartFile) {
+        InputStream input = null;
+        try {
+            input = multipartFile.getInputStream();
+            return xmlSchemaExtractor.extractXmlSchema(input);
+        } catch (IOException e) {
+            LOGGER.warn("unable to read uploaded file", e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
     }
 
     /**
-     * Extract files from zip archive, not recursive.
+     * Extract files from zip archive, not recursive. Archive is read once, entries are spooled so that they are not held
+     * in memory all at once.
      *
-     * @param uploadedFile uploaded zip file
+     * @param multipartFile uploaded zip file
      * @return collection of zip files.
      */
-    private Collection<UserFile> extractFromZip(UploadedFile uploadedFile) {
-        LOGGER.info("Start extraction from zip file with name=" + uploadedFile.getName());
+    private Collection<UserFile> extractFromZip(MultipartFile multipartFile) {
+        LOGGER.info("Start extraction from zip file with name=" + multipartFile.getOriginalFilename());
         final List<UserFile> userFiles = new ArrayList<UserFile>();
-        ZipUtil.iterate(new ByteArrayInputStream(uploadedFile.getContent().getFileContent()), new ZipEntryCallback() {
-            @Override
-            public void process(InputStream inputStream, ZipEntry zipEntry) throws IOException {
-                if (!zipEntry.isDirectory()) {
-                    byte[] content = IOUtils.toByteArray(inputStream);
-                    String xmlSchema = defaultString(xmlSchemaExtractor.extractXmlSchema(content), DUMMY_XML_SCHEMA);
-                    userFiles.add(new UserFile(new UploadedFile(zipEntry.getName(), content), xmlSchema));
+        InputStream zip = null;
+        try {
+            zip = multipartFile.getInputStream();
+            ZipUtil.iterate(zip, new ZipEntryCallback() {
+                @Override
+                public void process(InputStream inputStream, ZipEntry zipEntry) throws IOException {
+                    if (!zipEntry.isDirectory()) {
+                        SpooledContent content = new SpooledContent(inputStream, ZIP_ENTRY_MEMORY_THRESHOLD);
+                        InputStream prefix = content.getInputStream();
+                        String xmlSchema;
+                        try {
+                            xmlSchema = defaultString(xmlSchemaExtractor.extractXmlSchema(prefix), DUMMY_XML_SCHEMA);
+                        } finally {
+                            IOUtils.closeQuietly(prefix);
+                        }
+                        UploadedFile uploadedFile = new UploadedFile(zipEntry.getName(), content, content.size());
+                        userFiles.add(new UserFile(uploadedFile, xmlSchema));
+                    }
                 }
-            }
-        });
+            });
+        } catch (IOException e) {
+            LOGGER.warn("unable to read uploaded zip file", e);
+        } finally {
+            IOUtils.closeQuietly(zip);
+        }
         LOGGER.info("Extracted " + userFiles.size() + " from zip archive.");
         return userFiles;
     }
@@ -0,0 +1,79 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.converter;
+
+import org.apache.commons.io.FileCleaningTracker;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.springframework.core.io.InputStreamSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Content copied from stream, which could be read only once, e.g. zip entry. Small content is kept in memory, larger
+ * content is spooled to temporary file, which is removed when this object is garbage collected.
+ */
+class SpooledContent implements InputStreamSource {
+    /**
+     * Removes temporary files of unreachable contents.
+     */
+    private static final FileCleaningTracker TEMPORARY_FILES = new FileCleaningTracker();
+    /**
+     * Spooled content.
+     */
+    private final DeferredFileOutputStream content;
+
+    /**
+     * Copies content from input stream. Input stream is not closed.
+     *
+     * @param input content
+     * @param memoryThreshold content size in bytes above which content is spooled to temporary file
+     * @throws IOException if reading or spooling fails
+     */
+    SpooledContent(InputStream input, int memoryThreshold) throws IOException {
+        content = new DeferredFileOutputStream(memoryThreshold, "webq-upload-", ".tmp", null);
+        try {
+            IOUtils.copy(input, content);
+        } finally {
+            content.close();
+            if (!content.isInMemory()) {
+                TEMPORARY_FILES.track(content.getFile(), this);
+            }
+        }
+    }
+
+    /**
+     * Content size.
+     *
+     * @return size in bytes
+     */
+    long size() {
+        return content.getByteCount();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return content.isInMemory() ? new ByteArrayInputStream(content.getData()) : new FileInputStream(content.getFile());
+    }
+}
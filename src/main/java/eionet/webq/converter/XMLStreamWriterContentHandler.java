@@ -0,0 +1,158 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.converter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * SAX content handler writing received events to {@link XMLStreamWriter}.
+ * Allows to stream transformation results to StAX writers, e.g. json writer, without intermediate serialization.
+ */
+final class XMLStreamWriterContentHandler extends DefaultHandler {
+    /**
+     * Target writer.
+     */
+    private final XMLStreamWriter writer;
+    /**
+     * Namespace mappings declared for next element.
+     */
+    private final Map<String, String> pendingNamespaces = new LinkedHashMap<String, String>();
+
+    /**
+     * Creates content handler writing to given writer.
+     *
+     * @param writer target writer
+     */
+    XMLStreamWriterContentHandler(XMLStreamWriter writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        try {
+            writer.writeStartDocument();
+        } catch (XMLStreamException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        try {
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) {
+        pendingNamespaces.put(prefix, uri);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+        try {
+            writer.writeStartElement(prefix(qName), localName(localName, qName), uri);
+            for (Map.Entry<String, String> namespace : pendingNamespaces.entrySet()) {
+                if (namespace.getKey().isEmpty()) {
+                    writer.writeDefaultNamespace(namespace.getValue());
+                } else {
+                    writer.writeNamespace(namespace.getKey(), namespace.getValue());
+                }
+            }
+            pendingNamespaces.clear();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                String attributeName = attributes.getQName(i);
+                if (attributeName.equals(XMLConstants.XMLNS_ATTRIBUTE)
+                        || attributeName.startsWith(XMLConstants.XMLNS_ATTRIBUTE + ":")) {
+                    continue;
+                }
+                writer.writeAttribute(prefix(attributeName), attributes.getURI(i),
+                        localName(attributes.getLocalName(i), attributeName), attributes.getValue(i));
+            }
+        } catch (XMLStreamException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        try {
+            writer.writeEndElement();
+        } catch (XMLStreamException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        try {
+            writer.writeCharacters(ch, start, length);
+        } catch (XMLStreamException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) throws SAXException {
+        try {
+            writer.writeProcessingInstruction(target, data);
+        } catch (XMLStreamException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    /**
+     * Extracts prefix from qualified name.
+     *
+     * @param qName qualified name
+     * @return prefix or empty string
+     */
+    private static String prefix(String qName) {
+        int colon = qName.indexOf(':');
+        return colon > 0 ? qName.substring(0, colon) : XMLConstants.DEFAULT_NS_PREFIX;
+    }
+
+    /**
+     * Returns local name, falls back to qualified name without prefix.
+     *
+     * @param localName local name, may be empty
+     * @param qName qualified name
+     * @return local name
+     */
+    private static String localName(String localName, String qName) {
+        if (localName != null && !localName.isEmpty()) {
+            return localName;
+        }
+        return qName.substring(qName.indexOf(':') + 1);
+    }
+}
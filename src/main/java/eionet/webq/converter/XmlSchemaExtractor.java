@@ -20,7 +20,8 @@
  */
 package eionet.webq.converter;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.springframework.stereotype.Component;
@@ -29,14 +30,19 @@ import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 
 import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
 
 /**
- * Extracts xml schema from provided source.
+ * Extracts xml schema from provided source. Only prefix of the source up to the root element is read.
  */
 @Component
 public class XmlSchemaExtractor {
+    /**
+     * Maximum number of bytes read from source while looking for the root element.
+     */
+    static final int PREFIX_LIMIT = 64 * 1024;
     /**
      * Xsi namespace URI.
      */
@@ -46,11 +52,18 @@ public class XmlSchemaExtractor {
      */
     private static final Logger LOGGER = Logger.getLogger(XmlSchemaExtractor.class);
     /**
-     *
-     *
-     * @param bytes uploaded file bytes
-     * @return
+     * Xml reader factory, thread safe after configuration.
      */
+    private final XMLInputFactory xmlInputFactory;
+
+    /**
+     * Creates extractor, DTDs are not supported.
+     */
+    public XmlSchemaExtractor() {
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    }
+
     /**
      * Extracts {@code @xsi:noNamespaceSchemaLocation} or {@code @xsi:schemaLocation} attribute value from xml root element.
      *
@@ -58,12 +71,21 @@ public class XmlSchemaExtractor {
      * @return {@code @xsi:noNamespaceSchemaLocation} or {@code @xsi:schemaLocation} attribute value, default {@code null}
      */
     public String extractXmlSchema(byte[] source) {
-        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
-        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD,false);
-        ByteArrayInputStream bais = new ByteArrayInputStream(source);
+        return extractXmlSchema(new ByteArrayInputStream(source));
+    }
+
+    /**
+     * Extracts {@code @xsi:noNamespaceSchemaLocation} or {@code @xsi:schemaLocation} attribute value from xml root element.
+     * At most {@link #PREFIX_LIMIT} bytes are read from source, source is not closed.
+     *
+     * @param source source to be searched.
+     * @return {@code @xsi:noNamespaceSchemaLocation} or {@code @xsi:schemaLocation} attribute value, default {@code null}
+     */
+    public String extractXmlSchema(InputStream source) {
+        InputStream prefix = new BoundedInputStream(new CloseShieldInputStream(source), PREFIX_LIMIT);
         XMLStreamReader xmlStreamReader = null;
         try {
-            xmlStreamReader = xmlInputFactory.createXMLStreamReader(bais);
+            xmlStreamReader = xmlInputFactory.createXMLStreamReader(prefix);
             while (xmlStreamReader.hasNext()) {
                 if (xmlStreamReader.next() == START_ELEMENT) {
                     return StringUtils.defaultString(
@@ -75,7 +97,6 @@ public class XmlSchemaExtractor {
         } catch (Exception e) {
             LOGGER.warn("exception thrown during extracting xml schema", e);
         } finally {
-            IOUtils.closeQuietly(bais);
             if (xmlStreamReader != null) {
                 try {
                     xmlStreamReader.close();
@@ -1,13 +1,38 @@
 package eionet.webq.dao;
 
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.CountingInputStream;
+import eionet.webq.dao.orm.UploadedFile;
+import org.apache.commons.io.IOUtils;
 import org.hibernate.Criteria;
+import org.hibernate.FlushMode;
+import org.hibernate.Hibernate;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Criterion;
+import org.hibernate.jdbc.ReturningWork;
+import org.hibernate.jdbc.Work;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.type.IntegerType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Common logic for DAO classes.
@@ -16,6 +41,18 @@ import java.util.List;
  */
 @Transactional
 public abstract class AbstractDao<E> {
+    /**
+     * Condition matching file_content rows not referenced by any user file, project file or merge module.
+     */
+    static final String FILE_CONTENT_UNREFERENCED =
+            "NOT EXISTS (SELECT 1 FROM user_xml o WHERE o.file_content_id = file_content.id)"
+                    + " AND NOT EXISTS (SELECT 1 FROM project_file o WHERE o.file_content_id = file_content.id)"
+                    + " AND NOT EXISTS (SELECT 1 FROM merge_module o WHERE o.file_content_id = file_content.id)";
+    /**
+     * Selects ids of file contents having given hash, locking selected rows until transaction ends.
+     */
+    private static final String SELECT_FILE_CONTENT_BY_HASH_FOR_UPDATE =
+            "SELECT id FROM file_content WHERE content_hash = ? FOR UPDATE";
     /**
      * Session factory.
      */
@@ -26,6 +63,16 @@ public abstract class AbstractDao<E> {
         return getCurrentSession().createCriteria(getEntityClass());
     }
 
+    /**
+     * Creates criteria which results are kept in query cache until tables queried are changed.
+     * Use only for entities kept in second-level cache, as query cache holds ids of resulting entities.
+     *
+     * @return cacheable criteria
+     */
+    protected Criteria getCacheableCriteria() {
+        return getCriteria().setCacheable(true);
+    }
+
     protected Session getCurrentSession() {
         return sessionFactory.getCurrentSession();
     }
@@ -43,29 +90,227 @@ public abstract class AbstractDao<E> {
 
     /**
      * Removes entity with its children.
+     * File contents no longer referenced after removal are removed as well.
      *
      * @param criterion criterion to search entities.
      */
     protected void removeByCriterion(Criterion criterion) {
-        Session currentSession = getCurrentSession();
-        List files = getCriteria().add(criterion).list();
-        for (Object fileId : files) {
-            currentSession.delete(fileId);
-        }
+        removeUnreferencedFileContent(removeRetainingFileContent(criterion));
+    }
+
+    /**
+     * Removes entities, but keeps file contents they referenced, so that these could be reused by files saved afterwards.
+     * Returned ids must be passed to {@link #removeUnreferencedFileContent(java.util.Collection)} when done.
+     *
+     * @param criterion criterion to search entities.
+     * @return ids of file contents referenced by removed entities
+     */
+    protected Set<Integer> removeRetainingFileContent(Criterion criterion) {
+        return delete(getCriteria().add(criterion).list());
     }
 
     /**
      * Removes the list of entities by given criteria.
+     * File contents no longer referenced after removal are removed as well.
      *
      * @param entityClass entity class
      * @param criterion   criterion to search entities
      */
     protected void removeEntitiesByCriterion(Class<?> entityClass, Criterion criterion) {
+        removeUnreferencedFileContent(delete(getCurrentSession().createCriteria(entityClass).add(criterion).list()));
+    }
+
+    /**
+     * Replaces not yet stored content of uploaded file with already stored content having the same hash.
+     * Stored content is not loaded, so that identical payloads are stored once without reading them back.
+     * Stored content rows are locked until transaction ends, so that these are not removed as unreferenced before
+     * the file referencing them is written.
+     *
+     * @param file uploaded file, could be null
+     */
+    @SuppressWarnings("unchecked")
+    protected void useStoredContent(UploadedFile file) {
+        UploadedFile.FileContent content = file != null ? file.getContent() : null;
+        if (content == null || content instanceof HibernateProxy || content.getId() != 0 || content.getHash() == null) {
+            return;
+        }
+        List<Integer> storedContentIds = getCurrentSession().createSQLQuery(SELECT_FILE_CONTENT_BY_HASH_FOR_UPDATE)
+                .addScalar("id", IntegerType.INSTANCE).setString(0, content.getHash()).setFlushMode(FlushMode.MANUAL).list();
+        if (!storedContentIds.isEmpty()) {
+            file.setContent((UploadedFile.FileContent) getCurrentSession()
+                    .load(UploadedFile.FileContent.class, storedContentIds.get(0)));
+        }
+    }
+
+    /**
+     * Selects file content id currently stored for entity row, bypassing session state.
+     *
+     * @param table entity table having file_content_id column
+     * @param id    entity id
+     * @return file content id or null
+     */
+    protected Integer storedFileContentId(final String table, final int id) {
+        return getCurrentSession().doReturningWork(new ReturningWork<Integer>() {
+            @Override
+            public Integer execute(Connection connection) throws SQLException {
+                return selectFileContentId(connection, table, id);
+            }
+        });
+    }
+
+    /**
+     * Flushes session and removes file contents from given ids, which are not referenced anymore.
+     *
+     * @param contentIds file content ids, null values are ignored
+     */
+    protected void removeUnreferencedFileContent(final Collection<Integer> contentIds) {
+        final Set<Integer> ids = new HashSet<Integer>(contentIds);
+        ids.remove(null);
+        if (ids.isEmpty()) {
+            return;
+        }
         Session currentSession = getCurrentSession();
-        List files = currentSession.createCriteria(entityClass).add(criterion).list();
-        for (Object fileId : files) {
-            currentSession.delete(fileId);
+        currentSession.flush();
+        currentSession.doWork(new Work() {
+            @Override
+            public void execute(Connection connection) throws SQLException {
+                PreparedStatement delete =
+                        connection.prepareStatement("DELETE FROM file_content WHERE id = ? AND " + FILE_CONTENT_UNREFERENCED);
+                try {
+                    for (Integer id : ids) {
+                        delete.setInt(1, id);
+                        delete.addBatch();
+                    }
+                    delete.executeBatch();
+                } finally {
+                    delete.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns id of uploaded file content without loading it.
+     *
+     * @param file uploaded file
+     * @return file content id or null if there is no stored content
+     */
+    protected static Integer fileContentId(UploadedFile file) {
+        UploadedFile.FileContent content = file != null ? file.getContent() : null;
+        if (content instanceof HibernateProxy) {
+            return (Integer) ((HibernateProxy) content).getHibernateLazyInitializer().getIdentifier();
         }
+        return content != null && content.getId() != 0 ? content.getId() : null;
+    }
+
+    /**
+     * Copies content of {@link eionet.webq.dao.orm.UploadedFile.FileContent} linked to entity row directly to output stream.
+     * Content is read as binary stream from JDBC result set, so it is never materialized as byte array.
+     *
+     * @param table       entity table having file_content_id column
+     * @param ownerClause additional SQL condition on entity table row, aliased as 'o', or null
+     * @param output      stream where content will be written
+     * @param parameters  entity id followed by owner clause parameters
+     * @return whether content was found and written
+     */
+    protected boolean copyFileContent(String table, String ownerClause, final OutputStream output, final Object... parameters) {
+        final String sql = fileContentQuery("c.file_content", table, ownerClause);
+        return getCurrentSession().doReturningWork(new ReturningWork<Boolean>() {
+            @Override
+            public Boolean execute(Connection connection) throws SQLException {
+                PreparedStatement statement = connection.prepareStatement(sql);
+                try {
+                    setParameters(statement, parameters);
+                    ResultSet resultSet = statement.executeQuery();
+                    if (!resultSet.next()) {
+                        return false;
+                    }
+                    InputStream content = resultSet.getBinaryStream(1);
+                    if (content == null) {
+                        return false;
+                    }
+                    try {
+                        IOUtils.copyLarge(content, output);
+                    } finally {
+                        IOUtils.closeQuietly(content);
+                    }
+                    return true;
+                } catch (IOException e) {
+                    throw new RuntimeException("Unable to copy file content", e);
+                } finally {
+                    statement.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns hash of {@link eionet.webq.dao.orm.UploadedFile.FileContent} linked to entity row. If file content is already
+     * loaded, hash is taken from it, otherwise it is selected from storage without reading content itself.
+     *
+     * @param table       entity table having file_content_id column
+     * @param ownerClause additional SQL condition on entity table row, aliased as 'o', or null
+     * @param file        uploaded file of the entity, could be null
+     * @param parameters  entity id followed by owner clause parameters
+     * @return content hash or null if entity has no content or content hash is not known
+     */
+    protected String contentHash(String table, String ownerClause, UploadedFile file, final Object... parameters) {
+        UploadedFile.FileContent content = file != null ? file.getContent() : null;
+        if (content != null && Hibernate.isInitialized(content)) {
+            return content.getHash() != null ? content.getHash() : UploadedFile.FileContent.hash(content.getFileContent());
+        }
+        final String sql = fileContentQuery("c.content_hash", table, ownerClause);
+        return getCurrentSession().doReturningWork(new ReturningWork<String>() {
+            @Override
+            public String execute(Connection connection) throws SQLException {
+                PreparedStatement statement = connection.prepareStatement(sql);
+                try {
+                    setParameters(statement, parameters);
+                    ResultSet resultSet = statement.executeQuery();
+                    return resultSet.next() ? resultSet.getString(1) : null;
+                } finally {
+                    statement.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Replaces content of {@link eionet.webq.dao.orm.UploadedFile.FileContent} linked to entity row with content read from
+     * stream. Content is hashed while it is inserted, if identical content is already stored, it is used instead of the
+     * inserted row. Previous content is removed if not referenced anymore. Entity file size and updated time are set
+     * accordingly. Current session is not aware of this change, so entity must not be flushed afterwards with its old
+     * content.
+     *
+     * @param table   entity table having file_content_id, file_size_in_bytes and updated columns
+     * @param id      entity id
+     * @param content new content
+     * @return hash of new content
+     */
+    protected String replaceFileContent(final String table, final int id, InputStream content) {
+        final CountingInputStream countingContent = new CountingInputStream(content);
+        final HashingInputStream hashingContent = new HashingInputStream(Hashing.sha256(), countingContent);
+        final String[] hash = new String[1];
+        Integer previousContentId = getCurrentSession().doReturningWork(new ReturningWork<Integer>() {
+            @Override
+            public Integer execute(Connection connection) throws SQLException {
+                Integer previousContentId = selectFileContentId(connection, table, id);
+                int contentId = insertFileContent(connection, hashingContent);
+                hash[0] = hashingContent.hash().toString();
+                Integer storedContentId = selectFileContentIdByHash(connection, hash[0], contentId);
+                if (storedContentId != null) {
+                    executeUpdate(connection, "DELETE FROM file_content WHERE id = ?", contentId);
+                    contentId = storedContentId;
+                } else {
+                    executeUpdate(connection, "UPDATE file_content SET content_hash = ? WHERE id = ?", hash[0], contentId);
+                }
+                executeUpdate(connection, "UPDATE " + table + " SET file_content_id = ?, file_size_in_bytes = ?, updated = ?"
+                        + " WHERE id = ?", contentId, countingContent.getCount(), new Timestamp(System.currentTimeMillis()), id);
+                return previousContentId;
+            }
+        });
+        removeUnreferencedFileContent(Collections.singleton(previousContentId));
+        return hash[0];
     }
 
     /**
@@ -74,4 +319,142 @@ public abstract class AbstractDao<E> {
      * @return dto class
      */
     abstract Class<E> getEntityClass();
+
+    /**
+     * Builds query selecting file_content column for entity row.
+     *
+     * @param column      file_content column, aliased as 'c'
+     * @param table       entity table having file_content_id column
+     * @param ownerClause additional SQL condition on entity table row, aliased as 'o', or null
+     * @return query with entity id and owner clause parameters
+     */
+    private static String fileContentQuery(String column, String table, String ownerClause) {
+        return "SELECT " + column + " FROM file_content c INNER JOIN " + table + " o ON o.file_content_id = c.id"
+                + " WHERE o.id = ?" + (ownerClause != null ? " AND " + ownerClause : "");
+    }
+
+    /**
+     * Selects file content id of entity row.
+     *
+     * @param connection connection
+     * @param table      entity table
+     * @param id         entity id
+     * @return file content id or null
+     * @throws SQLException if query fails
+     */
+    private Integer selectFileContentId(Connection connection, String table, int id) throws SQLException {
+        PreparedStatement select = connection.prepareStatement("SELECT file_content_id FROM " + table + " WHERE id = ?");
+        try {
+            select.setInt(1, id);
+            ResultSet resultSet = select.executeQuery();
+            if (resultSet.next()) {
+                int contentId = resultSet.getInt(1);
+                return resultSet.wasNull() ? null : contentId;
+            }
+            return null;
+        } finally {
+            select.close();
+        }
+    }
+
+    /**
+     * Selects id of file content with given hash, other than specified one. Selected row is locked until transaction ends,
+     * see {@link #useStoredContent(UploadedFile)}.
+     *
+     * @param connection connection
+     * @param hash       content hash
+     * @param excludedId file content id to skip
+     * @return file content id or null
+     * @throws SQLException if query fails
+     */
+    private Integer selectFileContentIdByHash(Connection connection, String hash, int excludedId) throws SQLException {
+        PreparedStatement select =
+                connection.prepareStatement("SELECT id FROM file_content WHERE content_hash = ? AND id <> ? FOR UPDATE");
+        try {
+            setParameters(select, hash, excludedId);
+            select.setMaxRows(1);
+            ResultSet resultSet = select.executeQuery();
+            return resultSet.next() ? resultSet.getInt(1) : null;
+        } finally {
+            select.close();
+        }
+    }
+
+    /**
+     * Deletes entities and collects ids of file contents referenced by them.
+     *
+     * @param entities entities to delete
+     * @return file content ids
+     */
+    private Set<Integer> delete(List<?> entities) {
+        Session currentSession = getCurrentSession();
+        Set<Integer> contentIds = new HashSet<Integer>();
+        for (Object entity : entities) {
+            Object implementation = entity instanceof HibernateProxy
+                    ? ((HibernateProxy) entity).getHibernateLazyInitializer().getImplementation() : entity;
+            ClassMetadata metadata = sessionFactory.getClassMetadata(implementation.getClass());
+            for (Object value : metadata.getPropertyValues(implementation)) {
+                if (value instanceof UploadedFile) {
+                    contentIds.add(fileContentId((UploadedFile) value));
+                }
+            }
+            currentSession.delete(entity);
+        }
+        return contentIds;
+    }
+
+    /**
+     * Executes update statement.
+     *
+     * @param connection connection
+     * @param sql        statement
+     * @param parameters statement parameters
+     * @throws SQLException if update fails
+     */
+    private static void executeUpdate(Connection connection, String sql, Object... parameters) throws SQLException {
+        PreparedStatement update = connection.prepareStatement(sql);
+        try {
+            setParameters(update, parameters);
+            update.executeUpdate();
+        } finally {
+            update.close();
+        }
+    }
+
+    /**
+     * Inserts new file content row.
+     *
+     * @param connection connection
+     * @param content    content stream
+     * @return generated file content id
+     * @throws SQLException if insert fails
+     */
+    private int insertFileContent(Connection connection, InputStream content) throws SQLException {
+        PreparedStatement insert =
+                connection.prepareStatement("INSERT INTO file_content (file_content) VALUES (?)", Statement.RETURN_GENERATED_KEYS);
+        try {
+            insert.setBinaryStream(1, content);
+            insert.executeUpdate();
+            ResultSet generatedKeys = insert.getGeneratedKeys();
+            if (!generatedKeys.next()) {
+                throw new SQLException("No id generated for file content");
+            }
+            return generatedKeys.getInt(1);
+        } finally {
+            insert.close();
+        }
+    }
+
+    /**
+     * Sets positional statement parameters.
+     *
+     * @param statement  statement
+     * @param parameters parameters
+     * @throws SQLException if parameter cannot be set
+     */
+    private static void setParameters(PreparedStatement statement, Object... parameters) throws SQLException {
+        for (int i = 0; i < parameters.length; i++) {
+            statement.setObject(i + 1, parameters[i]);
+        }
+    }
 }
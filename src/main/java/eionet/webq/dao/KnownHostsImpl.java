@@ -41,7 +41,7 @@ public class KnownHostsImpl extends AbstractDao<KnownHost> implements KnownHosts
     @Override
     @SuppressWarnings("unchecked")
     public Collection<KnownHost> findAll() {
-        return getCriteria().addOrder(Order.desc("hostURL")).list();
+        return getCacheableCriteria().addOrder(Order.desc("hostURL")).list();
     }
 
     @Override
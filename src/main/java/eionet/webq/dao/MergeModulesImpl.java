@@ -23,10 +23,12 @@ package eionet.webq.dao;
 import eionet.webq.dao.orm.MergeModule;
 import org.apache.commons.lang3.ArrayUtils;
 import org.hibernate.criterion.Restrictions;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -42,15 +44,17 @@ public class MergeModulesImpl extends AbstractDao<MergeModule> implements MergeM
     @SuppressWarnings("unchecked")
     @Override
     public Collection<MergeModule> findAll() {
-        return (List<MergeModule>) getCriteria().setResultTransformer(DISTINCT_ROOT_ENTITY).list();
+        return (List<MergeModule>) getCacheableCriteria().setResultTransformer(DISTINCT_ROOT_ENTITY).list();
     }
 
     @Override
     public int save(MergeModule module) {
+        useStoredContent(module.getXslFile());
         getCurrentSession().save(module);
         return module.getId();
     }
 
+    @CacheEvict(value = "mergeModuleTemplates", allEntries = true)
     @Override
     public void remove(int... ids) {
         removeByCriterion(Restrictions.in("id", ArrayUtils.toObject(ids)));
@@ -58,9 +62,10 @@ public class MergeModulesImpl extends AbstractDao<MergeModule> implements MergeM
 
     @Override
     public MergeModule findByFileName(String moduleName) {
-        return (MergeModule) getCriteria().add(Restrictions.eq("xslFile.name", moduleName)).uniqueResult();
+        return (MergeModule) getCacheableCriteria().add(Restrictions.eq("xslFile.name", moduleName)).uniqueResult();
     }
 
+    @CacheEvict(value = "mergeModuleTemplates", allEntries = true)
     @Override
     public void update(MergeModule module) {
         if (module.getXslFile() == null || module.getXslFile().getSizeInBytes() == 0) {
@@ -69,14 +74,17 @@ public class MergeModulesImpl extends AbstractDao<MergeModule> implements MergeM
             moduleFromStorage.setTitle(module.getTitle());
             setUpdatedAndUpdate(moduleFromStorage);
         } else {
+            Integer previousContentId = storedFileContentId("merge_module", module.getId());
+            useStoredContent(module.getXslFile());
             setUpdatedAndUpdate(module);
+            removeUnreferencedFileContent(Collections.singleton(previousContentId));
         }
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public Collection<MergeModule> findByXmlSchemas(Collection<String> xmlSchemas) {
-        return (List<MergeModule>) getCriteria()
+        return (List<MergeModule>) getCacheableCriteria()
                 .createAlias("xmlSchemas", "xs")
                 .add(Restrictions.in("xs.xmlSchema", xmlSchemas))
                 .setResultTransformer(DISTINCT_ROOT_ENTITY).list();
@@ -23,6 +23,7 @@ package eionet.webq.dao;
 import eionet.webq.dao.orm.ProjectEntry;
 import eionet.webq.dao.orm.ProjectFile;
 
+import java.io.OutputStream;
 import java.util.Collection;
 
 /**
@@ -45,6 +46,23 @@ public interface ProjectFileStorage {
      */
     ProjectFile findById(int id);
 
+    /**
+     * Writes file content directly from storage to output stream, without loading it into memory.
+     *
+     * @param id file id
+     * @param output stream where content will be written
+     * @return whether file content was found and written
+     */
+    boolean writeContent(int id, OutputStream output);
+
+    /**
+     * Returns hash of file content. Content is not loaded if it is not loaded yet.
+     *
+     * @param projectFile project file
+     * @return content hash or null if file has no content or its hash is not known
+     */
+    String contentHash(ProjectFile projectFile);
+
     /**
      * Updates file in storage, does not update empty file content and size if file content is empty.
      *
@@ -62,6 +80,15 @@ public interface ProjectFileStorage {
     @SuppressWarnings("unchecked")
     Collection<ProjectFile> findAllFilesFor(ProjectEntry project);
 
+    /**
+     * Lists metadata of all files for project.
+     * Returned files are not attached to session and have no content set.
+     *
+     * @param project project where this file belongs
+     * @return files collection
+     */
+    Collection<ProjectFile> findAllFilesMetadataFor(ProjectEntry project);
+
     /**
      * Removes file(-s) by id(-s).
      *
@@ -80,7 +107,7 @@ public interface ProjectFileStorage {
     void cleanInsert(ProjectEntry projectEntry, Collection<ProjectFile> projectFiles);
     
     /**
-     * File content by file name and project tuple.
+     * File content by file name and project tuple. Second-level cache is not used, file is cached by service.
      *
      * @param name file name
      * @param projectEntry project where this file belongs
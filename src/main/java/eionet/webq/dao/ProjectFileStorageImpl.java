@@ -25,14 +25,21 @@ import static org.hibernate.criterion.Restrictions.eq;
 import static org.hibernate.criterion.Restrictions.in;
 import static org.hibernate.criterion.Restrictions.isNotNull;
 
+import java.io.OutputStream;
 import java.sql.Timestamp;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
 
 import org.apache.commons.lang3.ArrayUtils;
+import org.hibernate.CacheMode;
+import org.hibernate.Criteria;
 import org.hibernate.Session;
 import org.hibernate.criterion.Conjunction;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.transform.Transformers;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -48,10 +55,15 @@ import eionet.webq.dto.WebFormType;
 @Repository
 @Transactional
 public class ProjectFileStorageImpl extends AbstractDao<ProjectFile> implements WebFormStorage, ProjectFileStorage {
+    /**
+     * Project files table name.
+     */
+    private static final String TABLE_NAME = "project_file";
 
     @Override
     public int save(final ProjectFile projectFile, final ProjectEntry project) {
         projectFile.setProjectId(project.getId());
+        useStoredContent(projectFile.getFile());
         getCurrentSession().save(projectFile);
         return projectFile.getId();
     }
@@ -67,10 +79,26 @@ public class ProjectFileStorageImpl extends AbstractDao<ProjectFile> implements
         }
     }
 
+    @Override
+    public boolean writeContent(int id, OutputStream output) {
+        return copyFileContent(TABLE_NAME, null, output, id);
+    }
+
+    @Override
+    public String contentHash(ProjectFile projectFile) {
+        return contentHash(TABLE_NAME, null, projectFile.getFile(), projectFile.getId());
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public Collection<ProjectFile> findAllFilesFor(ProjectEntry project) {
-        return getCriteria().add(eq("projectId", project.getId())).addOrder(Order.asc("id")).list();
+        return getCacheableCriteria().add(eq("projectId", project.getId())).addOrder(Order.asc("id")).list();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Collection<ProjectFile> findAllFilesMetadataFor(ProjectEntry project) {
+        return metadataCriteria().add(eq("projectId", project.getId())).addOrder(Order.asc("id")).list();
     }
 
     @Override
@@ -80,40 +108,49 @@ public class ProjectFileStorageImpl extends AbstractDao<ProjectFile> implements
 
     @Override
     public void cleanInsert(ProjectEntry projectEntry, Collection<ProjectFile> projectFiles) {
-        this.removeByCriterion(eq("projectId", projectEntry.getId()));
+        Set<Integer> previousContentIds = this.removeRetainingFileContent(eq("projectId", projectEntry.getId()));
         this.getCurrentSession().flush();
         
         for (ProjectFile projectFile : projectFiles) {
             this.save(projectFile, projectEntry);
         }
+        this.removeUnreferencedFileContent(previousContentIds);
     }
 
     @Override
     public ProjectFile findByNameAndProject(String name, ProjectEntry projectEntry) {
-        return (ProjectFile) getCriteria()
+        // file with content is cached by service, so it is neither read from nor put into second-level cache
+        return (ProjectFile) getCriteria().setCacheMode(CacheMode.IGNORE)
                 .add(Restrictions.and(eq("projectId", projectEntry.getId()), eq("file.name", name))).uniqueResult();
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public Collection<ProjectFile> getAllActiveWebForms(WebFormType type) {
-        return getCriteria().add(activeWebFormCriterionForType(type)).list();
+        return getCacheableCriteria().add(activeWebFormCriterionForType(type)).list();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Collection<ProjectFile> getAllActiveWebFormsMetadata(WebFormType type) {
+        return metadataCriteria().add(activeWebFormCriterionForType(type)).list();
     }
 
     @Override
     public ProjectFile getActiveWebFormById(WebFormType type, int id) {
-        return (ProjectFile) getCriteria().add(and(activeWebFormCriterionForType(type), Restrictions.idEq(id))).uniqueResult();
+        return (ProjectFile) getCacheableCriteria().add(and(activeWebFormCriterionForType(type), Restrictions.idEq(id)))
+                .uniqueResult();
     }
 
     @Override
     public ProjectFile getWebFormById(int id) {
-        return (ProjectFile) getCriteria().add(Restrictions.idEq(id)).uniqueResult();
+        return (ProjectFile) getCacheableCriteria().add(Restrictions.idEq(id)).uniqueResult();
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public Collection<ProjectFile> findWebFormsForSchemas(WebFormType type, Collection<String> xmlSchemas) {
-        return getCriteria().add(and(activeWebFormCriterionForType(type), in("xmlSchema", xmlSchemas))).list();
+        return getCacheableCriteria().add(and(activeWebFormCriterionForType(type), in("xmlSchema", xmlSchemas))).list();
     }
 
     @Override
@@ -121,6 +158,34 @@ public class ProjectFileStorageImpl extends AbstractDao<ProjectFile> implements
         return ProjectFile.class;
     }
 
+    /**
+     * Creates criteria selecting all columns except content, transformed to detached {@link ProjectFile} objects.
+     * Selected rows are kept in query cache.
+     *
+     * @return criteria
+     */
+    private Criteria metadataCriteria() {
+        return getCacheableCriteria().setProjection(Projections.projectionList()
+                .add(Projections.id(), "id")
+                .add(Projections.property("projectId"), "projectId")
+                .add(Projections.property("title"), "title")
+                .add(Projections.property("file.name"), "fileName")
+                .add(Projections.property("file.sizeInBytes"), "fileSizeInBytes")
+                .add(Projections.property("remoteFileUrl"), "remoteFileUrl")
+                .add(Projections.property("newXmlFileName"), "newXmlFileName")
+                .add(Projections.property("emptyInstanceUrl"), "emptyInstanceUrl")
+                .add(Projections.property("description"), "description")
+                .add(Projections.property("xmlSchema"), "xmlSchema")
+                .add(Projections.property("active"), "active")
+                .add(Projections.property("localForm"), "localForm")
+                .add(Projections.property("remoteForm"), "remoteForm")
+                .add(Projections.property("fileType"), "fileType")
+                .add(Projections.property("userName"), "userName")
+                .add(Projections.property("created"), "created")
+                .add(Projections.property("updated"), "updated"))
+                .setResultTransformer(Transformers.aliasToBean(ProjectFile.class));
+    }
+
     /**
      * Updates all fields.
      *
@@ -128,9 +193,12 @@ public class ProjectFileStorageImpl extends AbstractDao<ProjectFile> implements
      */
     private void fullUpdate(ProjectFile projectFile) {
         Session currentSession = getCurrentSession();
+        Integer previousContentId = storedFileContentId(TABLE_NAME, projectFile.getId());
         projectFile.setUpdated(new Timestamp(System.currentTimeMillis()));
+        useStoredContent(projectFile.getFile());
         currentSession.merge(projectFile);
         currentSession.flush();
+        removeUnreferencedFileContent(Collections.singleton(previousContentId));
     }
 
     /**
@@ -49,7 +49,7 @@ public class ProjectFoldersImpl extends AbstractDao<ProjectEntry> implements Pro
     @Override
     @SuppressWarnings("unchecked")
     public Collection<ProjectEntry> getAllFolders() {
-        return getCriteria().addOrder(Order.asc("projectId")).list();
+        return getCacheableCriteria().addOrder(Order.asc("projectId")).list();
     }
 
     @Override
@@ -75,12 +75,12 @@ public class ProjectFoldersImpl extends AbstractDao<ProjectEntry> implements Pro
 
     @Override
     public ProjectEntry getByProjectId(String projectId) {
-        return (ProjectEntry) getCriteria().add(Restrictions.eq("projectId", projectId)).uniqueResult();
+        return (ProjectEntry) getCacheableCriteria().add(Restrictions.eq("projectId", projectId)).uniqueResult();
     }
 
     @Override
     public ProjectEntry getById(int id) {
-        return (ProjectEntry) getCriteria().add(Restrictions.eq("id", id)).uniqueResult();
+        return (ProjectEntry) getCacheableCriteria().add(Restrictions.eq("id", id)).uniqueResult();
     }
 
     @Override Class<ProjectEntry> getEntityClass() {
@@ -23,7 +23,11 @@ package eionet.webq.dao;
 import eionet.webq.dao.orm.UserFile;
 import eionet.webq.dto.UserFileIdUpdate;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 
 /**
  */
@@ -46,6 +50,44 @@ public interface UserFileStorage {
      */
     UserFile findFile(int id, String userId);
 
+    /**
+     * Get files by ids and userId with single query, see {@link #findFile(int, String)}.
+     *
+     * @param userId userId.
+     * @param ids file ids.
+     * @return files in order of ids, files not found are skipped
+     */
+    List<UserFile> findFiles(String userId, int... ids);
+
+    /**
+     * Writes file content directly from storage to output stream, without loading it into memory.
+     *
+     * @param id file id.
+     * @param userId userId.
+     * @param output stream where content will be written
+     * @return whether file content was found and written
+     */
+    boolean writeContent(int id, String userId, OutputStream output);
+
+    /**
+     * Returns hash of file content, without loading content itself.
+     *
+     * @param id file id.
+     * @param userId userId.
+     * @return content hash or null if file has no content or its hash is not known
+     */
+    String contentHash(int id, String userId);
+
+    /**
+     * Replaces file content with content read from stream. File size and updated time are set accordingly.
+     *
+     * @param id file id.
+     * @param userId userId.
+     * @param content new file content
+     * @return hash of new content or null if file was not found
+     */
+    String updateContent(int id, String userId, InputStream content);
+
     /**
      * Updates user file.
      *
@@ -63,6 +105,24 @@ public interface UserFileStorage {
     @SuppressWarnings("unchecked")
     Collection<UserFile> findAllUserFiles(String userId);
 
+    /**
+     * Lists metadata of all files for user id, ordered by update time.
+     * Returned files are not attached to session, only listing columns are set. Content, authorization and cookies are not loaded.
+     *
+     * @param userId user id
+     * @return files collection
+     */
+    Collection<UserFile> findAllUserFilesMetadata(String userId);
+
+    /**
+     * Get file metadata by file id and userId. Only listing columns are set, see {@link #findAllUserFilesMetadata(String)}.
+     *
+     * @param id file id.
+     * @param userId userId.
+     * @return file metadata or null
+     */
+    UserFile findFileMetadata(int id, String userId);
+
     /**
      * Find the number of files created for user, in that schema.
      *
@@ -75,6 +135,20 @@ public interface UserFileStorage {
      */
     Number getUserWebFormFileMaxNum(String userId, String xmlSchema, String fileName, char numDelim, char extensionDelim);
 
+    /**
+     * Increments and returns number of files created for user, in that schema, from that file name.
+     * Counter is started from {@link #getUserWebFormFileMaxNum(String, String, String, char, char)}, so file names
+     * are scanned only once per user, schema and file name. Numbers of files already having resulting name are skipped.
+     *
+     * @param userId user id
+     * @param xmlSchema schema name
+     * @param fileName file name
+     * @param numDelim number delimeter
+     * @param extensionDelim file etension delimeter
+     * @return next file number
+     */
+    long nextWebFormFileNum(String userId, String xmlSchema, String fileName, char numDelim, char extensionDelim);
+
     /**
      * Removes files which belongs to user by file id.
      * @param userId user id
@@ -82,6 +156,26 @@ public interface UserFileStorage {
      */
     void remove(String userId, int... ids);
 
+    /**
+     * Removes next batch of files last updated before given date, oldest first, in (updated, id) order.
+     * Removed files are gone from the next batch, so removal needs no cursor and an interrupted run is simply started
+     * again. Files are removed with bulk statements, without loading them. File contents no longer referenced are
+     * removed as well.
+     *
+     * @param updatedBefore files updated at or before this date are removed
+     * @param limit maximum number of files to remove
+     * @return ids of removed files, empty if there are no more expired files
+     */
+    List<Integer> removeExpired(Date updatedBefore, int limit);
+
+    /**
+     * Removes file number counters not used since given date. Removed counters are started anew when needed.
+     *
+     * @param updatedBefore counters updated before this date are removed
+     * @return number of removed counters
+     */
+    int removeExpiredWebFormFileNums(Date updatedBefore);
+
     /**
      * Updates userId for all files which belongs to {@link UserFileIdUpdate#oldUserId}.
      * @param updateData update data
@@ -23,21 +23,44 @@ package eionet.webq.dao;
 import static org.hibernate.criterion.Restrictions.and;
 import static org.hibernate.criterion.Restrictions.eq;
 import static org.hibernate.criterion.Restrictions.in;
+import static org.hibernate.criterion.Restrictions.isNull;
 import static org.hibernate.criterion.Restrictions.like;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.CountingInputStream;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
+import org.hibernate.Criteria;
+import org.hibernate.SQLQuery;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.transform.Transformers;
 import org.hibernate.type.IntegerType;
 import org.hibernate.type.Type;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.stereotype.Repository;
 
+import eionet.webq.dao.orm.UploadedFile;
 import eionet.webq.dao.orm.UserFile;
+import eionet.webq.dao.orm.util.WebQFileInfo;
 import eionet.webq.dto.UserFileIdUpdate;
 
 /**
@@ -49,11 +72,54 @@ public class UserFileStorageImpl extends AbstractDao<UserFile> implements UserFi
      * This class logger.
      */
     private static final Logger LOGGER = Logger.getLogger(UserFileStorageImpl.class);
+    /**
+     * User files table name.
+     */
+    private static final String TABLE_NAME = "user_xml";
+    /**
+     * Table keeping last file number per user, schema and file name.
+     */
+    private static final String COUNTER_TABLE_NAME = "user_xml_counter";
+    /**
+     * Condition matching single counter row.
+     */
+    private static final String COUNTER_KEY = " WHERE counter_key = :counterKey";
 
     @Override
     public int save(final UserFile file, final String userId) {
         file.setUserId(userId);
+        UploadedFile uploadedFile = file.getFile();
+        if (uploadedFile != null && uploadedFile.getContentSource() != null) {
+            return saveStreamingContent(file, uploadedFile.getContentSource());
+        }
+        useStoredContent(uploadedFile);
+        getCurrentSession().save(file);
+        return file.getId();
+    }
+
+    /**
+     * Saves file metadata and streams content from source directly to storage, so that content is not held in memory.
+     * Saved file is detached from session as its content reference is updated bypassing session state.
+     *
+     * @param file file without content
+     * @param contentSource content source
+     * @return id in database
+     */
+    private int saveStreamingContent(UserFile file, InputStreamSource contentSource) {
         getCurrentSession().save(file);
+        getCurrentSession().flush();
+        getCurrentSession().evict(file);
+        InputStream content = null;
+        try {
+            CountingInputStream countingContent = new CountingInputStream(contentSource.getInputStream());
+            content = countingContent;
+            replaceFileContent(TABLE_NAME, file.getId(), countingContent);
+            file.getFile().setSizeInBytes(countingContent.getCount());
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read content of file " + file.getName(), e);
+        } finally {
+            IOUtils.closeQuietly(content);
+        }
         return file.getId();
     }
 
@@ -62,12 +128,56 @@ public class UserFileStorageImpl extends AbstractDao<UserFile> implements UserFi
         return (UserFile) getCriteria().add(and(eq("id", id), eq("userId", userId))).uniqueResult();
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<UserFile> findFiles(String userId, int... ids) {
+        if (ids.length == 0) {
+            return Collections.emptyList();
+        }
+        List<UserFile> found = getCriteria().add(and(in("id", ArrayUtils.toObject(ids)), eq("userId", userId))).list();
+        Map<Integer, UserFile> filesById = new HashMap<Integer, UserFile>();
+        for (UserFile file : found) {
+            filesById.put(file.getId(), file);
+        }
+        List<UserFile> files = new ArrayList<UserFile>(ids.length);
+        for (int id : ids) {
+            UserFile file = filesById.get(id);
+            if (file != null) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    @Override
+    public boolean writeContent(int id, String userId, OutputStream output) {
+        return copyFileContent(TABLE_NAME, "o.user_id = ?", output, id, userId);
+    }
+
+    @Override
+    public String contentHash(int id, String userId) {
+        return contentHash(TABLE_NAME, "o.user_id = ?", null, id, userId);
+    }
+
+    @Override
+    public String updateContent(int id, String userId, InputStream content) {
+        Number count = (Number) getCriteria().add(and(eq("id", id), eq("userId", userId)))
+                .setProjection(Projections.rowCount()).uniqueResult();
+        if (count.intValue() == 0) {
+            return null;
+        }
+        return replaceFileContent(TABLE_NAME, id, content);
+    }
+
     @Override
     public void update(final UserFile file, final String userId) {
+        Integer previousContentId = storedFileContentId(TABLE_NAME, file.getId());
         UserFile userFile = (UserFile) getCriteria().add(Restrictions.idEq(file.getId())).uniqueResult();
         getCurrentSession().evict(userFile);
         if (userId.equals(userFile.getUserId())) {
+            useStoredContent(file.getFile());
             getCurrentSession().update(file);
+            removeUnreferencedFileContent(Collections.singleton(previousContentId));
         }
     }
 
@@ -77,6 +187,17 @@ public class UserFileStorageImpl extends AbstractDao<UserFile> implements UserFi
         return getCriteria().add(eq("userId", userId)).addOrder(Order.desc("updated")).list();
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public Collection<UserFile> findAllUserFilesMetadata(String userId) {
+        return metadataCriteria().add(eq("userId", userId)).addOrder(Order.desc("updated")).list();
+    }
+
+    @Override
+    public UserFile findFileMetadata(int id, String userId) {
+        return (UserFile) metadataCriteria().add(and(eq("id", id), eq("userId", userId))).uniqueResult();
+    }
+
     @Override
     public Number getUserWebFormFileMaxNum(String userId, String xmlSchema, String fileName, char numDelim, char extensionDelim) {
         String fileNameSearchCriteria;
@@ -100,11 +221,59 @@ public class UserFileStorageImpl extends AbstractDao<UserFile> implements UserFi
                 .uniqueResult());
     }
 
+    @Override
+    public long nextWebFormFileNum(String userId, String xmlSchema, String fileName, char numDelim, char extensionDelim) {
+        String counterKey = counterKey(userId, xmlSchema, fileName);
+        Long fileNum = incrementCounter(counterKey, 0);
+        if (fileNum == null) {
+            Number maxNum = getUserWebFormFileMaxNum(userId, xmlSchema, fileName, numDelim, extensionDelim);
+            fileNum = startCounter(counterKey, userId, maxNum != null ? maxNum.longValue() + 1 : 1);
+        }
+        // numbers are skipped past files named by users themselves after counter was started
+        while (fileNameExists(userId, xmlSchema, WebQFileInfo.numberedFileName(fileName, fileNum, numDelim, extensionDelim))) {
+            Number maxNum = getUserWebFormFileMaxNum(userId, xmlSchema, fileName, numDelim, extensionDelim);
+            long minNum = maxNum != null ? Math.max(maxNum.longValue(), fileNum) : fileNum;
+            Long nextNum = incrementCounter(counterKey, minNum);
+            fileNum = nextNum != null ? nextNum : startCounter(counterKey, userId, minNum + 1);
+        }
+        return fileNum;
+    }
+
     @Override
     public void remove(final String userId, final int... ids) {
         removeByCriterion(and(eq("userId", userId), in("id", ArrayUtils.toObject(ids))));
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<Integer> removeExpired(Date updatedBefore, int limit) {
+        // order matches ix_user_xml_updated_id, so that batch is read from index start
+        List<Object[]> rows = getCurrentSession()
+                .createSQLQuery("SELECT id, file_content_id FROM " + TABLE_NAME + " WHERE updated <= :updated"
+                        + " ORDER BY updated, id")
+                .addScalar("id", IntegerType.INSTANCE).addScalar("file_content_id", IntegerType.INSTANCE)
+                .setTimestamp("updated", updatedBefore).setMaxResults(limit).list();
+        if (rows.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Integer> ids = new ArrayList<Integer>(rows.size());
+        Set<Integer> contentIds = new HashSet<Integer>();
+        for (Object[] row : rows) {
+            ids.add((Integer) row[0]);
+            contentIds.add((Integer) row[1]);
+        }
+        getCurrentSession().createQuery("delete from UserFile where id in (:ids)").setParameterList("ids", ids)
+                .executeUpdate();
+        removeUnreferencedFileContent(contentIds);
+        return ids;
+    }
+
+    @Override
+    public int removeExpiredWebFormFileNums(Date updatedBefore) {
+        return getCurrentSession().createSQLQuery("DELETE FROM " + COUNTER_TABLE_NAME + " WHERE updated < :updated")
+                .addSynchronizedQuerySpace(COUNTER_TABLE_NAME).setTimestamp("updated", updatedBefore).executeUpdate();
+    }
+
     @Override
     public void updateUserId(UserFileIdUpdate updateData) {
         if (updateData.getUserAgent() != null) {
@@ -116,6 +285,12 @@ public class UserFileStorageImpl extends AbstractDao<UserFile> implements UserFi
                             .setString("newId", updateData.getNewUserId()).setString("oldId", updateData.getOldUserId())
                             .setString("userAgent", updateData.getUserAgent()).executeUpdate();
             LOGGER.info(updateResult + " rows affected in update statement");
+            if (updateResult > 0) {
+                // file numbers of both users are counted anew from their files
+                getCurrentSession().createSQLQuery("DELETE FROM " + COUNTER_TABLE_NAME + " WHERE user_id IN (:oldId, :newId)")
+                        .addSynchronizedQuerySpace(COUNTER_TABLE_NAME).setString("newId", updateData.getNewUserId())
+                        .setString("oldId", updateData.getOldUserId()).executeUpdate();
+            }
         } else {
             LOGGER.warn("No user agent set in user file id update data.");
         }
@@ -127,6 +302,105 @@ public class UserFileStorageImpl extends AbstractDao<UserFile> implements UserFi
                 .setTimestamp("downloaded", new Date()).setInteger("id", userFileId).executeUpdate();
     }
 
+    /**
+     * Creates criteria selecting listing columns only, transformed to detached {@link UserFile} objects.
+     *
+     * @return criteria
+     */
+    private Criteria metadataCriteria() {
+        return getCriteria().setProjection(Projections.projectionList()
+                .add(Projections.id(), "id")
+                .add(Projections.property("file.name"), "name")
+                .add(Projections.property("file.sizeInBytes"), "sizeInBytes")
+                .add(Projections.property("xmlSchema"), "xmlSchema")
+                .add(Projections.property("fromCdr"), "fromCdr")
+                .add(Projections.property("title"), "title")
+                .add(Projections.property("created"), "created")
+                .add(Projections.property("updated"), "updated")
+                .add(Projections.property("downloaded"), "downloaded"))
+                .setResultTransformer(Transformers.aliasToBean(UserFile.class));
+    }
+
+    /**
+     * Increments file number counter, skipping numbers up to given one.
+     *
+     * @param counterKey counter key
+     * @param minNum number counter is set to at least, before it is incremented
+     * @return incremented number or null if there is no such counter
+     */
+    private Long incrementCounter(String counterKey, long minNum) {
+        int updated = counterQuery("UPDATE " + COUNTER_TABLE_NAME + " SET last_num = GREATEST(last_num, :minNum) + 1,"
+                + " updated = :updated" + COUNTER_KEY, counterKey).setLong("minNum", minNum)
+                .setTimestamp("updated", new Date()).executeUpdate();
+        if (updated == 0) {
+            return null;
+        }
+        return ((Number) counterQuery("SELECT last_num FROM " + COUNTER_TABLE_NAME + COUNTER_KEY, counterKey)
+                .uniqueResult()).longValue();
+    }
+
+    /**
+     * Creates file number counter. If counter is created concurrently by another request, that counter is incremented.
+     *
+     * @param counterKey counter key
+     * @param userId user id
+     * @param fileNum first file number
+     * @return file number
+     */
+    private long startCounter(String counterKey, String userId, long fileNum) {
+        try {
+            counterQuery("INSERT INTO " + COUNTER_TABLE_NAME + " (counter_key, user_id, last_num, updated)"
+                    + " VALUES (:counterKey, :userId, :lastNum, :updated)", counterKey).setString("userId", userId)
+                    .setLong("lastNum", fileNum).setTimestamp("updated", new Date()).executeUpdate();
+            return fileNum;
+        } catch (ConstraintViolationException e) {
+            LOGGER.info("File number counter created concurrently, user=" + userId + ", counter=" + counterKey);
+            return incrementCounter(counterKey, fileNum - 1);
+        }
+    }
+
+    /**
+     * Checks whether user has file with given name, created for given schema.
+     *
+     * @param userId user id
+     * @param xmlSchema schema name
+     * @param fileName file name
+     * @return whether file exists
+     */
+    private boolean fileNameExists(String userId, String xmlSchema, String fileName) {
+        Number count = (Number) getCriteria()
+                .add(and(eq("userId", userId), xmlSchema != null ? eq("xmlSchema", xmlSchema) : isNull("xmlSchema"),
+                        eq("file.name", fileName))).setProjection(Projections.rowCount()).uniqueResult();
+        return count.intValue() > 0;
+    }
+
+    /**
+     * Creates query on file number counter row.
+     *
+     * @param sql query having counter key parameter
+     * @param counterKey counter key
+     * @return query
+     */
+    private SQLQuery counterQuery(String sql, String counterKey) {
+        return (SQLQuery) getCurrentSession().createSQLQuery(sql).addSynchronizedQuerySpace(COUNTER_TABLE_NAME)
+                .setString("counterKey", counterKey);
+    }
+
+    /**
+     * Builds key of file number counter. Key is hash of user id, schema and file name, so that it is short enough to be
+     * indexed regardless of these lengths.
+     *
+     * @param userId user id
+     * @param xmlSchema schema name, null is same as empty string
+     * @param fileName file name
+     * @return counter key
+     */
+    private static String counterKey(String userId, String xmlSchema, String fileName) {
+        return Hashing.sha256().newHasher().putString(userId, Charsets.UTF_8).putChar('\n')
+                .putString(StringUtils.defaultString(xmlSchema), Charsets.UTF_8).putChar('\n')
+                .putString(fileName, Charsets.UTF_8).hash().toString();
+    }
+
     @Override
     Class<UserFile> getEntityClass() {
         return UserFile.class;
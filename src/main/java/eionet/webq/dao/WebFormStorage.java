@@ -38,6 +38,15 @@ public interface WebFormStorage {
      */
     Collection<ProjectFile> getAllActiveWebForms(WebFormType type);
 
+    /**
+     * Retrieves metadata of all active web forms, see {@link #getAllActiveWebForms(WebFormType)}.
+     * Returned web forms are not attached to session and have no content set.
+     *
+     * @param type form type
+     * @return collection of web forms
+     */
+    Collection<ProjectFile> getAllActiveWebFormsMetadata(WebFormType type);
+
     /**
      * Get active web form by id.
      *
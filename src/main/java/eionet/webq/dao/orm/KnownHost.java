@@ -21,6 +21,8 @@
 package eionet.webq.dao.orm;
 
 import eionet.webq.dto.KnownHostAuthenticationMethod;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.validator.constraints.Length;
 import org.hibernate.validator.constraints.NotEmpty;
 
@@ -37,7 +39,12 @@ import javax.validation.constraints.NotNull;
  * Known host data.
  */
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = KnownHost.CACHE_REGION)
 public class KnownHost {
+    /**
+     * Second-level cache region of known hosts.
+     */
+    public static final String CACHE_REGION = "entity.knownHost";
     /**
      * Id.
      */
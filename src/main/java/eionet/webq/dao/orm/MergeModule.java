@@ -20,6 +20,8 @@
  */
 package eionet.webq.dao.orm;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Generated;
 import org.hibernate.validator.constraints.Length;
 import org.hibernate.validator.constraints.NotEmpty;
@@ -43,7 +45,16 @@ import java.util.List;
 /**
  */
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = MergeModule.CACHE_REGION)
 public class MergeModule {
+    /**
+     * Second-level cache region of merge modules.
+     */
+    public static final String CACHE_REGION = "entity.mergeModule";
+    /**
+     * Second-level cache region of merge module xml schema collections.
+     */
+    public static final String XML_SCHEMAS_CACHE_REGION = "collection.mergeModule.xmlSchemas";
     /**
      * Id.
      */
@@ -60,6 +71,7 @@ public class MergeModule {
      */
     @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.EAGER)
     @JoinColumn(name = "merge_module_id")
+    @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = MergeModule.XML_SCHEMAS_CACHE_REGION)
     @Valid
     @NotEmpty
     private List<MergeModuleXmlSchema> xmlSchemas;
@@ -20,6 +20,9 @@
  */
 package eionet.webq.dao.orm;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
@@ -30,7 +33,12 @@ import javax.validation.constraints.Pattern;
 /**
  */
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = MergeModuleXmlSchema.CACHE_REGION)
 public class MergeModuleXmlSchema {
+    /**
+     * Second-level cache region of merge module xml schemas.
+     */
+    public static final String CACHE_REGION = "entity.mergeModuleXmlSchema";
     /**
      * Id.
      */
@@ -20,6 +20,8 @@
  */
 package eionet.webq.dao.orm;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.validator.constraints.Length;
 
 import javax.persistence.Column;
@@ -38,7 +40,12 @@ import java.util.Date;
  */
 @Entity
 @Table(name = "project_folder")
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = ProjectEntry.CACHE_REGION)
 public class ProjectEntry {
+    /**
+     * Second-level cache region of project entries.
+     */
+    public static final String CACHE_REGION = "entity.projectEntry";
     /**
      * project id in storage.
      */
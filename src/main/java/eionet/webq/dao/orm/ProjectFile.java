@@ -35,6 +35,8 @@ import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 import javax.persistence.Transient;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Generated;
 import org.hibernate.validator.constraints.NotEmpty;
 
@@ -43,7 +45,12 @@ import org.hibernate.validator.constraints.NotEmpty;
  */
 @Entity
 @Table(name = "project_file")
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = ProjectFile.CACHE_REGION)
 public class ProjectFile {
+    /**
+     * Second-level cache region of project files. Only file metadata and content reference are cached.
+     */
+    public static final String CACHE_REGION = "entity.projectFile";
     /**
      * Auto generated id.
      */
@@ -173,6 +180,15 @@ public class ProjectFile {
         return file.getSizeInBytes();
     }
 
+    /**
+     * Set file size for embedded {@link UploadedFile}.
+     *
+     * @param fileSizeInBytes file size
+     */
+    public void setFileSizeInBytes(long fileSizeInBytes) {
+        file.setSizeInBytes(fileSizeInBytes);
+    }
+
     public String getNewXmlFileName() {
         return newXmlFileName;
     }
@@ -205,16 +221,12 @@ public class ProjectFile {
 
     /**
      * Set file content for embedded {@link UploadedFile}.
+     * Existing content is replaced, not modified, as stored content could be shared with other files.
      *
      * @param fileContent file content.
      */
     public void setFileContent(byte[] fileContent) {
-        UploadedFile.FileContent content = file.getContent();
-        if (content == null) {
-            file.setContent(new UploadedFile.FileContent(fileContent));
-        } else {
-            content.setFileContent(fileContent);
-        }
+        file.setContent(new UploadedFile.FileContent(fileContent));
         file.setSizeInBytes(fileContent.length);
     }
 
@@ -20,7 +20,6 @@
  */
 package eionet.webq.dao.orm;
 
-import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Embeddable;
 import javax.persistence.Entity;
@@ -30,9 +29,15 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.Lob;
-import javax.persistence.OneToOne;
+import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cascade;
+import org.hibernate.annotations.CascadeType;
+import org.springframework.core.io.InputStreamSource;
+
+import com.google.common.hash.Hashing;
+
 /**
  * Class represents uploaded file.
  */
@@ -44,9 +49,12 @@ public class UploadedFile {
     @Column(name = "file_name")
     private String name;
     /**
-     * File content bytes.
+     * File content bytes. Content rows are shared between files with identical content, so removal is not cascaded;
+     * unreferenced rows are removed by storage implementations.
      */
-    @OneToOne(cascade = CascadeType.ALL, fetch = FetchType.LAZY)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @Cascade({CascadeType.SAVE_UPDATE, CascadeType.PERSIST, CascadeType.MERGE, CascadeType.DETACH, CascadeType.REFRESH,
+            CascadeType.LOCK, CascadeType.REPLICATE})
     @JoinColumn(name = "file_content_id")
     private FileContent fileContent;
     /**
@@ -59,6 +67,10 @@ public class UploadedFile {
      * File content type.
      */
     private transient String contentType;
+    /**
+     * Source of content not read into memory, content is streamed to storage when file is saved.
+     */
+    private transient InputStreamSource contentSource;
 
     /**
      * Shorthand for uploaded file creation.
@@ -73,6 +85,19 @@ public class UploadedFile {
         this.sizeInBytes = content.length;
     }
 
+    /**
+     * Creates uploaded file, which content is read from source only when file is saved.
+     *
+     * @param name file name
+     * @param contentSource content source
+     * @param sizeInBytes content size in bytes
+     */
+    public UploadedFile(String name, InputStreamSource contentSource, long sizeInBytes) {
+        this.name = name;
+        this.contentSource = contentSource;
+        this.sizeInBytes = sizeInBytes;
+    }
+
     /**
      * Empty constructor for instantiation by reflexion.
      */
@@ -111,6 +136,14 @@ public class UploadedFile {
         this.contentType = contentType;
     }
 
+    public InputStreamSource getContentSource() {
+        return contentSource;
+    }
+
+    public void setContentSource(InputStreamSource contentSource) {
+        this.contentSource = contentSource;
+    }
+
     @Override
     public String toString() {
         return "UploadedFile{" + "name='" + name + '\'' + ", sizeInBytes=" + sizeInBytes + '}';
@@ -134,6 +167,11 @@ public class UploadedFile {
         @Lob
         @Column(nullable = false)
         private byte[] fileContent;
+        /**
+         * SHA-256 hash of file content, used to find already stored identical content.
+         */
+        @Column(name = "content_hash")
+        private String hash;
 
         /**
          * Creates file content with content.
@@ -141,7 +179,18 @@ public class UploadedFile {
          * @param fileContent file content bytes
          */
         public FileContent(byte[] fileContent) {
+            setFileContent(fileContent);
+        }
+
+        /**
+         * Creates file content with content, which hash is already known.
+         *
+         * @param fileContent file content bytes
+         * @param hash hash of content, see {@link #hash(byte[])}
+         */
+        public FileContent(byte[] fileContent, String hash) {
             this.fileContent = fileContent;
+            this.hash = hash;
         }
 
         /**
@@ -164,6 +213,25 @@ public class UploadedFile {
 
         public void setFileContent(byte[] fileContent) {
             this.fileContent = fileContent;
+            this.hash = hash(fileContent);
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public void setHash(String hash) {
+            this.hash = hash;
+        }
+
+        /**
+         * Calculates content hash in the form stored in content_hash column.
+         *
+         * @param content content bytes
+         * @return hex encoded SHA-256 hash or null if content is null
+         */
+        public static String hash(byte[] content) {
+            return content != null ? Hashing.sha256().hashBytes(content).toString() : null;
         }
     }
 }
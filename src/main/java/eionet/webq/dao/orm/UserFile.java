@@ -189,23 +189,37 @@ public class UserFile {
 
     /**
      * Set file content for embedded {@link UploadedFile}.
+     * Existing content is replaced, not modified, as stored content could be shared with other files.
      *
      * @param content file content.
      */
     public void setContent(byte[] content) {
-        UploadedFile.FileContent fileContent = file.getContent();
-        if (fileContent != null) {
-            fileContent.setFileContent(content);
-        } else {
-            file.setContent(new UploadedFile.FileContent(content));
-        }
+        file.setContent(new UploadedFile.FileContent(content));
         file.setSizeInBytes(content.length);
     }
 
+    /**
+     * Returns embedded {@link UploadedFile}.
+     *
+     * @return uploaded file
+     */
+    public UploadedFile getFile() {
+        return file;
+    }
+
     public long getSizeInBytes() {
         return file.getSizeInBytes();
     }
 
+    /**
+     * Set file size for embedded {@link UploadedFile}.
+     *
+     * @param sizeInBytes file size
+     */
+    public void setSizeInBytes(long sizeInBytes) {
+        file.setSizeInBytes(sizeInBytes);
+    }
+
     public String getContentType() {
         return file.getContentType();
     }
@@ -63,4 +63,21 @@ public final class WebQFileInfo {
     public static boolean fileIsEmpty(UploadedFile file) {
         return file == null || file.getSizeInBytes() == 0;
     }
+
+    /**
+     * Inserts file number into file name, before extension if there is one, e.g. new_form.xml becomes new_form_1.xml.
+     *
+     * @param fileName file name
+     * @param fileNum file number
+     * @param numDelim number delimiter
+     * @param extensionDelim file extension delimiter
+     * @return numbered file name
+     */
+    public static String numberedFileName(String fileName, long fileNum, char numDelim, char extensionDelim) {
+        int lastIndexOfDot = fileName.lastIndexOf(extensionDelim);
+        if (lastIndexOfDot > 0) {
+            return fileName.substring(0, lastIndexOfDot) + numDelim + fileNum + fileName.substring(lastIndexOfDot);
+        }
+        return fileName + numDelim + fileNum;
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.dto;
+
+import com.google.common.cache.CacheStats;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Size, hit rate, load time and eviction statistics of single cache.
+ */
+public class CacheStatistics {
+    /** Cache name. */
+    private String name;
+    /** Approximate number of cached entries. */
+    private long size;
+    /** Cache lookups returning cached value. */
+    private long hitCount;
+    /** Cache lookups not finding cached value. */
+    private long missCount;
+    /** Ratio of hits to all lookups. */
+    private double hitRate;
+    /** Values loaded successfully. */
+    private long loadSuccessCount;
+    /** Value loads failed with exception. */
+    private long loadExceptionCount;
+    /** Average time spent loading value, in milliseconds. */
+    private double averageLoadMillis;
+    /** Entries evicted because of size or expiration. */
+    private long evictionCount;
+    /** Whether cached values are refreshed in background. */
+    private boolean refreshing;
+
+    /**
+     * No-arg constructor for serialization.
+     */
+    public CacheStatistics() {
+    }
+
+    /**
+     * Creates statistics from Guava cache stats.
+     *
+     * @param name cache name
+     * @param size cache size
+     * @param stats Guava cache stats
+     * @param refreshing whether cache values are refreshed in background
+     */
+    public CacheStatistics(String name, long size, CacheStats stats, boolean refreshing) {
+        this.name = name;
+        this.size = size;
+        this.hitCount = stats.hitCount();
+        this.missCount = stats.missCount();
+        this.hitRate = stats.hitRate();
+        this.loadSuccessCount = stats.loadSuccessCount();
+        this.loadExceptionCount = stats.loadExceptionCount();
+        this.averageLoadMillis = stats.averageLoadPenalty() / TimeUnit.MILLISECONDS.toNanos(1);
+        this.evictionCount = stats.evictionCount();
+        this.refreshing = refreshing;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public double getHitRate() {
+        return hitRate;
+    }
+
+    public long getLoadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    public long getLoadExceptionCount() {
+        return loadExceptionCount;
+    }
+
+    public double getAverageLoadMillis() {
+        return averageLoadMillis;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public boolean isRefreshing() {
+        return refreshing;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatistics{" + "name='" + name + '\'' + ", size=" + size + ", hitCount=" + hitCount + ", missCount="
+                + missCount + ", hitRate=" + hitRate + ", loadSuccessCount=" + loadSuccessCount + ", loadExceptionCount="
+                + loadExceptionCount + ", averageLoadMillis=" + averageLoadMillis + ", evictionCount=" + evictionCount
+                + ", refreshing=" + refreshing + '}';
+    }
+}
@@ -29,9 +29,6 @@ import org.springframework.util.CollectionUtils;
 import eionet.webq.dao.WebFormStorage;
 import eionet.webq.dao.orm.ProjectFile;
 import eionet.webq.dto.WebFormType;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -42,13 +39,18 @@ public abstract class AbstractWebFormsService implements WebFormService {
      */
     @Autowired
     private WebFormStorage webFormStorage;
+    /**
+     * Catalog of active web forms.
+     */
+    @Autowired
+    private WebFormCatalog webFormCatalog;
 
     @Override
     public Collection<ProjectFile> findWebFormsForSchemas(Collection<String> xmlSchemas) {
         if (CollectionUtils.isEmpty(xmlSchemas)) {
-            return getAllActiveWebForms();
+            return webFormCatalog.activeWebForms(webFormsForType());
         }
-        return webFormStorage.findWebFormsForSchemas(webFormsForType(), xmlSchemas);
+        return webFormCatalog.activeWebFormsForSchemas(webFormsForType(), xmlSchemas);
     }
 
     @Override
@@ -56,9 +58,14 @@ public abstract class AbstractWebFormsService implements WebFormService {
         return webFormStorage.getAllActiveWebForms(webFormsForType());
     }
 
+    @Override
+    public Collection<ProjectFile> getAllActiveWebFormsMetadata() {
+        return webFormCatalog.activeWebForms(webFormsForType());
+    }
+
     @Override
     public ProjectFile findActiveWebFormById(int id) {
-        return webFormStorage.getActiveWebFormById(webFormsForType(), id);
+        return webFormCatalog.activeWebForm(webFormsForType(), id);
     }
 
     @Override
@@ -72,15 +79,9 @@ public abstract class AbstractWebFormsService implements WebFormService {
      * @return web form type.
      */
     protected abstract WebFormType webFormsForType();
-    
+
     @Override
-    public List<ProjectFile> sortWebformsAlphabetically(Collection<ProjectFile> webforms){
-        List<ProjectFile> webformsList = new ArrayList(webforms);
-        Collections.sort(webformsList, new Comparator<ProjectFile>(){
-            public int compare(ProjectFile p1, ProjectFile p2){
-                return p1.getTitle().toUpperCase().compareTo(p2.getTitle().toUpperCase());
-            }
-        });
-        return webformsList;
+    public List<ProjectFile> sortWebformsAlphabetically(Collection<ProjectFile> webforms) {
+        return webFormCatalog.sortByTitle(webforms);
     }
 }
@@ -0,0 +1,63 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.service;
+
+import eionet.webq.dto.CacheStatistics;
+
+import java.util.List;
+
+/**
+ * Cache statistics and invalidation.
+ */
+public interface CacheAdminService {
+
+    /**
+     * Statistics of all caches.
+     *
+     * @return statistics sorted by cache name
+     */
+    List<CacheStatistics> statistics();
+
+    /**
+     * Statistics of single cache.
+     *
+     * @param cacheName cache name
+     * @return statistics or null if cache does not exist
+     */
+    CacheStatistics statistics(String cacheName);
+
+    /**
+     * Removes all entries from cache.
+     *
+     * @param cacheName cache name
+     * @return true if cache exists
+     */
+    boolean invalidate(String cacheName);
+
+    /**
+     * Removes entries with keys having given string representation, so that also composite keys can be evicted.
+     *
+     * @param cacheName cache name
+     * @param key key or its string representation
+     * @return number of removed entries
+     */
+    int evict(String cacheName, String key);
+}
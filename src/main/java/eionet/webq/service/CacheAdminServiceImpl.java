@@ -0,0 +1,153 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.service;
+
+import eionet.webq.cache.GuavaCache;
+import eionet.webq.dto.CacheStatistics;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedOperationParameter;
+import org.springframework.jmx.export.annotation.ManagedOperationParameters;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Cache statistics and invalidation, also exposed through JMX.
+ * Hibernate update timestamps region is not a cache of cache manager, see
+ * {@link eionet.webq.cache.GuavaRegionFactory}, so it is neither listed nor cleared here.
+ */
+@Service
+@ManagedResource(objectName = "eionet.webq:type=Caches")
+public class CacheAdminServiceImpl implements CacheAdminService {
+    /**
+     * Static logger for this class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(CacheAdminServiceImpl.class);
+    /**
+     * Cache manager.
+     */
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Override
+    public List<CacheStatistics> statistics() {
+        List<CacheStatistics> statistics = new ArrayList<CacheStatistics>();
+        for (String cacheName : getCacheNames()) {
+            CacheStatistics cacheStatistics = statistics(cacheName);
+            if (cacheStatistics != null) {
+                statistics.add(cacheStatistics);
+            }
+        }
+        return statistics;
+    }
+
+    @Override
+    public CacheStatistics statistics(String cacheName) {
+        GuavaCache cache = guavaCache(cacheName);
+        if (cache == null) {
+            return null;
+        }
+        return new CacheStatistics(cache.getName(), cache.size(), cache.getStats(), cache.isRefreshing());
+    }
+
+    @ManagedOperation(description = "Removes all entries from cache")
+    @ManagedOperationParameters({@ManagedOperationParameter(name = "cacheName", description = "Cache name")})
+    @Override
+    public boolean invalidate(String cacheName) {
+        GuavaCache cache = guavaCache(cacheName);
+        if (cache == null) {
+            return false;
+        }
+        cache.clear();
+        LOGGER.info("Cache " + cacheName + " invalidated");
+        return true;
+    }
+
+    @ManagedOperation(description = "Removes cache entries by key")
+    @ManagedOperationParameters({@ManagedOperationParameter(name = "cacheName", description = "Cache name"),
+            @ManagedOperationParameter(name = "key", description = "Key or its string representation")})
+    @Override
+    public int evict(String cacheName, String key) {
+        GuavaCache cache = guavaCache(cacheName);
+        if (cache == null || key == null) {
+            return 0;
+        }
+        int evicted = 0;
+        Iterator<Object> keys = cache.getNativeCache().asMap().keySet().iterator();
+        while (keys.hasNext()) {
+            if (key.equals(String.valueOf(keys.next()))) {
+                keys.remove();
+                evicted++;
+            }
+        }
+        LOGGER.info(evicted + " entries with key=" + key + " evicted from cache " + cacheName);
+        return evicted;
+    }
+
+    /**
+     * Names of all caches.
+     *
+     * @return sorted cache names
+     */
+    @ManagedAttribute(description = "Cache names")
+    public String[] getCacheNames() {
+        TreeSet<String> names = new TreeSet<String>(cacheManager.getCacheNames());
+        return names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Statistics of all caches, one line per cache.
+     *
+     * @return statistics as text
+     */
+    @ManagedAttribute(description = "Size, hit rate, load time and eviction counts of all caches")
+    public String[] getStatistics() {
+        List<CacheStatistics> statistics = statistics();
+        String[] lines = new String[statistics.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = statistics.get(i).toString();
+        }
+        return lines;
+    }
+
+    /**
+     * Finds cache by name.
+     *
+     * @param cacheName cache name
+     * @return cache or null if cache does not exist or does not collect statistics
+     */
+    private GuavaCache guavaCache(String cacheName) {
+        if (cacheName == null || !cacheManager.getCacheNames().contains(cacheName)) {
+            return null;
+        }
+        Cache cache = cacheManager.getCache(cacheName);
+        return cache instanceof GuavaCache ? (GuavaCache) cache : null;
+    }
+}
@@ -24,7 +24,9 @@ import eionet.webq.dao.orm.UserFile;
 import eionet.webq.dto.Conversion;
 import org.springframework.http.ResponseEntity;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Service provides conversion information for xml schemas.
@@ -42,8 +44,17 @@ public interface ConversionService {
     /**
      * List all available conversions.
      *
-     * @param schema xml schema
+     * @param schema xml schema, no conversions are available for missing schema
      * @return collection of available conversions
      */
     List<Conversion> conversionsFor(String schema);
+
+    /**
+     * List available conversions for several schemas at once. Schemas not found in cache are looked up in parallel.
+     * Schemas, which lookup failed or did not complete in time, are not included into result.
+     *
+     * @param schemas xml schemas, duplicates and empty values are ignored
+     * @return available conversions by schema
+     */
+    Map<String, List<Conversion>> conversionsForSchemas(Collection<String> schemas);
 }
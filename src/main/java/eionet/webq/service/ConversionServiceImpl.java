@@ -23,10 +23,13 @@ package eionet.webq.service;
 import eionet.webq.dao.orm.UserFile;
 import eionet.webq.dto.Conversion;
 import eionet.webq.dto.ListConversionResponse;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -36,7 +39,22 @@ import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.RestOperations;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Conversion service implementation.
@@ -47,6 +65,10 @@ public class ConversionServiceImpl implements ConversionService {
      * Static logger for this class.
      */
     private static final Logger LOGGER = Logger.getLogger(ConversionServiceImpl.class);
+    /**
+     * Conversions cache name.
+     */
+    static final String CONVERSIONS_CACHE = "conversions";
     /**
      * Template for calling rest services.
      */
@@ -77,6 +99,27 @@ public class ConversionServiceImpl implements ConversionService {
      */
     @Value("${convert.push.conversion.id.parameter}")
     private String convertPushIdParameter;
+    /**
+     * How long bulk lookup waits for conversions lists, in milliseconds.
+     */
+    @Value("${conversions.lookup.timeout.ms}")
+    long lookupTimeout;
+    /**
+     * Executor for parallel conversions list lookups, bounding number of concurrent calls.
+     */
+    @Autowired
+    @Qualifier("conversionLookupExecutor")
+    Executor lookupExecutor;
+    /**
+     * Cache manager.
+     */
+    @Autowired
+    CacheManager cacheManager;
+    /**
+     * Lookups in progress by schema, so that the same schema is not looked up twice concurrently.
+     */
+    private final ConcurrentMap<String, Future<List<Conversion>>> pendingLookups =
+            new ConcurrentHashMap<String, Future<List<Conversion>>>();
 
     @Override
     public ResponseEntity<byte[]> convert(UserFile fileContent, String conversionId) {
@@ -90,9 +133,109 @@ public class ConversionServiceImpl implements ConversionService {
         return entity;
     }
 
-    @Cacheable(value = "conversions")
     @Override
     public List<Conversion> conversionsFor(String schema) {
+        if (StringUtils.isEmpty(schema)) {
+            return Collections.emptyList();
+        }
+        return cacheManager.getCache(CONVERSIONS_CACHE).get(schema, conversionsLoader(schema));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Map<String, List<Conversion>> conversionsForSchemas(Collection<String> schemas) {
+        Cache cache = cacheManager.getCache(CONVERSIONS_CACHE);
+        Map<String, List<Conversion>> conversions = new HashMap<String, List<Conversion>>();
+        Map<String, Future<List<Conversion>>> lookups = new HashMap<String, Future<List<Conversion>>>();
+        for (String schema : new HashSet<String>(schemas)) {
+            if (StringUtils.isEmpty(schema)) {
+                continue;
+            }
+            Cache.ValueWrapper cached = cache.get(schema);
+            if (cached != null) {
+                conversions.put(schema, (List<Conversion>) cached.get());
+            } else {
+                lookups.put(schema, lookup(schema, cache));
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + lookupTimeout;
+        for (Map.Entry<String, Future<List<Conversion>>> lookup : lookups.entrySet()) {
+            try {
+                long timeLeft = Math.max(0, deadline - System.currentTimeMillis());
+                conversions.put(lookup.getKey(), lookup.getValue().get(timeLeft, TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                LOGGER.warn("Conversions for schema=" + lookup.getKey() + " not loaded in " + lookupTimeout + " ms");
+            } catch (ExecutionException e) {
+                LOGGER.warn("Unable to load conversions for schema=" + lookup.getKey(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return conversions;
+    }
+
+    /**
+     * Starts conversions list lookup, unless lookup for this schema is already in progress.
+     * Lookup result is put into cache, so lookups not completed in time are still useful for next requests.
+     * If executor rejects lookup, it is run in calling thread.
+     *
+     * @param schema xml schema
+     * @param cache conversions cache
+     * @return lookup result
+     */
+    private Future<List<Conversion>> lookup(final String schema, final Cache cache) {
+        Future<List<Conversion>> pending = pendingLookups.get(schema);
+        if (pending != null) {
+            return pending;
+        }
+        FutureTask<List<Conversion>> task = new FutureTask<List<Conversion>>(new Callable<List<Conversion>>() {
+            @Override
+            public List<Conversion> call() throws Exception {
+                try {
+                    return cache.get(schema, conversionsLoader(schema));
+                } finally {
+                    pendingLookups.remove(schema);
+                }
+            }
+        });
+        pending = pendingLookups.putIfAbsent(schema, task);
+        if (pending != null) {
+            return pending;
+        }
+        try {
+            lookupExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Conversions lookup executor is saturated, loading conversions for schema=" + schema
+                    + " in request thread");
+            task.run();
+        }
+        return task;
+    }
+
+    /**
+     * Creates cache value loader for conversions list, so that cached lists can be refreshed in background.
+     *
+     * @param schema xml schema
+     * @return conversions list loader
+     */
+    private Callable<List<Conversion>> conversionsLoader(final String schema) {
+        return new Callable<List<Conversion>>() {
+            @Override
+            public List<Conversion> call() throws Exception {
+                return listConversions(schema);
+            }
+        };
+    }
+
+    /**
+     * Calls converters api for available conversions.
+     *
+     * @param schema xml schema
+     * @return available conversions
+     */
+    private List<Conversion> listConversions(String schema) {
         return restOperations.getForObject(apiCallTo(listConversions), ListConversionResponse.class, schema).getConversions();
     }
 
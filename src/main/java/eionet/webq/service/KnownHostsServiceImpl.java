@@ -22,24 +22,45 @@ package eionet.webq.service;
 
 import eionet.webq.dao.KnownHosts;
 import eionet.webq.dao.orm.KnownHost;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Known hosts service. Hosts are looked up from in-memory index of host URLs, which is rebuilt after hosts are changed
+ * and refreshed periodically to pick up changes made on other nodes.
  */
 @Service
 public class KnownHostsServiceImpl implements KnownHostsService {
+    /**
+     * Time in milliseconds after which known hosts index is refreshed from database.
+     */
+    static final long INDEX_TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(5);
     /**
      * Known hosts storage.
      */
     @Autowired
     private KnownHosts knownHosts;
+    /**
+     * Known hosts sorted by host URL, null if index must be rebuilt.
+     */
+    private volatile NavigableMap<String, KnownHost> hostsByUrl;
+    /**
+     * Time of last index rebuild.
+     */
+    private volatile long indexBuiltAt;
 
     @Override
     public void save(KnownHost host) {
         knownHosts.save(host);
+        invalidateIndex();
     }
 
     @Override
@@ -55,25 +76,64 @@ public class KnownHostsServiceImpl implements KnownHostsService {
     @Override
     public void update(KnownHost host) {
         knownHosts.update(host);
+        invalidateIndex();
     }
 
     @Override
     public void remove(int id) {
         knownHosts.remove(id);
+        invalidateIndex();
     }
 
     @Override
     public KnownHost getKnownHost(String uri) {
+        if (uri == null) {
+            return null;
+        }
+        NavigableMap<String, KnownHost> index = index();
+        String key = uri;
+        while (true) {
+            Map.Entry<String, KnownHost> candidate = index.floorEntry(key);
+            if (candidate == null) {
+                return null;
+            }
+            if (uri.startsWith(candidate.getKey())) {
+                return candidate.getValue();
+            }
+            // longer matching prefix could only be sorted before common part of uri and candidate
+            key = StringUtils.getCommonPrefix(key, candidate.getKey());
+        }
+    }
 
-        KnownHost knownHost = null;
-        Collection<KnownHost> hosts = findAll();
-        for (KnownHost host : hosts) {
-            if (uri.startsWith(host.getHostURL())) {
-                knownHost = host;
-                break;
+    /**
+     * Returns known hosts index, rebuilds it if it is missing or expired.
+     *
+     * @return known hosts sorted by host URL
+     */
+    private NavigableMap<String, KnownHost> index() {
+        NavigableMap<String, KnownHost> index = hostsByUrl;
+        if (index != null && System.currentTimeMillis() - indexBuiltAt < INDEX_TIME_TO_LIVE) {
+            return index;
+        }
+        synchronized (this) {
+            if (hostsByUrl == null || System.currentTimeMillis() - indexBuiltAt >= INDEX_TIME_TO_LIVE) {
+                NavigableMap<String, KnownHost> rebuilt = new TreeMap<String, KnownHost>();
+                for (KnownHost host : knownHosts.findAll()) {
+                    if (host.getHostURL() != null && !rebuilt.containsKey(host.getHostURL())) {
+                        rebuilt.put(host.getHostURL(), host);
+                    }
+                }
+                hostsByUrl = Collections.unmodifiableNavigableMap(rebuilt);
+                indexBuiltAt = System.currentTimeMillis();
             }
+            return hostsByUrl;
         }
-        return knownHost;
     }
 
+    /**
+     * Drops known hosts index, so it is rebuilt on next lookup.
+     */
+    private synchronized void invalidateIndex() {
+        hostsByUrl = null;
+    }
 }
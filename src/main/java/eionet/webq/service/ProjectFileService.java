@@ -25,6 +25,7 @@ import eionet.webq.dao.orm.ProjectFile;
 import eionet.webq.dao.orm.ProjectFileType;
 import eionet.webq.service.impl.project.export.ImportProjectResult;
 import java.io.IOException;
+import java.io.OutputStream;
 import org.springframework.util.MultiValueMap;
 
 import java.util.Collection;
@@ -33,6 +34,12 @@ import java.util.Collection;
  * Project file storage service.
  */
 public interface ProjectFileService {
+    /**
+     * Files up to this size in bytes are loaded and cached by {@link #fileContentBy(String, ProjectEntry)}, larger files
+     * should be streamed with {@link #writeContent(ProjectFile, OutputStream)}.
+     */
+    long MAX_CACHED_FILE_SIZE = 1024 * 1024;
+
     /**
      * Saves or updates file in storage.
      *
@@ -69,6 +76,9 @@ public interface ProjectFileService {
 
     /**
      * Retrieve file name and content.
+     * Files not larger than {@link #MAX_CACHED_FILE_SIZE} are returned with content loaded and are cached until any project
+     * file is changed through this service or any project is removed. Missing files are not cached.
+     * Cached files are returned as copies, so callers may modify them.
      *
      * @param project associated project
      * @param name file name
@@ -76,6 +86,23 @@ public interface ProjectFileService {
      */
     ProjectFile fileContentBy(String name, ProjectEntry project);
 
+    /**
+     * Writes file content from storage directly to output stream.
+     *
+     * @param file file which content will be written
+     * @param output stream where content will be written
+     * @return whether file content was available
+     */
+    boolean writeContent(ProjectFile file, OutputStream output);
+
+    /**
+     * Returns hash of file content, usable as file content version.
+     *
+     * @param file project file
+     * @return content hash or null if not known
+     */
+    String contentHash(ProjectFile file);
+
     /**
      * Remove file by id and classifier.
      *
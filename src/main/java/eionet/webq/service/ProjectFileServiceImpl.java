@@ -25,6 +25,7 @@ import eionet.webq.dao.ProjectFileStorage;
 import eionet.webq.dao.orm.ProjectEntry;
 import eionet.webq.dao.orm.ProjectFile;
 import eionet.webq.dao.orm.ProjectFileType;
+import eionet.webq.dao.orm.UploadedFile;
 import eionet.webq.dao.orm.util.WebQFileInfo;
 import eionet.webq.service.impl.project.export.ArchiveConstants;
 import eionet.webq.service.impl.project.export.ArchiveFile;
@@ -36,10 +37,15 @@ import eionet.webq.service.impl.project.export.ProjectMetadata;
 import eionet.webq.service.impl.project.export.ProjectMetadataSerializer;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.LinkedMultiValueMap;
@@ -51,6 +57,11 @@ import org.springframework.util.MultiValueMap;
 public class ProjectFileServiceImpl implements ProjectFileService {
     
     static final String PROJECT_EXPORT_METADATA_FILE = "webform-project-export.metadata";
+    /**
+     * Cache of project files served by name, invalidated on any project file change. Cached files are detached copies
+     * holding content, callers get copies of them.
+     */
+    static final String PROJECT_FILES_CACHE = "projectFiles";
     
     /**
      * Project files storage.
@@ -62,12 +73,24 @@ public class ProjectFileServiceImpl implements ProjectFileService {
      */
     @Autowired
     XmlSchemaExtractor xmlSchemaExtractor;
+    /**
+     * Catalog of active web forms, invalidated on any project file change.
+     */
+    @Autowired
+    WebFormCatalog webFormCatalog;
+    /**
+     * Cache manager.
+     */
+    @Autowired
+    CacheManager cacheManager;
 
     @Autowired
     ProjectMetadataSerializer projectMedatadataSerializer;
     
+    @CacheEvict(value = PROJECT_FILES_CACHE, allEntries = true)
     @Override
     public void saveOrUpdate(ProjectFile file, ProjectEntry project) {
+        webFormCatalog.invalidate();
         if (!WebQFileInfo.isNew(file)) {
             projectFileStorage.update(file, project);
             return;
@@ -87,7 +110,7 @@ public class ProjectFileServiceImpl implements ProjectFileService {
     @Override
     public MultiValueMap<ProjectFileType, ProjectFile> filesDividedByTypeFor(ProjectEntry project) {
         MultiValueMap<ProjectFileType, ProjectFile> result = new LinkedMultiValueMap<ProjectFileType, ProjectFile>();
-        for (ProjectFile projectFile : projectFileStorage.findAllFilesFor(project)) {
+        for (ProjectFile projectFile : projectFileStorage.findAllFilesMetadataFor(project)) {
             result.add(projectFile.getFileType(), projectFile);
         }
         return result;
@@ -95,11 +118,34 @@ public class ProjectFileServiceImpl implements ProjectFileService {
 
     @Override
     public ProjectFile fileContentBy(String name, ProjectEntry project) {
-        return projectFileStorage.findByNameAndProject(name, project);
+        Cache cache = cacheManager.getCache(PROJECT_FILES_CACHE);
+        List<Object> key = Arrays.<Object>asList(project != null ? project.getId() : null, name);
+        ProjectFile cached = cache.get(key, ProjectFile.class);
+        if (cached != null) {
+            return copyWithContent(cached);
+        }
+        ProjectFile file = projectFileStorage.findByNameAndProject(name, project);
+        if (file != null && file.getFileSizeInBytes() <= MAX_CACHED_FILE_SIZE) {
+            // content is loaded while in session, so that cached file is served without storage access
+            cache.put(key, copyWithContent(file));
+        }
+        return file;
     }
 
+    @Override
+    public boolean writeContent(ProjectFile file, OutputStream output) {
+        return projectFileStorage.writeContent(file.getId(), output);
+    }
+
+    @Override
+    public String contentHash(ProjectFile file) {
+        return projectFileStorage.contentHash(file);
+    }
+
+    @CacheEvict(value = PROJECT_FILES_CACHE, allEntries = true)
     @Override
     public void remove(ProjectEntry project, int... id) {
+        webFormCatalog.invalidate();
         projectFileStorage.remove(project, id);
     }
 
@@ -108,8 +154,10 @@ public class ProjectFileServiceImpl implements ProjectFileService {
         return projectFileStorage.findAllFilesFor(project);
     }
 
+    @CacheEvict(value = PROJECT_FILES_CACHE, allEntries = true)
     @Override
     public void updateContent(int id, byte[] content, ProjectEntry project) {
+        webFormCatalog.invalidate();
         ProjectFile file = projectFileStorage.findById(id);
         file.setFileContent(content);
         projectFileStorage.update(file, project);
@@ -137,6 +185,7 @@ public class ProjectFileServiceImpl implements ProjectFileService {
         return writer.getArchiveContent();
     }
 
+    @CacheEvict(value = PROJECT_FILES_CACHE, allEntries = true)
     @Transactional
     @Override
     public ImportProjectResult importFromArchive(ProjectEntry project, byte[] archiveContent, String userName) throws IOException {
@@ -169,6 +218,7 @@ public class ProjectFileServiceImpl implements ProjectFileService {
             projectFile.setUserName(userName);
         }
         
+        webFormCatalog.invalidate();
         this.projectFileStorage.cleanInsert(project, projectFiles);
         
         return new ImportProjectResult();
@@ -247,10 +297,27 @@ public class ProjectFileServiceImpl implements ProjectFileService {
         }
     }
     
+    /**
+     * Copies project file metadata and content, so that cached file is never shared with callers.
+     * Content hash is copied, not calculated again.
+     *
+     * @param file project file
+     * @return copy
+     */
+    private static ProjectFile copyWithContent(ProjectFile file) {
+        ProjectFile copy = WebFormCatalog.copyOf(file);
+        UploadedFile.FileContent content = file.getFile().getContent();
+        if (content != null) {
+            copy.getFile().setContent(new UploadedFile.FileContent(content.getFileContent().clone(), content.getHash()));
+        }
+        return copy;
+    }
+
     private static final class ProjectArchiveContents {
         
         public ArchiveFile metadataFile;
         public Collection<ArchiveFile> archiveFiles = new ArrayList<ArchiveFile>();
         
     }
+
 }
@@ -24,6 +24,7 @@ import java.util.Collection;
 
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 
 import eionet.webq.dao.ProjectFolders;
@@ -43,6 +44,11 @@ public class ProjectServiceImpl implements ProjectService {
      */
     @Autowired
     ProjectFolders folders;
+    /**
+     * Catalog of active web forms, invalidated when project is changed or removed together with its files.
+     */
+    @Autowired
+    WebFormCatalog webFormCatalog;
 
     @Override
     public Collection<ProjectEntry> getAllFolders() {
@@ -51,9 +57,11 @@ public class ProjectServiceImpl implements ProjectService {
         return allFolders;
     }
 
+    @CacheEvict(value = ProjectFileServiceImpl.PROJECT_FILES_CACHE, allEntries = true)
     @Override
     public void remove(String projectId) {
         LOGGER.info("Removing project with projectId=" + projectId);
+        webFormCatalog.invalidate();
         folders.remove(projectId);
     }
 
@@ -75,6 +83,7 @@ public class ProjectServiceImpl implements ProjectService {
     public void saveOrUpdate(ProjectEntry projectEntry) {
         if (projectEntry.getId() > 0) {
             LOGGER.info("Updating project=" + projectEntry);
+            webFormCatalog.invalidate();
             folders.update(projectEntry);
         } else {
             LOGGER.info("Saving new project=" + projectEntry);
@@ -0,0 +1,39 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.service;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+
+/**
+ * Provides compiled stylesheets stored on remote hosts.
+ */
+public interface RemoteStylesheetService {
+    /**
+     * Returns compiled stylesheet from given uri. Stylesheet is downloaded and compiled once and revalidated
+     * against remote host after time to live is expired.
+     *
+     * @param uri stylesheet uri
+     * @return compiled stylesheet
+     * @throws TransformerConfigurationException if stylesheet could not be downloaded or compiled
+     */
+    Templates getTemplates(String uri) throws TransformerConfigurationException;
+}
@@ -0,0 +1,241 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.service;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestOperations;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps compiled remote stylesheets in cache. Cached stylesheet is revalidated with conditional GET request
+ * after time to live is expired, so unchanged stylesheets are not downloaded and compiled again.
+ */
+@Service
+public class RemoteStylesheetServiceImpl implements RemoteStylesheetService {
+    /**
+     * Logger for this class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(RemoteStylesheetServiceImpl.class);
+    /**
+     * Cache of compiled remote stylesheets.
+     */
+    static final String REMOTE_STYLESHEETS_CACHE = "remoteStylesheets";
+    /**
+     * Time in milliseconds after which cached stylesheet is revalidated against remote host.
+     */
+    long timeToLive = TimeUnit.MINUTES.toMillis(5);
+    /**
+     * Cache manager.
+     */
+    @Autowired
+    CacheManager cacheManager;
+    /**
+     * Rest operations used to download stylesheets.
+     */
+    @Autowired
+    @Qualifier("restTemplate")
+    RestOperations restOperations;
+
+    @Override
+    public Templates getTemplates(final String uri) throws TransformerConfigurationException {
+        try {
+            CachedStylesheet stylesheet = cacheManager.getCache(REMOTE_STYLESHEETS_CACHE).get(uri,
+                    new Callable<CachedStylesheet>() {
+                        @Override
+                        public CachedStylesheet call() throws TransformerConfigurationException {
+                            return download(uri, null);
+                        }
+                    });
+            if (stylesheet.isExpired(timeToLive)) {
+                synchronized (stylesheet) {
+                    if (stylesheet.isExpired(timeToLive)) {
+                        CachedStylesheet revalidated;
+                        try {
+                            revalidated = download(uri, stylesheet);
+                        } catch (TransformerConfigurationException e) {
+                            LOGGER.warn("Unable to revalidate remote stylesheet, using cached one, uri=" + uri, e);
+                            stylesheet.validated();
+                            return stylesheet.templates;
+                        }
+                        if (revalidated != stylesheet) {
+                            cacheManager.getCache(REMOTE_STYLESHEETS_CACHE).put(uri, revalidated);
+                        }
+                        return revalidated.templates;
+                    }
+                }
+            }
+            return stylesheet.templates;
+        } catch (Cache.ValueRetrievalException e) {
+            throw (TransformerConfigurationException) e.getCause();
+        }
+    }
+
+    /**
+     * Downloads and compiles stylesheet. If cached stylesheet is provided, request is conditional and
+     * cached stylesheet is returned if it was not modified.
+     *
+     * @param uri stylesheet uri
+     * @param cached cached stylesheet or null
+     * @return compiled stylesheet
+     * @throws TransformerConfigurationException if stylesheet could not be downloaded or compiled
+     */
+    private CachedStylesheet download(final String uri, final CachedStylesheet cached)
+            throws TransformerConfigurationException {
+        try {
+            return restOperations.execute(new URI(uri), HttpMethod.GET, new RequestCallback() {
+                @Override
+                public void doWithRequest(ClientHttpRequest request) throws IOException {
+                    if (cached != null && cached.eTag != null) {
+                        request.getHeaders().setIfNoneMatch(cached.eTag);
+                    }
+                    if (cached != null && cached.lastModified > 0) {
+                        request.getHeaders().setIfModifiedSince(cached.lastModified);
+                    }
+                }
+            }, new ResponseExtractor<CachedStylesheet>() {
+                @Override
+                public CachedStylesheet extractData(ClientHttpResponse response) throws IOException {
+                    if (cached != null && response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+                        LOGGER.info("Remote stylesheet not modified, uri=" + uri);
+                        cached.validated();
+                        return cached;
+                    }
+                    LOGGER.info("Compiling remote stylesheet, uri=" + uri);
+                    HttpHeaders headers = response.getHeaders();
+                    try {
+                        return new CachedStylesheet(compile(new StreamSource(response.getBody(), uri)),
+                                headers.getETag(), headers.getLastModified());
+                    } catch (TransformerConfigurationException e) {
+                        throw new StylesheetCompilationException(e);
+                    }
+                }
+            });
+        } catch (StylesheetCompilationException e) {
+            throw (TransformerConfigurationException) e.getCause();
+        } catch (URISyntaxException e) {
+            throw new TransformerConfigurationException("Incorrect stylesheet uri=" + uri, e);
+        } catch (RestClientException e) {
+            throw new TransformerConfigurationException("Unable to download stylesheet uri=" + uri, e);
+        }
+    }
+
+    /**
+     * Compiles stylesheet.
+     *
+     * @param source stylesheet source
+     * @return compiled stylesheet
+     * @throws TransformerConfigurationException if stylesheet could not be compiled
+     */
+    private Templates compile(StreamSource source) throws TransformerConfigurationException {
+        TransformerFactory transformerFactory = TransformerFactory.newInstance();
+        transformerFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        return transformerFactory.newTemplates(source);
+    }
+
+    /**
+     * Compiled stylesheet with HTTP validators.
+     */
+    static final class CachedStylesheet {
+        /**
+         * Compiled stylesheet.
+         */
+        private final Templates templates;
+        /**
+         * ETag of downloaded stylesheet or null.
+         */
+        private final String eTag;
+        /**
+         * Last modified time of downloaded stylesheet or -1.
+         */
+        private final long lastModified;
+        /**
+         * Time of last validation against remote host.
+         */
+        private volatile long validatedAt = System.currentTimeMillis();
+
+        /**
+         * Creates cached stylesheet.
+         *
+         * @param templates compiled stylesheet
+         * @param eTag ETag header value
+         * @param lastModified Last-Modified header value
+         */
+        private CachedStylesheet(Templates templates, String eTag, long lastModified) {
+            this.templates = templates;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Checks whether stylesheet must be revalidated.
+         *
+         * @param timeToLive time to live in milliseconds
+         * @return is time to live expired
+         */
+        private boolean isExpired(long timeToLive) {
+            return System.currentTimeMillis() - validatedAt >= timeToLive;
+        }
+
+        /**
+         * Marks stylesheet as validated against remote host.
+         */
+        private void validated() {
+            validatedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Carries stylesheet compilation failure through {@link ResponseExtractor}.
+     */
+    private static final class StylesheetCompilationException extends RuntimeException {
+        /**
+         * Creates exception.
+         *
+         * @param cause compilation failure
+         */
+        private StylesheetCompilationException(TransformerConfigurationException cause) {
+            super(cause);
+        }
+    }
+}
@@ -24,23 +24,39 @@ import eionet.webq.dao.orm.MergeModule;
 import eionet.webq.dao.orm.UserFile;
 import org.apache.log4j.Logger;
 import org.apache.tools.ant.util.XmlConstants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
 
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
 import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.URIResolver;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  */
@@ -54,102 +70,210 @@ public class UserFileMergeServiceImpl implements UserFileMergeService {
      * File prefix for using in xsl document() to create unique url.
      */
     private static final String NEXT_FILE_PREFIX = "next_file_";
+    /**
+     * Url of document listing all merged files, resolvable in xsl document().
+     */
+    private static final String ALL_FILES_HREF = "all_files";
+    /**
+     * Parameter with url of file merged with current result in pairwise merge.
+     */
+    private static final String SECOND_FILE_PARAMETER = "secondFile";
+    /**
+     * Parameter with url of document listing all merged files.
+     * Stylesheets declaring this parameter merge all files in single pass.
+     */
+    static final String ALL_FILES_PARAMETER = "allFiles";
+    /**
+     * Xsl namespace.
+     */
+    private static final String XSL_NAMESPACE = "http://www.w3.org/1999/XSL/Transform";
+    /**
+     * Cache of compiled merge module stylesheets.
+     */
+    static final String MERGE_MODULE_TEMPLATES_CACHE = "mergeModuleTemplates";
+    /**
+     * Cache manager.
+     */
+    @Autowired
+    CacheManager cacheManager;
 
     @Override
     public byte[] mergeFiles(Collection<UserFile> filesToMerge, MergeModule module) throws TransformerException {
-        Queue<UserFile> userFiles = new LinkedList<UserFile>(filesToMerge);
-        UserFile first = userFiles.poll();
+        List<UserFile> userFiles = new ArrayList<UserFile>(filesToMerge);
+        UserFile first = userFiles.get(0);
         LOGGER.info("First file in queue=" + first);
+        if (userFiles.size() == 1) {
+            return first.getContent();
+        }
 
         UserFileProvider resolver = new UserFileProvider(userFiles);
-        Transformer transformer = createTransformer(module, resolver);
+        MergeStylesheet stylesheet = stylesheetFor(module);
+        Transformer transformer = stylesheet.templates.newTransformer();
+        transformer.setURIResolver(resolver);
+
+        Source result = new StreamSource(new ByteArrayInputStream(first.getContent()));
+        if (stylesheet.allFilesAtOnce) {
+            LOGGER.info("Transforming all " + userFiles.size() + " files in single pass");
+            transformer.setParameter(ALL_FILES_PARAMETER, ALL_FILES_HREF);
+            return serialize(transformer, result);
+        }
 
-        byte[] result = first.getContent();
+        for (int i = 1; i < userFiles.size(); i++) {
+            LOGGER.info("Transforming using file=" + userFiles.get(i));
+            transformer.setParameter(SECOND_FILE_PARAMETER, NEXT_FILE_PREFIX + i);
+            if (i == userFiles.size() - 1) {
+                return serialize(transformer, result);
+            }
+            DOMResult intermediateResult = new DOMResult();
+            transformer.transform(result, intermediateResult);
+            result = new DOMSource(intermediateResult.getNode());
+        }
+        throw new IllegalStateException("Merge loop must return on last file");
+    }
 
-        for (UserFile file : resolver) {
-            LOGGER.info("Transforming using file=" + file);
+    /**
+     * Transforms source and serializes result using stylesheet output properties.
+     *
+     * @param transformer transformer
+     * @param source source
+     * @return serialized result
+     * @throws TransformerException if transformation failed
+     */
+    private byte[] serialize(Transformer transformer, Source source) throws TransformerException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        transformer.transform(source, new StreamResult(byteArrayOutputStream));
+        return byteArrayOutputStream.toByteArray();
+    }
 
-            transformer.setParameter("secondFile", NEXT_FILE_PREFIX + file.getId());
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-            transformer.transform(new StreamSource(new ByteArrayInputStream(result)), new StreamResult(byteArrayOutputStream));
-            result = byteArrayOutputStream.toByteArray();
+    /**
+     * Returns compiled merge module stylesheet. Stylesheets are cached by merge module id and update time.
+     *
+     * @param module merge module
+     * @return compiled stylesheet
+     * @throws TransformerConfigurationException if stylesheet could not be compiled
+     */
+    private MergeStylesheet stylesheetFor(final MergeModule module) throws TransformerConfigurationException {
+        Long updated = module.getUpdated() != null ? module.getUpdated().getTime() : null;
+        try {
+            return cacheManager.getCache(MERGE_MODULE_TEMPLATES_CACHE).get(Arrays.asList(module.getId(), updated),
+                    new Callable<MergeStylesheet>() {
+                        @Override
+                        public MergeStylesheet call() throws TransformerConfigurationException {
+                            return compile(module);
+                        }
+                    });
+        } catch (Cache.ValueRetrievalException e) {
+            LOGGER.warn("Unable to create transformer for user files merge", e.getCause());
+            throw new TransformerConfigurationException("Unable to compile merge module stylesheet", e.getCause());
         }
-        return result;
     }
 
     /**
-     * Creates Xsl Transformer.
+     * Compiles merge module stylesheet.
      *
-     * @param module merge module.
-     * @param resolver URIResolver
-     * @return transformer
+     * @param module merge module
+     * @return compiled stylesheet
+     * @throws TransformerConfigurationException if stylesheet could not be compiled
      */
-    private Transformer createTransformer(MergeModule module, URIResolver resolver) {
+    private MergeStylesheet compile(MergeModule module) throws TransformerConfigurationException {
+        LOGGER.info("Compiling merge module stylesheet, module id=" + module.getId());
         byte[] mergeModuleContent = module.getXslFile().getContent().getFileContent();
-        Source xslSource = new StreamSource(new ByteArrayInputStream(mergeModuleContent));
-
-        Transformer transformer = null;
         try {
+            DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+            documentBuilderFactory.setNamespaceAware(true);
+            documentBuilderFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            Document xsl = documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(mergeModuleContent));
+
             TransformerFactory transformerFactory = TransformerFactory.newInstance();
             transformerFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-            transformer = transformerFactory.newTransformer(xslSource);
-            transformer.setURIResolver(resolver);
-        } catch (TransformerConfigurationException e) {
-            LOGGER.warn("Unable to create transformer for user files merge", e);
+            return new MergeStylesheet(transformerFactory.newTemplates(new DOMSource(xsl)),
+                    declaresParameter(xsl, ALL_FILES_PARAMETER));
+        } catch (ParserConfigurationException e) {
+            throw new TransformerConfigurationException(e);
+        } catch (SAXException e) {
+            throw new TransformerConfigurationException(e);
+        } catch (IOException e) {
+            throw new TransformerConfigurationException(e);
         }
-        return transformer;
     }
 
     /**
-     * {@link javax.xml.transform.URIResolver} implementation,
-     * which provides access to second user file while transforming first.
-     * User file is accessible if requested href is equals to special parameter.
+     * Checks whether stylesheet declares top level parameter.
+     *
+     * @param xsl stylesheet
+     * @param name parameter name
+     * @return is parameter declared
+     */
+    private static boolean declaresParameter(Document xsl, String name) {
+        for (Node node = xsl.getDocumentElement().getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element && XSL_NAMESPACE.equals(node.getNamespaceURI())
+                    && "param".equals(node.getLocalName()) && name.equals(((Element) node).getAttribute("name"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compiled merge module stylesheet.
      */
-    static final class UserFileProvider implements URIResolver, Iterable<UserFile> {
+    static final class MergeStylesheet {
         /**
-         * User files queue.
+         * Compiled stylesheet.
          */
-        private Queue<UserFile> userFiles;
+        private final Templates templates;
+        /**
+         * Whether stylesheet merges all files in single pass.
+         */
+        private final boolean allFilesAtOnce;
+
+        /**
+         * Creates compiled merge module stylesheet.
+         *
+         * @param templates compiled stylesheet
+         * @param allFilesAtOnce whether stylesheet merges all files in single pass
+         */
+        private MergeStylesheet(Templates templates, boolean allFilesAtOnce) {
+            this.templates = templates;
+            this.allFilesAtOnce = allFilesAtOnce;
+        }
+    }
+
+    /**
+     * {@link javax.xml.transform.URIResolver} implementation,
+     * which provides access to user files while transforming first.
+     * User file is accessible if requested href is equals to special parameter.
+     * Document listing urls of all files, including first, is accessible by {@link #ALL_FILES_HREF}.
+     */
+    static final class UserFileProvider implements URIResolver {
         /**
-         * Current file.
+         * User files.
          */
-        private UserFile current;
+        private List<UserFile> userFiles;
 
         /**
          * Creates user file provider with user files.
          * @param userFiles user files
          */
-        private UserFileProvider(Queue<UserFile> userFiles) {
+        private UserFileProvider(List<UserFile> userFiles) {
             this.userFiles = userFiles;
         }
 
         @Override
         public Source resolve(String href, String base) throws TransformerException {
             if (href.startsWith(NEXT_FILE_PREFIX)) {
-                return new StreamSource(new ByteArrayInputStream(current.getContent()));
+                int index = Integer.parseInt(href.substring(NEXT_FILE_PREFIX.length()));
+                return new StreamSource(new ByteArrayInputStream(userFiles.get(index).getContent()));
             }
-            return null;
-        }
-
-        @Override
-        public Iterator<UserFile> iterator() {
-            return new Iterator<UserFile>() {
-                @Override
-                public boolean hasNext() {
-                    return !userFiles.isEmpty();
-                }
-
-                @Override
-                public UserFile next() {
-                    current = userFiles.poll();
-                    return current;
+            if (href.equals(ALL_FILES_HREF)) {
+                StringBuilder files = new StringBuilder("<files>");
+                for (int i = 0; i < userFiles.size(); i++) {
+                    files.append("<file href=\"").append(NEXT_FILE_PREFIX).append(i).append("\"/>");
                 }
-
-                @Override
-                public void remove() {
-                    throw new UnsupportedOperationException("Remove operation not supported");
-                }
-            };
+                files.append("</files>");
+                return new StreamSource(new ByteArrayInputStream(files.toString().getBytes(StandardCharsets.UTF_8)));
+            }
+            return null;
         }
     }
 }
@@ -23,7 +23,10 @@ package eionet.webq.service;
 import eionet.webq.dao.orm.ProjectFile;
 import eionet.webq.dao.orm.UserFile;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * Service for storing uploaded files.
@@ -56,6 +59,14 @@ public interface UserFileService {
      */
     UserFile getById(int id);
 
+    /**
+     * Fetches uploaded files from storage by specified ids with single query, see {@link #getById(int)}.
+     *
+     * @param ids file ids
+     * @return uploaded files in order of ids, files not found are skipped
+     */
+    List<UserFile> getByIds(Collection<Integer> ids);
+
     /**
      * Fetches uploaded file from storage by specified id and user session id. User access to this file must be checked. Only
      * {@link eionet.webq.dao.orm.UserFile#getName()} and {@link eionet.webq.dao.orm.UserFile#getContent()} will be set.
@@ -77,11 +88,20 @@ public interface UserFileService {
     /**
      * All uploaded files by current session user. {@link eionet.webq.dao.orm.UserFile#getContent()} is not included into resulting
      * collection. Use {@link UserFileService#getById(int)} for fetching specific file content.
+     * Only listing metadata is loaded, see {@link eionet.webq.dao.UserFileStorage#findAllUserFilesMetadata(String)}.
      *
      * @return All uploaded files by current session user.
      */
     Collection<UserFile> allUploadedFiles();
 
+    /**
+     * Get file metadata by id for current user. Content, authorization and cookies are not loaded.
+     *
+     * @param id file id
+     * @return user file metadata or null
+     */
+    UserFile getMetadataById(int id);
+
     /**
      * Update file content and updated time in storage. Only {@link eionet.webq.dao.orm.UserFile#getContent()},
      * {@link eionet.webq.dao.orm.UserFile#getSizeInBytes()} and {@link eionet.webq.dao.orm.UserFile#updated} will be set.
@@ -90,6 +110,44 @@ public interface UserFileService {
      */
     void updateContent(UserFile file);
 
+    /**
+     * Update file content reading it from stream, so content is passed to storage without loading it into memory.
+     * {@link eionet.webq.dao.orm.UserFile#getSizeInBytes()} and {@link eionet.webq.dao.orm.UserFile#updated} will be set in
+     * storage. JSON rendition of stored content is converted and cached on first read, see {@link #jsonContent(UserFile)}.
+     *
+     * @param file file to be updated in storage
+     * @param content new file content
+     */
+    void updateContent(UserFile file, InputStream content);
+
+    /**
+     * Writes file content from storage directly to output stream. {@link eionet.webq.dao.orm.UserFile#getUserId()} is used
+     * to identify file owner.
+     *
+     * @param file file which content will be written
+     * @param output stream where content will be written
+     * @return whether file content was available
+     */
+    boolean writeContent(UserFile file, OutputStream output);
+
+    /**
+     * Returns hash of file content, usable as file content version. {@link eionet.webq.dao.orm.UserFile#getUserId()} is
+     * used to identify file owner.
+     *
+     * @param file file
+     * @return content hash or null if not known
+     */
+    String contentHash(UserFile file);
+
+    /**
+     * Returns JSON rendition of file XML content. Renditions are cached by content hash, so that repeated reads of the
+     * same content do not convert it again.
+     *
+     * @param file file with content or at least id and user id, if content is not loaded
+     * @return content as JSON
+     */
+    byte[] jsonContent(UserFile file);
+
     /**
      * Update file without changing content and last updated time.
      *
@@ -23,21 +23,32 @@ package eionet.webq.service;
 import static org.apache.commons.lang3.StringUtils.defaultIfEmpty;
 import static org.apache.commons.lang3.StringUtils.isNotEmpty;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.sql.Timestamp;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
 
+import eionet.webq.converter.JsonXMLBidirectionalConverter;
 import eionet.webq.dao.UserFileDownload;
 import eionet.webq.dao.UserFileStorage;
 import eionet.webq.dao.orm.ProjectFile;
+import eionet.webq.dao.orm.UploadedFile;
 import eionet.webq.dao.orm.UserFile;
+import eionet.webq.dao.orm.util.WebQFileInfo;
 import eionet.webq.dto.UserFileIdUpdate;
 
 /**
@@ -45,6 +56,10 @@ import eionet.webq.dto.UserFileIdUpdate;
  */
 @Service
 public class UserFileServiceImpl implements UserFileService {
+    /**
+     * Cache of JSON renditions of user files, keyed by content hash.
+     */
+    static final String USER_FILE_JSON_CACHE = "userFileJson";
     /**
      * Uploaded files storage.
      */
@@ -75,6 +90,16 @@ public class UserFileServiceImpl implements UserFileService {
      */
     @Autowired
     RemoteFileService remoteFileService;
+    /**
+     * XML to JSON converter.
+     */
+    @Autowired
+    JsonXMLBidirectionalConverter jsonXMLConverter;
+    /**
+     * Cache manager.
+     */
+    @Autowired
+    CacheManager cacheManager;
 
     /**
      * Static logger for this class.
@@ -99,17 +124,8 @@ public class UserFileServiceImpl implements UserFileService {
             String fn = defaultIfEmpty(webForm.getNewXmlFileName(), "new_form.xml");
             char numDelim = '_';
             char extensionDelim = '.';
-            Number userWebFormFileCount =
-                    storage.getUserWebFormFileMaxNum(userId(), webForm.getXmlSchema(), fn, numDelim, extensionDelim);
-
-            int lastIndexOfDot = fn.lastIndexOf(extensionDelim);
-            long fileNum = (userWebFormFileCount != null) ? userWebFormFileCount.longValue() + 1 : 1;
-            if (lastIndexOfDot > 0) {
-                fn = fn.substring(0, lastIndexOfDot) + numDelim +fileNum + fn.substring(lastIndexOfDot);
-            } else {
-                fn = fn + numDelim + fileNum;
-            }
-            file.setName(fn);
+            long fileNum = storage.nextWebFormFileNum(userId(), webForm.getXmlSchema(), fn, numDelim, extensionDelim);
+            file.setName(WebQFileInfo.numberedFileName(fn, fileNum, numDelim, extensionDelim));
         }
         file.setXmlSchema(webForm.getXmlSchema());
         return isNotEmpty(emptyInstanceUrl) ? saveWithContentFromRemoteLocation(file, emptyInstanceUrl) : save(file);
@@ -127,6 +143,23 @@ public class UserFileServiceImpl implements UserFileService {
         return userFile;
     }
 
+    @Override
+    public List<UserFile> getByIds(Collection<Integer> ids) {
+        List<UserFile> userFiles = storage.findFiles(userId(), ArrayUtils.toPrimitive(ids.toArray(new Integer[ids.size()])));
+        if (userFiles.size() < ids.size()) {
+            LOGGER.error("Unable to load all user files with ids=" + ids + " for user=" + userId() + ", loaded "
+                    + userFiles.size() + " files");
+        } else {
+            LOGGER.info("Loaded " + userFiles.size() + " user files with ids=" + ids);
+        }
+        return userFiles;
+    }
+
+    @Override
+    public UserFile getMetadataById(int id) {
+        return storage.findFileMetadata(id, userId());
+    }
+
     @Override
     public UserFile getByIdAndUser(int id, String userId) {
         UserFile userFile = storage.findFile(id, userId);
@@ -147,7 +180,7 @@ public class UserFileServiceImpl implements UserFileService {
     @Override
     public Collection<UserFile> allUploadedFiles() {
         String userId = userId();
-        Collection<UserFile> userFiles = storage.findAllUserFiles(userId);
+        Collection<UserFile> userFiles = storage.findAllUserFilesMetadata(userId);
         LOGGER.info("Loaded " + userFiles.size() + " files for user=" + userId);
         return userFiles;
     }
@@ -158,6 +191,42 @@ public class UserFileServiceImpl implements UserFileService {
         LOGGER.info("Updating file content id=" + file.getId() + " for user=" + userId);
         file.setUpdated(new Timestamp(System.currentTimeMillis()));
         storage.update(file, userId);
+        cacheJsonContent(file);
+    }
+
+    @Override
+    public void updateContent(UserFile file, InputStream content) {
+        String userId = userId();
+        LOGGER.info("Updating file content from stream id=" + file.getId() + " for user=" + userId);
+        String hash = storage.updateContent(file.getId(), userId, content);
+        if (hash == null) {
+            LOGGER.warn("File content not updated, file id=" + file.getId() + " not found for user=" + userId);
+        }
+    }
+
+    @Override
+    public boolean writeContent(UserFile file, OutputStream output) {
+        return storage.writeContent(file.getId(), file.getUserId(), output);
+    }
+
+    @Override
+    public String contentHash(UserFile file) {
+        return storage.contentHash(file.getId(), file.getUserId());
+    }
+
+    @Override
+    public byte[] jsonContent(UserFile file) {
+        String hash = contentHash(file);
+        if (hash == null) {
+            return toJson(file.getContent());
+        }
+        Cache cache = cacheManager.getCache(USER_FILE_JSON_CACHE);
+        byte[] json = cache.get(hash, byte[].class);
+        if (json == null) {
+            json = toJson(file.getContent());
+            cache.put(hash, json);
+        }
+        return json;
     }
 
     @Override
@@ -201,6 +270,47 @@ public class UserFileServiceImpl implements UserFileService {
         return save(file);
     }
 
+    /**
+     * Converts updated content to JSON and caches it, so that following JSON reads of this content need no conversion.
+     * Content not convertible to JSON is not cached.
+     *
+     * @param file updated file
+     */
+    private void cacheJsonContent(UserFile file) {
+        byte[] content = file.getContent();
+        if (content != null) {
+            cacheJsonContent(file.getId(), UploadedFile.FileContent.hash(content), content);
+        }
+    }
+
+    /**
+     * Converts file content to JSON and puts it into cache under content hash.
+     * Content which could not be converted is not cached, so that conversion error is reported when JSON is requested.
+     *
+     * @param id file id
+     * @param hash content hash
+     * @param content xml content
+     */
+    private void cacheJsonContent(int id, String hash, byte[] content) {
+        try {
+            cacheManager.getCache(USER_FILE_JSON_CACHE).put(hash, toJson(content));
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to convert content of file id=" + id + " to JSON", e);
+        }
+    }
+
+    /**
+     * Converts xml content to indented JSON, as it is served to users.
+     *
+     * @param xml xml content
+     * @return JSON content
+     */
+    private byte[] toJson(byte[] xml) {
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        jsonXMLConverter.convertXmlToJson(new ByteArrayInputStream(xml), json, true);
+        return json.toByteArray();
+    }
+
     /**
      * Provides current http session id.
      *
@@ -0,0 +1,365 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.service;
+
+import eionet.webq.dao.ProjectFolders;
+import eionet.webq.dao.WebFormStorage;
+import eionet.webq.dao.orm.ProjectEntry;
+import eionet.webq.dao.orm.ProjectFile;
+import eionet.webq.dto.WebFormType;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-memory catalog of active web forms, indexed by id and xml schema for each {@link WebFormType}, with web forms
+ * sorted by title. Catalog is an immutable snapshot of web form metadata, replaced when web forms are changed.
+ * Web forms returned are copies, so that callers could modify them.
+ */
+@Component
+public class WebFormCatalog {
+    /**
+     * Logger for this class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(WebFormCatalog.class);
+    /**
+     * Time in milliseconds after which catalog is loaded anew, to pick up changes made on other nodes.
+     */
+    static final long MAX_AGE = TimeUnit.MINUTES.toMillis(10);
+    /**
+     * Web form storage.
+     */
+    @Autowired
+    private WebFormStorage webFormStorage;
+    /**
+     * Project folders, used to resolve project identifiers of web forms.
+     */
+    @Autowired
+    private ProjectFolders projectFolders;
+    /**
+     * Current catalog state, holds no snapshot until loaded or after invalidation.
+     */
+    private final AtomicReference<State> state = new AtomicReference<State>(new State(null));
+
+    /**
+     * Returns active web forms of type, sorted by title.
+     *
+     * @param type web form type, null for all types
+     * @return web forms
+     */
+    public List<ProjectFile> activeWebForms(WebFormType type) {
+        return copyOf(snapshot().index(type).sorted);
+    }
+
+    /**
+     * Returns active web forms of type for xml schemas, sorted by title within each schema.
+     *
+     * @param type web form type, null for all types
+     * @param xmlSchemas xml schemas
+     * @return web forms
+     */
+    public List<ProjectFile> activeWebFormsForSchemas(WebFormType type, Collection<String> xmlSchemas) {
+        Map<String, List<ProjectFile>> bySchema = snapshot().index(type).bySchema;
+        List<ProjectFile> webForms = new ArrayList<ProjectFile>();
+        for (String xmlSchema : new LinkedHashSet<String>(xmlSchemas)) {
+            List<ProjectFile> forSchema = bySchema.get(xmlSchema);
+            if (forSchema != null) {
+                webForms.addAll(copyOf(forSchema));
+            }
+        }
+        return webForms;
+    }
+
+    /**
+     * Returns active web form of type.
+     *
+     * @param type web form type, null for all types
+     * @param id web form id
+     * @return web form or null if there is no such active web form
+     */
+    public ProjectFile activeWebForm(WebFormType type, int id) {
+        ProjectFile webForm = snapshot().index(type).byId.get(id);
+        return webForm != null ? copyOf(webForm) : null;
+    }
+
+    /**
+     * Sorts web forms by title. Collation key of each title is computed once.
+     *
+     * @param webForms web forms
+     * @return sorted web forms
+     */
+    public List<ProjectFile> sortByTitle(Collection<ProjectFile> webForms) {
+        return sortByTitle(webForms, titleCollator());
+    }
+
+    /**
+     * Discards catalog, so that it is loaded anew on next access. Within transaction catalog is discarded once more
+     * after transaction completes, so that snapshot loaded before commit is not kept.
+     */
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    discard();
+                }
+            });
+        }
+        discard();
+    }
+
+    /**
+     * Replaces current state with empty one.
+     */
+    private void discard() {
+        state.set(new State(null));
+    }
+
+    /**
+     * Returns current snapshot, loading it if there is none or it is expired. Project identifiers of all web forms
+     * are resolved with single lookup. Loaded snapshot is published only if catalog was not invalidated meanwhile.
+     *
+     * @return snapshot
+     */
+    private Snapshot snapshot() {
+        State current = state.get();
+        if (current.snapshot != null && System.currentTimeMillis() - current.snapshot.loaded < MAX_AGE) {
+            return current.snapshot;
+        }
+        Collection<ProjectFile> webForms = webFormStorage.getAllActiveWebFormsMetadata(null);
+        Map<Integer, String> projectIdentifiers = new HashMap<Integer, String>();
+        for (ProjectEntry project : projectFolders.getAllFolders()) {
+            projectIdentifiers.put(project.getId(), project.getProjectId());
+        }
+        for (ProjectFile webForm : webForms) {
+            webForm.setProjectIdentifier(projectIdentifiers.get(webForm.getProjectId()));
+        }
+        Snapshot loaded = new Snapshot(webForms);
+        state.compareAndSet(current, new State(loaded));
+        LOGGER.debug("Web form catalog loaded, active web forms=" + loaded.all.sorted.size());
+        return loaded;
+    }
+
+    /**
+     * Creates collator comparing titles regardless of case.
+     *
+     * @return collator
+     */
+    private static Collator titleCollator() {
+        Collator collator = Collator.getInstance(Locale.ENGLISH);
+        collator.setStrength(Collator.SECONDARY);
+        return collator;
+    }
+
+    /**
+     * Sorts web forms by title using collation keys.
+     *
+     * @param webForms web forms
+     * @param collator collator
+     * @return sorted web forms
+     */
+    private static List<ProjectFile> sortByTitle(Collection<ProjectFile> webForms, Collator collator) {
+        final Map<ProjectFile, CollationKey> keys = new HashMap<ProjectFile, CollationKey>();
+        for (ProjectFile webForm : webForms) {
+            keys.put(webForm, collator.getCollationKey(StringUtils.defaultString(webForm.getTitle())));
+        }
+        List<ProjectFile> sorted = new ArrayList<ProjectFile>(webForms);
+        Collections.sort(sorted, new Comparator<ProjectFile>() {
+            @Override
+            public int compare(ProjectFile p1, ProjectFile p2) {
+                return keys.get(p1).compareTo(keys.get(p2));
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * Copies web forms.
+     *
+     * @param webForms web forms
+     * @return copies
+     */
+    private static List<ProjectFile> copyOf(List<ProjectFile> webForms) {
+        List<ProjectFile> copies = new ArrayList<ProjectFile>(webForms.size());
+        for (ProjectFile webForm : webForms) {
+            copies.add(copyOf(webForm));
+        }
+        return copies;
+    }
+
+    /**
+     * Copies web form metadata.
+     *
+     * @param webForm web form
+     * @return copy
+     */
+    static ProjectFile copyOf(ProjectFile webForm) {
+        ProjectFile copy = new ProjectFile();
+        copy.setId(webForm.getId());
+        copy.setProjectId(webForm.getProjectId());
+        copy.setProjectIdentifier(webForm.getProjectIdentifier());
+        copy.setTitle(webForm.getTitle());
+        copy.setFileName(webForm.getFileName());
+        copy.setFileSizeInBytes(webForm.getFileSizeInBytes());
+        copy.setRemoteFileUrl(webForm.getRemoteFileUrl());
+        copy.setNewXmlFileName(webForm.getNewXmlFileName());
+        copy.setEmptyInstanceUrl(webForm.getEmptyInstanceUrl());
+        copy.setDescription(webForm.getDescription());
+        copy.setXmlSchema(webForm.getXmlSchema());
+        copy.setActive(webForm.isActive());
+        copy.setLocalForm(webForm.isLocalForm());
+        copy.setRemoteForm(webForm.isRemoteForm());
+        copy.setFileType(webForm.getFileType());
+        copy.setUserName(webForm.getUserName());
+        copy.setCreated(webForm.getCreated());
+        copy.setUpdated(webForm.getUpdated());
+        return copy;
+    }
+
+    /**
+     * Catalog state.
+     */
+    private static final class State {
+        /**
+         * Snapshot, null if not loaded.
+         */
+        private final Snapshot snapshot;
+
+        /**
+         * Creates state.
+         *
+         * @param snapshot snapshot, null if not loaded
+         */
+        private State(Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+    }
+
+    /**
+     * Immutable snapshot of active web forms.
+     */
+    private static final class Snapshot {
+        /**
+         * Time in milliseconds when snapshot was loaded.
+         */
+        private final long loaded = System.currentTimeMillis();
+        /**
+         * Index of all active web forms.
+         */
+        private final Index all;
+        /**
+         * Index of active local web forms.
+         */
+        private final Index local;
+        /**
+         * Index of active remote web forms.
+         */
+        private final Index remote;
+
+        /**
+         * Creates snapshot.
+         *
+         * @param webForms active web forms
+         */
+        private Snapshot(Collection<ProjectFile> webForms) {
+            List<ProjectFile> sorted = sortByTitle(webForms, titleCollator());
+            List<ProjectFile> localForms = new ArrayList<ProjectFile>();
+            List<ProjectFile> remoteForms = new ArrayList<ProjectFile>();
+            for (ProjectFile webForm : sorted) {
+                if (webForm.isLocalForm()) {
+                    localForms.add(webForm);
+                }
+                if (webForm.isRemoteForm()) {
+                    remoteForms.add(webForm);
+                }
+            }
+            all = new Index(sorted);
+            local = new Index(localForms);
+            remote = new Index(remoteForms);
+        }
+
+        /**
+         * Returns index of web form type.
+         *
+         * @param type web form type, null for all types
+         * @return index
+         */
+        private Index index(WebFormType type) {
+            if (type == WebFormType.LOCAL) {
+                return local;
+            }
+            return type == WebFormType.REMOTE ? remote : all;
+        }
+    }
+
+    /**
+     * Web forms indexed by id and xml schema.
+     */
+    private static final class Index {
+        /**
+         * Web forms sorted by title.
+         */
+        private final List<ProjectFile> sorted;
+        /**
+         * Web forms by id.
+         */
+        private final Map<Integer, ProjectFile> byId = new HashMap<Integer, ProjectFile>();
+        /**
+         * Web forms by xml schema, sorted by title.
+         */
+        private final Map<String, List<ProjectFile>> bySchema = new HashMap<String, List<ProjectFile>>();
+
+        /**
+         * Creates index.
+         *
+         * @param sorted web forms sorted by title
+         */
+        private Index(List<ProjectFile> sorted) {
+            this.sorted = Collections.unmodifiableList(sorted);
+            for (ProjectFile webForm : sorted) {
+                byId.put(webForm.getId(), webForm);
+                List<ProjectFile> forSchema = bySchema.get(webForm.getXmlSchema());
+                if (forSchema == null) {
+                    forSchema = new ArrayList<ProjectFile>();
+                    bySchema.put(webForm.getXmlSchema(), forSchema);
+                }
+                forSchema.add(webForm);
+            }
+        }
+    }
+}
@@ -38,7 +38,14 @@ public interface WebFormService {
     Collection<ProjectFile> getAllActiveWebForms();
 
     /**
-     * Find active web form by id.
+     * Returns metadata of all active web forms, for listings. Returned web forms are not attached to session.
+     *
+     * @return collection of web forms.
+     */
+    Collection<ProjectFile> getAllActiveWebFormsMetadata();
+
+    /**
+     * Find active web form by id. Returned web form holds metadata only and is not attached to session.
      *
      * @param id form id
      * @return web form
@@ -47,7 +54,7 @@ public interface WebFormService {
 
     /**
      * Finds all web forms for schemas.
-     * All returned web forms are active.
+     * All returned web forms are active, hold metadata only and are sorted by title within each schema.
      *
      * @param xmlSchemas xml schemas.
      * @return collection of web forms found.
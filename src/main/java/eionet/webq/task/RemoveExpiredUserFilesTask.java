@@ -20,47 +20,66 @@
  */
 package eionet.webq.task;
 
-import eionet.webq.dao.orm.UserFile;
+import eionet.webq.dao.UserFileStorage;
 import org.apache.commons.lang3.time.DateUtils;
 import org.apache.log4j.Logger;
-import org.hibernate.Session;
-import org.hibernate.SessionFactory;
-import org.hibernate.criterion.Restrictions;
 import org.springframework.beans.factory.annotation.Autowired;
-//import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.sql.Timestamp;
 import java.util.Date;
 import java.util.List;
-import java.util.Properties;
 
 /**
  * Removes expired user files periodically, based on cron statement.
+ * Files are removed in bounded batches, oldest first, each batch in its own transaction, pausing between batches.
+ * Removed batches are not found again, so if a run fails, the next run continues with remaining expired files.
+ * File contents no longer referenced are removed together with each batch.
  */
 @Component
+@ManagedResource(objectName = "eionet.webq:type=RemoveExpiredUserFilesTask")
 public class RemoveExpiredUserFilesTask {
     /**
      * Logger for this class.
      */
     private static final Logger LOGGER = Logger.getLogger(RemoveExpiredUserFilesTask.class);
     /**
-     * Jdbc template.
+     * User file storage.
      */
     @Autowired
-    SessionFactory factory;
-    /**
-     * Task properties.
-     */
-    //@Autowired
-    //@Qualifier("task")
-    //Properties properties;
+    UserFileStorage userFileStorage;
 
     @Value("${user.file.expiration.hours}")
     private String expirationHours;
+    /**
+     * Maximum number of files removed in one transaction.
+     */
+    @Value("${user.file.expiration.batch.size}")
+    int batchSize;
+    /**
+     * Pause between batches in milliseconds.
+     */
+    @Value("${user.file.expiration.batch.pause.millis}")
+    long batchPauseMillis;
+    /**
+     * Files removed by current or last run.
+     */
+    private volatile int removedFiles;
+    /**
+     * Batches completed by current or last run.
+     */
+    private volatile int completedBatches;
+    /**
+     * Start time of current or last run.
+     */
+    private volatile Date lastRunStarted;
+    /**
+     * Duration of last completed run in milliseconds.
+     */
+    private volatile long lastRunMillis;
 
     // For testing
     void setExpirationHours(String property) {
@@ -71,25 +90,96 @@ public class RemoveExpiredUserFilesTask {
      * Perform removal task.
      */
     @Scheduled(cron = "0 0 0 * * *")
-    @Transactional
     public void removeExpiredUserFiles() {
         Integer hoursAgo = getExpirationHours();
         Date allowedDate = DateUtils.addHours(new Date(), -hoursAgo);
-        LOGGER.info("Removing user files last modified before " + allowedDate + "(in storage more than " + hoursAgo + " hours). ");
+        LOGGER.info("Removing user files last modified before " + allowedDate + "(in storage more than " + hoursAgo
+                + " hours).");
 
-        Session currentSession = factory.getCurrentSession();
-        List rowsAffected = currentSession.createCriteria(UserFile.class)
-                .add(Restrictions.le("updated", new Timestamp(allowedDate.getTime())))
-                .list();
-        for (Object row : rowsAffected) {
-            currentSession.delete(row);
+        lastRunStarted = new Date();
+        removedFiles = 0;
+        completedBatches = 0;
+        boolean completed = false;
+        while (!completed) {
+            List<Integer> removed = userFileStorage.removeExpired(allowedDate, batchSize);
+            if (!removed.isEmpty()) {
+                removedFiles += removed.size();
+                completedBatches++;
+                LOGGER.debug("Removed batch " + completedBatches + " of " + removed.size() + " files");
+            }
+            completed = removed.isEmpty() || removed.size() < batchSize;
+            if (!completed && !pause()) {
+                return;
+            }
         }
+        int countersRemoved = userFileStorage.removeExpiredWebFormFileNums(allowedDate);
+        LOGGER.info("Removed " + countersRemoved + " file number counters not used anymore.");
 
-        LOGGER.info("Removal successful. Removed " + rowsAffected + " files.");
+        lastRunMillis = System.currentTimeMillis() - lastRunStarted.getTime();
+        LOGGER.info("Removal successful. Removed " + removedFiles + " files in " + completedBatches + " batches, took "
+                + lastRunMillis + " ms.");
     }
 
     int getExpirationHours() {
         return Integer.valueOf(expirationHours);
-        //return Integer.valueOf(properties.getProperty("user.file.expiration.hours"));
+    }
+
+    /**
+     * Number of files removed by current or last run.
+     *
+     * @return removed files
+     */
+    @ManagedAttribute(description = "Files removed by current or last run")
+    public int getRemovedFiles() {
+        return removedFiles;
+    }
+
+    /**
+     * Number of batches completed by current or last run.
+     *
+     * @return completed batches
+     */
+    @ManagedAttribute(description = "Batches completed by current or last run")
+    public int getCompletedBatches() {
+        return completedBatches;
+    }
+
+    /**
+     * Start time of current or last run.
+     *
+     * @return start time or null if task was not run yet
+     */
+    @ManagedAttribute(description = "Start time of current or last run")
+    public Date getLastRunStarted() {
+        return lastRunStarted;
+    }
+
+    /**
+     * Duration of last completed run.
+     *
+     * @return duration in milliseconds
+     */
+    @ManagedAttribute(description = "Duration of last completed run in milliseconds")
+    public long getLastRunMillis() {
+        return lastRunMillis;
+    }
+
+    /**
+     * Pauses between batches, so that removal does not keep database busy.
+     *
+     * @return false if thread was interrupted and removal should stop
+     */
+    private boolean pause() {
+        if (batchPauseMillis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(batchPauseMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Removal of expired user files interrupted after " + removedFiles + " files");
+            return false;
+        }
     }
 }
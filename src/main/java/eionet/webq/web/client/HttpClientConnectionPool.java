@@ -0,0 +1,226 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.web.client;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Pool of persistent connections shared by all outbound HTTP requests.
+ * Connections are kept alive and reused per route, idle and expired connections are evicted in background.
+ * TLS sessions are reused through the shared SSL context of the pool, the context is created for
+ * {@link #TLS_PROTOCOL} protocol, which CDR authorization checks have always been pinned to.
+ * XForms connectors use separate legacy connection manager, see {@link eionet.webq.xforms.WebQConnectorFactory}.
+ * Configured limits cover both pools: the part reserved for XForms connectors is applied to their connection manager
+ * and the rest to the shared http client, so the number of open connections never exceeds configured limits.
+ * XForms connections are included in pool statistics.
+ */
+@ManagedResource(objectName = "eionet.webq:type=HttpClientConnectionPool")
+public class HttpClientConnectionPool implements DisposableBean {
+    /**
+     * Logger for this class.
+     */
+    private static final Logger LOGGER = Logger.getLogger(HttpClientConnectionPool.class);
+    /**
+     * TLS protocol of shared SSL context.
+     */
+    public static final String TLS_PROTOCOL = "TLSv1.2";
+    /**
+     * Connection manager.
+     */
+    private final PoolingHttpClientConnectionManager connectionManager;
+    /**
+     * Connection pool of XForms connectors, which are built on legacy http client API.
+     */
+    private final ConnPoolControl<HttpRoute> xformsConnections;
+    /**
+     * Default request configuration.
+     */
+    private final RequestConfig requestConfig;
+    /**
+     * Shared http client.
+     */
+    private final CloseableHttpClient httpClient;
+
+    /**
+     * Creates connection pool.
+     *
+     * @param maxTotal maximum number of connections, including XForms connectors
+     * @param maxPerRoute maximum number of connections per route, including XForms connectors
+     * @param connectTimeout connect timeout in milliseconds
+     * @param socketTimeout socket read timeout in milliseconds
+     * @param keepAlive time in milliseconds to keep idle connection alive, if server does not specify it
+     * @param xformsConnections connection pool of XForms connectors
+     * @param xformsMaxTotal part of maximum number of connections reserved for XForms connectors
+     * @param xformsMaxPerRoute part of maximum number of connections per route reserved for XForms connectors
+     */
+    public HttpClientConnectionPool(int maxTotal, int maxPerRoute, int connectTimeout, int socketTimeout,
+            final long keepAlive, ConnPoolControl<HttpRoute> xformsConnections, int xformsMaxTotal,
+            int xformsMaxPerRoute) {
+        if (xformsMaxTotal <= 0 || xformsMaxTotal >= maxTotal) {
+            throw new IllegalArgumentException("XForms connections limit must be positive and less than max total, got "
+                    + xformsMaxTotal + " of " + maxTotal);
+        }
+        if (xformsMaxPerRoute <= 0 || xformsMaxPerRoute >= maxPerRoute) {
+            throw new IllegalArgumentException("XForms connections per route limit must be positive and less than max "
+                    + "per route, got " + xformsMaxPerRoute + " of " + maxPerRoute);
+        }
+        this.xformsConnections = xformsConnections;
+        xformsConnections.setMaxTotal(xformsMaxTotal);
+        xformsConnections.setDefaultMaxPerRoute(xformsMaxPerRoute);
+        connectionManager = new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", createSslSocketFactory())
+                .build());
+        connectionManager.setMaxTotal(maxTotal - xformsMaxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute - xformsMaxPerRoute);
+
+        requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(socketTimeout)
+                .setConnectionRequestTimeout(connectTimeout)
+                .build();
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+                    @Override
+                    public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                        long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                        return duration > 0 ? duration : keepAlive;
+                    }
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAlive, TimeUnit.MILLISECONDS)
+                .build();
+        LOGGER.info("HTTP client connection pool created, max total=" + maxTotal + ", max per route=" + maxPerRoute
+                + ", reserved for XForms connectors " + xformsMaxTotal + " and " + xformsMaxPerRoute + " per route");
+    }
+
+    /**
+     * Shared http client.
+     *
+     * @return http client
+     */
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Default request configuration of shared http client.
+     *
+     * @return request configuration
+     */
+    public RequestConfig getRequestConfig() {
+        return requestConfig;
+    }
+
+    /**
+     * Creates request factory for {@link org.springframework.web.client.RestTemplate} using shared http client.
+     *
+     * @return request factory
+     */
+    public ClientHttpRequestFactory createRequestFactory() {
+        return new HttpComponentsClientHttpRequestFactory(httpClient);
+    }
+
+    /**
+     * Number of connections in use.
+     *
+     * @return leased connections
+     */
+    @ManagedAttribute(description = "Connections in use")
+    public int getLeased() {
+        return connectionManager.getTotalStats().getLeased() + xformsConnections.getTotalStats().getLeased();
+    }
+
+    /**
+     * Number of idle connections kept alive.
+     *
+     * @return available connections
+     */
+    @ManagedAttribute(description = "Idle connections kept alive")
+    public int getAvailable() {
+        return connectionManager.getTotalStats().getAvailable()
+                + xformsConnections.getTotalStats().getAvailable();
+    }
+
+    /**
+     * Number of requests waiting for connection.
+     *
+     * @return pending requests
+     */
+    @ManagedAttribute(description = "Requests waiting for connection")
+    public int getPending() {
+        return connectionManager.getTotalStats().getPending() + xformsConnections.getTotalStats().getPending();
+    }
+
+    /**
+     * Maximum number of connections, sum of shared http client and XForms connectors limits, equals configured limit.
+     *
+     * @return maximum connections
+     */
+    @ManagedAttribute(description = "Maximum number of connections")
+    public int getMaxTotal() {
+        return connectionManager.getMaxTotal() + xformsConnections.getMaxTotal();
+    }
+
+    /**
+     * Creates SSL socket factory using {@link #TLS_PROTOCOL} context.
+     *
+     * @return SSL socket factory
+     */
+    private static SSLConnectionSocketFactory createSslSocketFactory() {
+        try {
+            return new SSLConnectionSocketFactory(SSLContexts.custom().useProtocol(TLS_PROTOCOL).build());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to create " + TLS_PROTOCOL + " SSL context", e);
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        httpClient.close();
+    }
+}
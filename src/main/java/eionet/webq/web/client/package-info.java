@@ -0,0 +1,4 @@
+/**
+ * This package contains shared clients for outbound HTTP requests.
+ */
+package eionet.webq.web.client;
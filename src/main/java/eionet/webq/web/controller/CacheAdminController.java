@@ -0,0 +1,105 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.web.controller;
+
+import eionet.webq.dto.CacheStatistics;
+import eionet.webq.service.CacheAdminService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.List;
+
+/**
+ * Cache statistics and invalidation for administrators.
+ */
+@Controller
+@RequestMapping("/caches")
+public class CacheAdminController {
+    /**
+     * Cache administration service.
+     */
+    @Autowired
+    private CacheAdminService cacheAdminService;
+
+    /**
+     * Lists statistics of all caches.
+     *
+     * @return statistics as JSON
+     */
+    @RequestMapping(value = { "/", "" }, method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public List<CacheStatistics> statistics() {
+        return cacheAdminService.statistics();
+    }
+
+    /**
+     * Shows statistics of single cache.
+     *
+     * @param name cache name
+     * @param response http response, status set to 404 if cache does not exist
+     * @return statistics as JSON
+     */
+    @RequestMapping(value = "/{name}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public CacheStatistics statistics(@PathVariable String name, HttpServletResponse response) {
+        CacheStatistics statistics = cacheAdminService.statistics(name);
+        if (statistics == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        }
+        return statistics;
+    }
+
+    /**
+     * Removes all entries from cache.
+     *
+     * @param name cache name
+     * @param response http response, status set to 404 if cache does not exist
+     * @return statistics after invalidation as JSON
+     */
+    @RequestMapping(value = "/{name}/invalidate", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public CacheStatistics invalidate(@PathVariable String name, HttpServletResponse response) {
+        cacheAdminService.invalidate(name);
+        return statistics(name, response);
+    }
+
+    /**
+     * Removes cache entries by key.
+     *
+     * @param name cache name
+     * @param key key or its string representation
+     * @param response http response, status set to 404 if cache does not exist
+     * @return statistics after eviction as JSON
+     */
+    @RequestMapping(value = "/{name}/evict", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public CacheStatistics evict(@PathVariable String name, @RequestParam String key, HttpServletResponse response) {
+        cacheAdminService.evict(name, key);
+        return statistics(name, response);
+    }
+}
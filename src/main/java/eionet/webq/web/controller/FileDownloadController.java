@@ -52,17 +52,21 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.servlet.ModelAndView;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.transform.TransformerException;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -78,6 +82,14 @@ public class FileDownloadController {
      * Logger for this class.
      */
     public static final Logger LOGGER = Logger.getLogger(PublicPageController.class);
+    /**
+     * Cache-Control for project files, which are static form resources changing rarely.
+     */
+    static final String PROJECT_FILE_CACHE_CONTROL = "public, max-age=600";
+    /**
+     * Cache-Control for user files, which could be cached, but must be revalidated on each use.
+     */
+    static final String USER_FILE_CACHE_CONTROL = "no-cache";
     /**
      * Json to XML converter.
      */
@@ -148,14 +160,13 @@ public class FileDownloadController {
         if (file.isFromCdr() && file.getContent() == null) {
             file.setContent(envelopeService.fetchFileFromCdr(file, file.getEnvelope() + "/" + file.getName()).getBody());
         }
-        byte[] json = jsonXMLConverter.convertXmlToJson(file.getContent());
         setContentType(response, MediaType.APPLICATION_JSON);
-        writeToResponse(response, json);
+        writeToResponse(response, userFileService.jsonContent(file));
     }
 
     /**
-     * Convert the user XML file into JSON format and then back to XML format to be able to evaluate the conversion. The method is
-     * called when request header Accept content type is text/xml.
+     * Normalize the user XML file the same way as converting it into JSON format and then back to XML format does, to be able to
+     * evaluate the conversion. The method is called when request header Accept content type is text/xml.
      *
      * @param fileId   user file id.
      * @param request  http request to write file
@@ -167,11 +178,15 @@ public class FileDownloadController {
     public void downloadUserFileJsonToXml(@RequestParam int fileId, HttpServletRequest request, HttpServletResponse response)
             throws FileNotAvailableException {
 
-        UserFile file = userFileHelper.downloadUserFile(fileId, request);
-
-        byte[] xml = jsonXMLConverter.convertJsonToXml(jsonXMLConverter.convertXmlToJson(file.getContent()));
+        final UserFile file = userFileHelper.downloadUserFile(fileId, request);
 
-        writeXmlFileToResponse("json.xml", xml, response);
+        addXmlFileHeaders(response, "json.xml");
+        writeToResponse(response, -1, new ContentWriter() {
+            @Override
+            public void write(OutputStream output) {
+                jsonXMLConverter.normalizeXml(new ByteArrayInputStream(file.getContent()), output, true);
+            }
+        });
     }
 
     /**
@@ -187,9 +202,20 @@ public class FileDownloadController {
     public void downloadUserFile(@RequestParam int fileId, HttpServletRequest request, HttpServletResponse response)
             throws FileNotAvailableException {
 
-        UserFile file = userFileHelper.downloadUserFile(fileId, request);
+        final UserFile file = userFileHelper.downloadUserFile(fileId, request);
 
-        writeXmlFileToResponse(file.getName(), file.getContent(), response);
+        response.setHeader("Cache-Control", USER_FILE_CACHE_CONTROL);
+        // user files could be changed several times a second, so only content hash is reliable for revalidation
+        if (new ServletWebRequest(request, response).checkNotModified(userFileService.contentHash(file), -1)) {
+            return;
+        }
+        addXmlFileHeaders(response, encodeAsUrl(file.getName()));
+        writeToResponse(response, file.getSizeInBytes(), new ContentWriter() {
+            @Override
+            public void write(OutputStream output) {
+                userFileService.writeContent(file, output);
+            }
+        });
     }
 
     /**
@@ -213,7 +239,7 @@ public class FileDownloadController {
                     projectId + "/file/" + fileName);
         }
         String disposition = request.getServletPath().contains("/download/") ? "attachment" : "inline";
-        writeProjectFileToResponse(fileName, projectFile, response, disposition, format);
+        writeProjectFileToResponse(fileName, projectFile, request, response, disposition, format);
     }
 
     /**
@@ -254,12 +280,7 @@ public class FileDownloadController {
             return;
         }
 
-        Collection<UserFile> userFiles = Collections2.transform(selectedUserFile, new Function<Integer, UserFile>() {
-            @Override
-            public UserFile apply(Integer id) {
-                return userFileService.getById(id);
-            }
-        });
+        Collection<UserFile> userFiles = userFileService.getByIds(selectedUserFile);
 
         if (mergeModule != null) {
             MergeModule module = mergeModules.findById(mergeModule);
@@ -343,12 +364,13 @@ public class FileDownloadController {
      *
      * @param name        file name
      * @param projectFile project file object
+     * @param request     http request, checked for conditional headers
      * @param response    http response
      * @param disposition inline or attachment
      */
     private void
-    writeProjectFileToResponse(String name, ProjectFile projectFile, HttpServletResponse response, String disposition,
-            String format) {
+    writeProjectFileToResponse(String name, final ProjectFile projectFile, HttpServletRequest request,
+            HttpServletResponse response, String disposition, String format) {
 
         ConfigurableMimeFileTypeMap mimeTypesMap = new ConfigurableMimeFileTypeMap();
         String contentType = mimeTypesMap.getContentType(name);
@@ -367,10 +389,16 @@ public class FileDownloadController {
             // TODO check if there are more missing mime types
         }
 
-        byte[] fileContent = projectFile.getFileContent();
+        String contentHash = projectFileService.contentHash(projectFile);
+        String etag = contentHash != null && "json".equals(format) ? contentHash + "-json" : contentHash;
+        Date lastModified = projectFile.getUpdated() != null ? projectFile.getUpdated() : projectFile.getCreated();
+        response.setHeader("Cache-Control", PROJECT_FILE_CACHE_CONTROL);
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified != null ? lastModified.getTime() : -1)) {
+            return;
+        }
 
-        if ("json".equals(format)) {
-            fileContent = jsonXMLConverter.convertXmlToJson(projectFile.getFileContent());
+        boolean json = "json".equals(format);
+        if (json) {
             contentType = MediaType.APPLICATION_JSON_VALUE;
             disposition = "inline";
         }
@@ -380,12 +408,20 @@ public class FileDownloadController {
         }
         response.setContentType(contentType);
         setContentDisposition(response, disposition + ";filename=" + name);
-        if (projectFile.getUpdated() != null) {
-            response.setDateHeader("Last-Modified", projectFile.getUpdated().getTime());
-        } else if (projectFile.getCreated() != null) {
-            response.setDateHeader("Last-Modified", projectFile.getCreated().getTime());
+        if (json) {
+            writeToResponse(response, -1, jsonContentWriter(projectFile.getFileContent()));
+            return;
+        }
+        if (projectFile.getFileSizeInBytes() <= ProjectFileService.MAX_CACHED_FILE_SIZE) {
+            writeToResponse(response, projectFile.getFileContent());
+            return;
         }
-        writeToResponse(response, fileContent);
+        writeToResponse(response, projectFile.getFileSizeInBytes(), new ContentWriter() {
+            @Override
+            public void write(OutputStream output) {
+                projectFileService.writeContent(projectFile, output);
+            }
+        });
     }
 
     /**
@@ -456,21 +492,54 @@ public class FileDownloadController {
      * @param response http response
      * @param data     content to be written to response
      */
-    private void writeToResponse(HttpServletResponse response, byte[] data) {
+    private void writeToResponse(HttpServletResponse response, final byte[] data) {
+        writeToResponse(response, data.length, new ContentWriter() {
+            @Override
+            public void write(OutputStream output) throws IOException {
+                IOUtils.write(data, output);
+            }
+        });
+    }
+
+    /**
+     * Creates content writer converting xml to indented json while writing it to response.
+     *
+     * @param xml xml content
+     * @return json content writer
+     */
+    private ContentWriter jsonContentWriter(final byte[] xml) {
+        return new ContentWriter() {
+            @Override
+            public void write(OutputStream output) {
+                jsonXMLConverter.convertXmlToJson(new ByteArrayInputStream(xml), output, true);
+            }
+        };
+    }
+
+    /**
+     * Writes content to http response using content writer, so content can be streamed from its source.
+     *
+     * @param response      http response
+     * @param contentLength content length in bytes, not set to response if unknown
+     * @param contentWriter writes content to response output stream
+     */
+    private void writeToResponse(HttpServletResponse response, long contentLength, ContentWriter contentWriter) {
         ServletOutputStream output = null;
         try {
-            response.setContentLength(data.length);
+            if (contentLength > 0) {
+                response.setContentLength((int) contentLength);
+            }
             boolean noCache = true;
 
             if (response.getContentType() != null && response.getContentType().startsWith("image")) {
                 noCache = false;
             }
-            if (noCache) {
+            if (noCache && !response.containsHeader("Cache-Control")) {
                 response.addHeader("Cache-control", "no-cache");
             }
 
             output = response.getOutputStream();
-            IOUtils.write(data, output);
+            contentWriter.write(output);
             output.flush();
         } catch (IOException e) {
             throw new RuntimeException("Unable to write response", e);
@@ -479,6 +548,19 @@ public class FileDownloadController {
         }
     }
 
+    /**
+     * Writes content to output stream.
+     */
+    private interface ContentWriter {
+        /**
+         * Writes content.
+         *
+         * @param output output stream
+         * @throws IOException if writing fails
+         */
+        void write(OutputStream output) throws IOException;
+    }
+
     /**
      * Exception indicating that merge module choice is required.
      */
@@ -25,6 +25,7 @@ import eionet.webq.converter.JsonXMLBidirectionalConverter;
 import eionet.webq.converter.UserFileToFileInfoConverter;
 import eionet.webq.dao.orm.ProjectFile;
 import eionet.webq.dao.orm.UserFile;
+import eionet.webq.dto.Conversion;
 import eionet.webq.dto.FileInfo;
 import eionet.webq.dto.UploadForm;
 import eionet.webq.dto.XmlSaveResult;
@@ -33,6 +34,7 @@ import eionet.webq.web.controller.util.UserFileHelper;
 import eionet.webq.web.controller.util.UserFileList;
 import eionet.webq.web.controller.util.WebformUrlProvider;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -58,7 +60,11 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.apache.commons.lang3.StringUtils.isEmpty;
 
@@ -250,11 +256,7 @@ public class PublicPageController {
      */
     @RequestMapping(value = "/edit")
     public String editUserFile(@RequestParam(required = false) List<Integer> selectedUserFile, Model model) {
-        List<UserFile> userFiles = new ArrayList<UserFile>();
-
-        for (Integer fileId : selectedUserFile) {
-            userFiles.add(userFileService.getById(fileId));
-        }
+        List<UserFile> userFiles = userFileService.getByIds(selectedUserFile);
 
         model.addAttribute("userFileList", new UserFileList(userFiles));
         return welcome(model);
@@ -296,8 +298,18 @@ public class PublicPageController {
         try {
             LOGGER.info("/saveXml fileId=" + fileId + "; sessionid=" + this.requestBasedUserIdProvider.getUserId(request));
 
+            UserFile file = userFileHelper.getUserFile(fileId, request);
+            if (file != null && !file.isFromCdr()) {
+                InputStream input = request.getInputStream();
+                try {
+                    userFileService.updateContent(file, input);
+                } finally {
+                    IOUtils.closeQuietly(input);
+                }
+                return XmlSaveResult.valueOfSuccess();
+            }
             byte[] fileContent = getContentFromRequest(request);
-            return updateFileContent(fileId, request, fileContent);
+            return updateFileContent(file, request, fileContent);
         } catch (Exception e) {
             LOGGER.error("Unable to save file: " + e.toString(), e);
             return XmlSaveResult.valueOfError(e.toString());
@@ -320,8 +332,10 @@ public class PublicPageController {
         try {
             LOGGER.info("/saveXml fileId=" + fileId + "; sessionid=" + this.requestBasedUserIdProvider.getUserId(request));
 
-            byte[] xml = jsonToXMLConverter.convertJsonToXml(getContentFromRequest(request));
-            XmlSaveResult xmlSaveResult = updateFileContent(fileId, request, xml);
+            // file content is stored as byte array, xml is collected in chunks to avoid copying while buffer grows
+            ByteArrayOutputStream xml = new ByteArrayOutputStream();
+            jsonToXMLConverter.convertJsonToXml(request.getInputStream(), xml, true);
+            XmlSaveResult xmlSaveResult = updateFileContent(userFileHelper.getUserFile(fileId, request), request, xml.toByteArray());
             LOGGER.info("Converting json to XML ended up with result=" + xmlSaveResult);
             return xmlSaveResult;
         } catch (Exception e) {
@@ -407,7 +421,7 @@ public class PublicPageController {
     @ResponseBody
     public FileInfo getFileInfo(@RequestParam int fileId, HttpServletRequest request, HttpServletResponse response) {
 
-        UserFile userFile = userFileService.getById(fileId);
+        UserFile userFile = userFileService.getMetadataById(fileId);
         FileInfo fileInfo = new FileInfo();
         if (userFile == null) {
             response.setStatus(HttpServletResponse.SC_NOT_FOUND);
@@ -416,18 +430,31 @@ public class PublicPageController {
         }
         return fileInfo;
     }
+
+    /**
+     * Lists files uploaded by current user, with links to download, delete and convert them.
+     *
+     * @return file infos as JSON
+     */
+    @RequestMapping(value = "/file/list", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public List<FileInfo> listFiles() {
+        List<FileInfo> fileInfos = new ArrayList<FileInfo>();
+        for (UserFile userFile : allFilesWithConversions()) {
+            fileInfos.add(fileInfoConverter.convert(userFile));
+        }
+        return fileInfos;
+    }
     
     /**
      * Updates file content in storage.
      *
-     * @param fileId      file id to update
+     * @param file        file to update
      * @param request     current request
      * @param fileContent new file content
      * @return save result
      */
-    private XmlSaveResult updateFileContent(int fileId, HttpServletRequest request, byte[] fileContent) {
-        UserFile file = userFileHelper.getUserFile(fileId, request);
-
+    private XmlSaveResult updateFileContent(UserFile file, HttpServletRequest request, byte[] fileContent) {
         if (file == null) {
             return XmlSaveResult.valueOfError("File is not available.");
         }
@@ -479,8 +506,18 @@ public class PublicPageController {
      */
     private Collection<UserFile> allFilesWithConversions() {
         Collection<UserFile> userFiles = userFileService.allUploadedFiles();
+        if (userFiles.isEmpty()) {
+            return userFiles;
+        }
+        Set<String> schemas = new HashSet<String>();
+        for (UserFile userFile : userFiles) {
+            schemas.add(userFile.getXmlSchema());
+        }
+        // conversions not loaded in time are left out, so that the page is not blocked by converters api
+        Map<String, List<Conversion>> conversions = conversionService.conversionsForSchemas(schemas);
         for (UserFile userFile : userFiles) {
-            userFile.setAvailableConversions(conversionService.conversionsFor(userFile.getXmlSchema()));
+            List<Conversion> fileConversions = conversions.get(userFile.getXmlSchema());
+            userFile.setAvailableConversions(fileConversions != null ? fileConversions : Collections.<Conversion>emptyList());
         }
         return userFiles;
     }
@@ -492,11 +529,9 @@ public class PublicPageController {
      */
     private Collection<ProjectFile> allWebForms() {
 
-        Collection<ProjectFile> allWebforms = webFormService.getAllActiveWebForms();
+        Collection<ProjectFile> allWebforms = webFormService.getAllActiveWebFormsMetadata();
         if (allWebforms != null) {
-            for (ProjectFile webform : allWebforms) {
-                webform.setWebformLink(webformUrlProvider.getWebformPath(webform));
-            }
+            webformUrlProvider.setWebformLinks(allWebforms);
         }
         return allWebforms;
     }
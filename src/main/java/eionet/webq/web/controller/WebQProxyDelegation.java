@@ -27,6 +27,7 @@ import eionet.webq.dto.KnownHostAuthenticationMethod;
 import eionet.webq.service.CDREnvelopeService;
 import eionet.webq.service.FileNotAvailableException;
 import eionet.webq.service.KnownHostsService;
+import eionet.webq.service.RemoteStylesheetService;
 import eionet.webq.web.controller.util.ProxyDelegationHelper;
 import eionet.webq.web.controller.util.UserFileHelper;
 import org.apache.commons.lang3.StringUtils;
@@ -39,6 +40,7 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.stereotype.Controller;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
@@ -47,22 +49,21 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.multipart.MultipartHttpServletRequest;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.xml.XMLConstants;
+import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -101,6 +102,11 @@ public class WebQProxyDelegation {
      */
     @Autowired
     private CDREnvelopeService envelopeService;
+    /**
+     * Remote stylesheet service.
+     */
+    @Autowired
+    RemoteStylesheetService remoteStylesheetService;
 
     @Autowired
     @Qualifier("restTemplate")
@@ -246,7 +252,7 @@ public class WebQProxyDelegation {
                         HttpHeaders authorization = getHttpHeaderWithBasicAuthentication(knownHost);
                         LOGGER.info("Add basic auth from known hosts to URL: " + uri);
                         HttpEntity<String> httpEntity = new HttpEntity<String>(body, authorization);
-                        return new RestTemplate().postForObject(new URI(uri), httpEntity, String.class);
+                        return restTemplate.postForObject(new URI(uri), httpEntity, String.class);
                     }
                 }
             }
@@ -313,6 +319,7 @@ public class WebQProxyDelegation {
      * Fetches XML file from given xmlUri and applies XSLT conversion with xsltUri.
      * The resulting xml is converted to json, if format parameter equals 'json'.
      * Applies authorisation information to fetch XML request, if it is available through UserFile.
+     * Remote XML is transformed while it is downloaded and the result is streamed to response.
      *
      * @param xmlUri   remote xml file URI
      * @param fileId   WebQ session file ID to be used for applying authorisation info
@@ -320,65 +327,80 @@ public class WebQProxyDelegation {
      * @param format   optional response format. Only json is supported, default is xml
      * @param request  standard HttpServletRequest
      * @param response standard HttpServletResponse
-     * @return converted XML content
-     * @throws UnsupportedEncodingException Cannot convert xml to UTF-8
+     * @throws IOException                  Cannot write response
      * @throws URISyntaxException           xmlUri or xsltUri is incorrect
      * @throws FileNotAvailableException    xml or xslt file is not available
      * @throws TransformerException         error when applying xslt transformation on xml
      */
     @RequestMapping(value = "/proxyXmlWithConversion", method = RequestMethod.GET, produces = "text/html;charset=utf-8")
-    @ResponseBody
-    public byte[] proxyXmlWithConversion(@RequestParam("xmlUri") String xmlUri,
+    public void proxyXmlWithConversion(@RequestParam("xmlUri") final String xmlUri,
             @RequestParam(required = false) Integer fileId,
-            @RequestParam("xsltUri") String xsltUri, @RequestParam(required = false) String format, HttpServletRequest request
-            , HttpServletResponse response)
-            throws UnsupportedEncodingException, URISyntaxException, FileNotAvailableException, TransformerException {
+            @RequestParam("xsltUri") final String xsltUri, @RequestParam(required = false) String format,
+            HttpServletRequest request, HttpServletResponse response)
+            throws IOException, URISyntaxException, FileNotAvailableException, TransformerException {
 
-        byte[] xml = null;
+        final Transformer transformer = remoteStylesheetService.getTemplates(xsltUri).newTransformer();
+        for (Map.Entry<String, String[]> parameter : request.getParameterMap().entrySet()) {
+            if (!parameter.getKey().equals("xmlUri") && !parameter.getKey().equals("fileId") && !parameter.getKey()
+                    .equals("xsltUri") && !parameter.getKey().equals("format")) {
+                transformer.setParameter(parameter.getKey(),
+                        StringUtils.defaultString(parameter.getValue()[0]));
+            }
+        }
 
         UserFile file = userFileHelper.getUserFile(fileId, request);
-
+        String authorizedXml = null;
         if (file != null && ProxyDelegationHelper
                 .isCompanyIdParameterValidForBdrEnvelope(request.getRequestURI(), file.getEnvelope())) {
-            xml = restProxyGetWithAuth(xmlUri, fileId, request).getBytes("UTF-8");
-        } else {
-            xml = new RestTemplate().getForObject(new URI(xmlUri), byte[].class);
+            authorizedXml = restProxyGetWithAuth(xmlUri, fileId, request);
         }
-        byte[] xslt = new RestTemplate().getForObject(new URI(xsltUri), byte[].class);
-        Source xslSource = new StreamSource(new ByteArrayInputStream(xslt));
-        ByteArrayOutputStream xmlResultOutputStream = new ByteArrayOutputStream();
 
-        try {
-            TransformerFactory transformerFactory = TransformerFactory.newInstance();
-            transformerFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING,true);
-               Transformer transformer = transformerFactory.newTransformer(xslSource);
-            for (Map.Entry<String, String[]> parameter : request.getParameterMap().entrySet()) {
-                if (!parameter.getKey().equals("xmlUri") && !parameter.getKey().equals("fileId") && !parameter.getKey()
-                        .equals("xsltUri") && !parameter.getKey().equals("format")) {
-                    transformer.setParameter(parameter.getKey(),
-                            StringUtils.defaultString(parameter.getValue()[0]));
-                }
-            }
-            transformer.transform(new StreamSource(new ByteArrayInputStream(xml)), new StreamResult(xmlResultOutputStream));
-        } catch (TransformerException e1) {
-            LOGGER.error("Unable to transform xml uri=" + xmlUri + " with stylesheet=" + xsltUri);
-            e1.printStackTrace();
-            throw e1;
-        }
-        byte[] result;
+        response.setCharacterEncoding("utf-8");
+        final Result result;
         if (StringUtils.isNotEmpty(format) && format.equals("json")) {
-            result = jsonXMLConverter.convertXmlToJson(xmlResultOutputStream.toByteArray());
             response.setContentType(String.valueOf(MediaType.APPLICATION_JSON));
+            result = jsonXMLConverter.xmlToJsonResult(response.getOutputStream());
         } else {
-            result = xmlResultOutputStream.toByteArray();
             response.setContentType(String.valueOf(MediaType.APPLICATION_XML));
+            result = new StreamResult(response.getOutputStream());
         }
-        LOGGER.info("Converted xml uri=" + xmlUri + " with stylesheet=" + xsltUri);
-        response.setCharacterEncoding("utf-8");
-        return result;
 
+        TransformerException transformationError;
+        if (authorizedXml != null) {
+            transformationError = transform(transformer, new StreamSource(new StringReader(authorizedXml), xmlUri), result);
+        } else {
+            transformationError = restTemplate.execute(new URI(xmlUri), HttpMethod.GET, null,
+                    new ResponseExtractor<TransformerException>() {
+                        @Override
+                        public TransformerException extractData(ClientHttpResponse xml) throws IOException {
+                            return transform(transformer, new StreamSource(xml.getBody(), xmlUri), result);
+                        }
+                    });
+        }
+        if (transformationError != null) {
+            LOGGER.error("Unable to transform xml uri=" + xmlUri + " with stylesheet=" + xsltUri, transformationError);
+            throw transformationError;
+        }
+        LOGGER.info("Converted xml uri=" + xmlUri + " with stylesheet=" + xsltUri);
     } // end of method proxyXmlWithConversion
 
+    /**
+     * Applies transformation.
+     *
+     * @param transformer transformer
+     * @param source      xml source
+     * @param result      transformation result
+     * @return transformation error or null if transformation succeeded
+     */
+    private TransformerException transform(Transformer transformer, Source source, Result result) {
+        try {
+            transformer.transform(source, result);
+            return null;
+        } catch (TransformerException e) {
+            return e;
+        }
+    }
+
     /**
      * Create HttpHeader with basic authentication info.
      *
@@ -22,6 +22,8 @@ package eionet.webq.web.controller.util;
 
 import eionet.webq.dao.orm.ProjectFile;
 
+import java.util.Collection;
+
 /**
  * Created by Enriko on 18.03.14.
  */
@@ -35,4 +37,12 @@ public interface WebformUrlProvider {
      */
     public String getWebformPath(ProjectFile webform);
 
+    /**
+     * Sets webform link for each webform, see {@link #getWebformPath(ProjectFile)}. Missing project identifiers of
+     * HTML webforms are resolved with single lookup for all webforms.
+     *
+     * @param webforms project files
+     */
+    public void setWebformLinks(Collection<ProjectFile> webforms);
+
 }
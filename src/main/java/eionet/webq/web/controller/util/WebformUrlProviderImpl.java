@@ -28,6 +28,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * {@link WebformUrlProvider} implementation.
  */
@@ -47,7 +51,7 @@ public class WebformUrlProviderImpl implements WebformUrlProvider {
     @Override
     public String getWebformPath(ProjectFile webform) {
         String webformPath = null;
-        if (webform.getFileName().endsWith(".html") || webform.getFileName().endsWith(".htm")) {
+        if (isHtmlForm(webform)) {
             if (StringUtils.isEmpty(webform.getProjectIdentifier())) {
                 ProjectEntry project = projectService.getById(webform.getProjectId());
                 if (project != null) {
@@ -62,4 +66,41 @@ public class WebformUrlProviderImpl implements WebformUrlProvider {
         }
         return webformPath;
     }
+
+    @Override
+    public void setWebformLinks(Collection<ProjectFile> webforms) {
+        Map<Integer, String> projectIdentifiers = null;
+        for (ProjectFile webform : webforms) {
+            if (isHtmlForm(webform) && StringUtils.isEmpty(webform.getProjectIdentifier())) {
+                if (projectIdentifiers == null) {
+                    projectIdentifiers = projectIdentifiers();
+                }
+                webform.setProjectIdentifier(projectIdentifiers.get(webform.getProjectId()));
+            }
+            webform.setWebformLink(getWebformPath(webform));
+        }
+    }
+
+    /**
+     * Checks whether webform is plain HTML.
+     *
+     * @param webform project file
+     * @return true if webform file is HTML
+     */
+    private boolean isHtmlForm(ProjectFile webform) {
+        return webform.getFileName().endsWith(".html") || webform.getFileName().endsWith(".htm");
+    }
+
+    /**
+     * Loads textual identifiers of all projects.
+     *
+     * @return project identifiers by project id
+     */
+    private Map<Integer, String> projectIdentifiers() {
+        Map<Integer, String> projectIdentifiers = new HashMap<Integer, String>();
+        for (ProjectEntry project : projectService.getAllFolders()) {
+            projectIdentifiers.put(project.getId(), project.getProjectId());
+        }
+        return projectIdentifiers;
+    }
 }
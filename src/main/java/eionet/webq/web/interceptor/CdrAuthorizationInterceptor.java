@@ -21,15 +21,10 @@
 package eionet.webq.web.interceptor;
 
 import eionet.webq.converter.CookiesToStringBidirectionalConverter;
+import eionet.webq.web.client.HttpClientConnectionPool;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.http.HttpRequest;
-import org.apache.http.HttpResponse;
-import org.apache.http.ProtocolException;
-import org.apache.http.client.RedirectStrategy;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.protocol.HttpContext;
-import org.apache.http.ssl.SSLContexts;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -50,8 +45,6 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -59,8 +52,6 @@ import java.util.regex.Pattern;
 
 import static org.apache.commons.lang3.StringUtils.defaultString;
 import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.springframework.web.client.RestOperations;
 
 /**
@@ -82,6 +73,10 @@ public class CdrAuthorizationInterceptor extends HandlerInterceptorAdapter {
      * Forward parsed cookies to controller via request attribute.
      */
     public static final String PARSED_COOKIES_ATTRIBUTE = "request.parsed.cookies";
+    /**
+     * Request attribute holding authorization verdict key of current request.
+     */
+    static final String VERDICT_KEY_ATTRIBUTE = "request.cdr.authorization.verdict";
     /**
      * Session attribute name for counting unsuccessful authorization counts.
      */
@@ -116,6 +111,16 @@ public class CdrAuthorizationInterceptor extends HandlerInterceptorAdapter {
      */
     @Autowired
     private RestOperations restOperations;
+    /**
+     * Cached CDR authorization verdicts.
+     */
+    @Autowired
+    CdrAuthorizationVerdicts authorizationVerdicts;
+    /**
+     * Shared http connection pool.
+     */
+    @Autowired
+    HttpClientConnectionPool httpClientConnectionPool;
     /**
      * CDR login method name.
      */
@@ -145,16 +150,23 @@ public class CdrAuthorizationInterceptor extends HandlerInterceptorAdapter {
         if (StringUtils.isNotEmpty(authorization) || request.getParameter("auth") != null) {
             // if Basic auth is present in the request, then try to log in to CDR to test if it is valid token for given domain.
             // "auth" parameter is just meant for testing the CDR API in development environment - WebQ asks to authenticate.
+            String loginUrl = extractCdrUrl(request) + "/" + cdrLoginMethod;
+            String verdictKey = authorizationVerdicts.key(loginUrl, authorization);
+            request.setAttribute(VERDICT_KEY_ATTRIBUTE, verdictKey);
+            if (authorizationVerdicts.isAuthorized(verdictKey)) {
+                return PROCEED;
+            }
             HttpHeaders headers = new HttpHeaders();
             headers.add(AUTHORIZATION_HEADER, authorization);
 //            return PROCEED;
             try {
                 ResponseEntity<String> loginResponse
-                        = restOperations.postForEntity(extractCdrUrl(request) + "/" + cdrLoginMethod,
-                        new HttpEntity<Object>(headers), String.class);
+                        = restOperations.postForEntity(loginUrl, new HttpEntity<Object>(headers), String.class);
                 LOGGER.info("Response code received from CDR basic authorization request " + loginResponse.getStatusCode());
+                authorizationVerdicts.authorized(verdictKey);
                 return PROCEED;
             } catch (HttpStatusCodeException e) {
+                authorizationVerdicts.invalidate(verdictKey);
                 if (e.getStatusCode() != HttpStatus.UNAUTHORIZED) {
                     LOGGER.warn("Authorization against CDR failed with unexpected HTTP status code", e);
                 }
@@ -173,12 +185,17 @@ public class CdrAuthorizationInterceptor extends HandlerInterceptorAdapter {
                 }
                 headers.add("Cookie",cookieHeader);
 
-
                 String urlToFetch = extractCdrEnvelopeUrl(request) + "/" + cdrEnvelopePropertiesMethod;
+                String verdictKey = authorizationVerdicts.key(urlToFetch, cookieHeader);
+                request.setAttribute(VERDICT_KEY_ATTRIBUTE, verdictKey);
+                if (authorizationVerdicts.isAuthorized(verdictKey)) {
+                    request.setAttribute(PARSED_COOKIES_ATTRIBUTE, cookiesConverter.convertCookiesToString(cookies));
+                    return PROCEED;
+                }
                     //ResponseEntity<String> loginResponse = restOperations.exchange(urlToFetch, HttpMethod.GET,
                     //        new HttpEntity<Object>(headers), String.class);
 
-                 HttpResponse responseFromCdr = fetchUrlWithoutRedirection(urlToFetch, headers);
+                CloseableHttpResponse responseFromCdr = fetchUrlWithoutRedirection(urlToFetch, headers);
                 try {
                     int statusCode = responseFromCdr.getStatusLine().getStatusCode();
 
@@ -186,8 +203,11 @@ public class CdrAuthorizationInterceptor extends HandlerInterceptorAdapter {
                             "Response code received from CDR envelope request using cookies " + statusCode);
                     if (statusCode == HttpStatus.OK.value()) {
                         request.setAttribute(PARSED_COOKIES_ATTRIBUTE, cookiesConverter.convertCookiesToString(cookies));
+                        authorizationVerdicts.authorized(verdictKey);
                         return PROCEED;
-                    } else if ((statusCode == HttpStatus.MOVED_PERMANENTLY.value()
+                    }
+                    authorizationVerdicts.invalidate(verdictKey);
+                    if ((statusCode == HttpStatus.MOVED_PERMANENTLY.value()
                             || statusCode == HttpStatus.MOVED_TEMPORARILY.value())
                             && responseFromCdr.getFirstHeader("Location") != null) {
                         // redirect to CDR login page
@@ -199,6 +219,8 @@ public class CdrAuthorizationInterceptor extends HandlerInterceptorAdapter {
                     if (e.getStatusCode() != HttpStatus.UNAUTHORIZED) {
                         LOGGER.warn("Fetching CDR envelope page failed with unexpected HTTP status code", e);
                     }
+                } finally {
+                    responseFromCdr.close();
                 }
             }
         }
@@ -215,6 +237,13 @@ public class CdrAuthorizationInterceptor extends HandlerInterceptorAdapter {
         return STOP_REQUEST_PROPAGATION;
     }
 
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (response.getStatus() == HttpServletResponse.SC_UNAUTHORIZED) {
+            authorizationVerdicts.invalidate((String) request.getAttribute(VERDICT_KEY_ATTRIBUTE));
+        }
+    }
+
     public void setCdrLoginMethod(String cdrLoginMethod) {
         this.cdrLoginMethod = cdrLoginMethod;
     }
@@ -278,42 +307,27 @@ public class CdrAuthorizationInterceptor extends HandlerInterceptorAdapter {
 
     /**
      * Calls a resource in CDR with redirect disabled. Then it is possible to catch if the user is redirected to login page.
+     * Request is sent with shared pooled http client, so TLS protocol is no longer pinned to TLSv1.2, but negotiated
+     * using JVM defaults.
      *
      * @param url CDR url to fetch.
      * @param headers HTTP headers to send.
-     * @return HTTP response object
+     * @return HTTP response object, must be closed to release connection
      * @throws IOException if network error occurs
-     * @throws java.security.NoSuchAlgorithmException
-     * @throws java.security.KeyManagementException
      */
 
-    protected CloseableHttpResponse fetchUrlWithoutRedirection(String url, HttpHeaders headers) throws IOException, NoSuchAlgorithmException, KeyManagementException {
-         HttpClientBuilder httpClientBuilder = HttpClientBuilder.create();
-         httpClientBuilder.setSSLContext(SSLContexts.custom().useProtocol("TLSv1.2").build()).setRedirectStrategy(
-                 new RedirectStrategy() {
-             @Override
-             public boolean isRedirected(HttpRequest httpRequest, HttpResponse httpResponse, HttpContext httpContext)
-                     throws ProtocolException {
-                 return false;
-             }
-
-             @Override
-             public HttpUriRequest getRedirect(HttpRequest httpRequest, HttpResponse httpResponse,
-                     HttpContext httpContext) throws ProtocolException {
-                 return null;
-             }
-         });
-         HttpGet httpget = new HttpGet(url);
-
-         for (Map.Entry<String, List<String>> header : headers.entrySet()) {
-             for (String value : header.getValue()) {
-                 httpget.addHeader(header.getKey(), value);
-             }
-         }
-         CloseableHttpClient client = httpClientBuilder.build();
-         CloseableHttpResponse httpResponse = client.execute(httpget);
-         return httpResponse;
-     }
+    protected CloseableHttpResponse fetchUrlWithoutRedirection(String url, HttpHeaders headers) throws IOException {
+        HttpGet httpget = new HttpGet(url);
+        httpget.setConfig(RequestConfig.copy(httpClientConnectionPool.getRequestConfig())
+                .setRedirectsEnabled(false).build());
+
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            for (String value : header.getValue()) {
+                httpget.addHeader(header.getKey(), value);
+            }
+        }
+        return httpClientConnectionPool.getHttpClient().execute(httpget);
+    }
 
      protected boolean isInstanceURLWhiteListed(String instanceUrl) throws URISyntaxException {
          URI uri = new URI(instanceUrl);
@@ -0,0 +1,108 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.web.interceptor;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Short living cache of successful CDR authorization checks.
+ * Verdicts are keyed by hash of checked CDR URL and credentials, so credentials are not kept in memory.
+ * Time to live is configured with cdr.authorization.cache.ttl property.
+ */
+@Component
+public class CdrAuthorizationVerdicts {
+    /**
+     * Cache of authorization verdicts.
+     */
+    static final String CDR_AUTHORIZATIONS_CACHE = "cdrAuthorizations";
+    /**
+     * Cache manager.
+     */
+    @Autowired
+    CacheManager cacheManager;
+
+    /**
+     * Creates verdict key from CDR URL the credentials are checked against and credentials.
+     *
+     * @param checkedUrl CDR URL the credentials are checked against
+     * @param credentials authorization header or cookies sent to CDR
+     * @return verdict key or null if credentials are empty
+     */
+    public String key(String checkedUrl, String credentials) {
+        if (StringUtils.isBlank(credentials)) {
+            return null;
+        }
+        return Hashing.sha256().newHasher()
+                .putString(StringUtils.defaultString(checkedUrl), StandardCharsets.UTF_8)
+                .putByte((byte) 0)
+                .putString(credentials, StandardCharsets.UTF_8)
+                .hash().toString();
+    }
+
+    /**
+     * Checks whether successful authorization is cached.
+     *
+     * @param key verdict key
+     * @return is authorized
+     */
+    public boolean isAuthorized(String key) {
+        return key != null && cache().get(key) != null;
+    }
+
+    /**
+     * Remembers successful authorization.
+     *
+     * @param key verdict key
+     */
+    public void authorized(String key) {
+        if (key != null) {
+            cache().put(key, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Forgets authorization, e.g. if CDR responded with 401.
+     *
+     * @param key verdict key
+     */
+    public void invalidate(String key) {
+        if (key != null) {
+            cache().evict(key);
+        }
+    }
+
+    /**
+     * Returns verdicts cache.
+     *
+     * @return cache
+     */
+    private Cache cache() {
+        return cacheManager.getCache(CDR_AUTHORIZATIONS_CACHE);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Enriko Käsper
+ */
+
+package eionet.webq.xforms;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.protocol.HttpContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+
+import com.google.common.io.ByteStreams;
+
+import de.betterform.connector.DefaultConnectorFactory;
+import eionet.webq.web.client.HttpClientConnectionPool;
+
+/**
+ * Connector factory providing XForms connectors with http clients backed by shared connection pool.
+ * Betterform connectors are built on legacy http client API, so this class is the only adapter to deprecated
+ * http client classes. Legacy types are referenced by fully qualified names to keep deprecation warnings here.
+ */
+@Configurable
+@SuppressWarnings("deprecation")
+public class WebQConnectorFactory extends DefaultConnectorFactory {
+    /**
+     * Responses up to this size are read fully into memory, so connection is released before response is handed to
+     * connector. Larger responses keep their connection until connector reads response body to the end or closes it.
+     */
+    static final int MAX_BUFFERED_RESPONSE_BYTES = 1024 * 1024;
+    /**
+     * Reads small response bodies fully, because betterform connectors hold response streams open.
+     */
+    static final HttpResponseInterceptor BUFFER_SMALL_RESPONSE_ENTITY = new HttpResponseInterceptor() {
+        @Override
+        public void process(HttpResponse response, HttpContext context) throws IOException {
+            HttpEntity entity = response.getEntity();
+            if (entity == null || !entity.isStreaming() || entity.getContentLength() > MAX_BUFFERED_RESPONSE_BYTES) {
+                return;
+            }
+            InputStream content = entity.getContent();
+            byte[] head = ByteStreams.toByteArray(ByteStreams.limit(content, MAX_BUFFERED_RESPONSE_BYTES + 1));
+            AbstractHttpEntity replacement;
+            if (head.length <= MAX_BUFFERED_RESPONSE_BYTES) {
+                replacement = new ByteArrayEntity(head);
+            } else {
+                replacement = new InputStreamEntity(
+                        new SequenceInputStream(new ByteArrayInputStream(head), content), entity.getContentLength());
+            }
+            replacement.setContentType(entity.getContentType());
+            replacement.setContentEncoding(entity.getContentEncoding());
+            response.setEntity(replacement);
+        }
+    };
+    /**
+     * Shared http connection pool.
+     */
+    @Autowired
+    HttpClientConnectionPool httpClientConnectionPool;
+    /**
+     * Pooled connection manager for legacy http clients, its statistics are reported by shared connection pool.
+     */
+    @Autowired
+    org.apache.http.conn.ClientConnectionManager xformsConnectionManager;
+
+    @Override
+    public org.apache.http.impl.client.DefaultHttpClient getHttpClient(org.apache.http.params.HttpParams httpParams) {
+        if (httpClientConnectionPool == null || xformsConnectionManager == null) {
+            return super.getHttpClient(httpParams);
+        }
+        RequestConfig requestConfig = httpClientConnectionPool.getRequestConfig();
+        org.apache.http.params.HttpConnectionParams.setConnectionTimeout(httpParams, requestConfig.getConnectTimeout());
+        org.apache.http.params.HttpConnectionParams.setSoTimeout(httpParams, requestConfig.getSocketTimeout());
+        org.apache.http.impl.client.DefaultHttpClient client =
+                new org.apache.http.impl.client.DefaultHttpClient(xformsConnectionManager, httpParams);
+        client.addResponseInterceptor(BUFFER_SMALL_RESPONSE_ENTITY);
+        return client;
+    }
+}
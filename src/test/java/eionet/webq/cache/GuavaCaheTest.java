@@ -1,6 +1,18 @@
 package eionet.webq.cache;
 
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheBuilderSpec;
+import com.google.common.cache.Weigher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.junit.Assert;
 import org.junit.Test;
 import org.springframework.cache.Cache;
@@ -41,4 +53,231 @@ public class GuavaCaheTest {
         Assert.assertNull(testCache.get(itemKey));
     }
     
+    @Test
+    public void testCacheSpecificationWithWeigher() {
+        GuavaCacheManager manager = new GuavaCacheManager();
+        manager.setCacheBuilderSpec(CacheBuilderSpec.parse("maximumSize=100"));
+        manager.setCacheWeighers(Collections.<String, Weigher<Object, Object>>singletonMap("weighed", new ContentSizeWeigher()));
+        manager.setCacheSpecifications(Collections.singletonMap("weighed", "maximumWeight=10, concurrencyLevel=1"));
+        manager.setCacheNames(Arrays.asList("weighed", "default"));
+        Cache weighedCache = manager.getCache("weighed");
+
+        weighedCache.put("first", new byte[6]);
+        weighedCache.put("second", new byte[6]);
+
+        Assert.assertNull(weighedCache.get("first"));
+        Assert.assertNotNull(weighedCache.get("second"));
+    }
+
+    @Test
+    public void testCacheSpecificationAppliedToKnownCaches() {
+        GuavaCacheManager manager = new GuavaCacheManager("weighed");
+        manager.setCacheWeighers(Collections.<String, Weigher<Object, Object>>singletonMap("weighed", new ContentSizeWeigher()));
+        manager.setCacheSpecifications(Collections.singletonMap("weighed", "maximumWeight=10, concurrencyLevel=1"));
+        Cache weighedCache = manager.getCache("weighed");
+
+        weighedCache.put("large", new byte[11]);
+
+        Assert.assertNull(weighedCache.get("large"));
+    }
+
+    @Test
+    public void testStaleValueServedUntilRefreshCompletes() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        FakeTicker ticker = new FakeTicker();
+        GuavaCache cache = refreshingCache(executor, ticker);
+        CountingLoader loader = new CountingLoader();
+
+        Assert.assertEquals("value1", cache.get("key", loader));
+        ticker.advance(2, TimeUnit.MINUTES);
+
+        Assert.assertEquals("value1", cache.get("key").get());
+        Assert.assertEquals(1, executor.tasks.size());
+        Assert.assertEquals("value1", cache.get("key").get());
+
+        executor.runAll();
+        Assert.assertEquals("value2", cache.get("key").get());
+        Assert.assertEquals(2, loader.calls.get());
+    }
+
+    @Test
+    public void testStaleValueKeptWhenRefreshFails() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        FakeTicker ticker = new FakeTicker();
+        GuavaCache cache = refreshingCache(executor, ticker);
+        CountingLoader loader = new CountingLoader();
+
+        cache.get("key", loader);
+        loader.failing = true;
+        ticker.advance(2, TimeUnit.MINUTES);
+        cache.get("key");
+        executor.runAll();
+
+        Assert.assertEquals("value1", cache.get("key").get());
+    }
+
+    @Test
+    public void testRefreshedValueIsNotReloadedAgainUntilRefreshIntervalPasses() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        FakeTicker ticker = new FakeTicker();
+        GuavaCache cache = refreshingCache(executor, ticker);
+        CountingLoader loader = new CountingLoader();
+
+        cache.get("key", loader);
+        ticker.advance(2, TimeUnit.MINUTES);
+        cache.get("key", loader);
+        executor.runAll();
+        cache.get("key", loader);
+
+        Assert.assertTrue(executor.tasks.isEmpty());
+        Assert.assertEquals("value2", cache.get("key", loader));
+    }
+
+    @Test
+    public void testPutValuesAreNotRefreshed() {
+        ManualExecutor executor = new ManualExecutor();
+        FakeTicker ticker = new FakeTicker();
+        GuavaCache cache = refreshingCache(executor, ticker);
+
+        cache.put("key", "value");
+        ticker.advance(2, TimeUnit.MINUTES);
+        cache.get("key");
+        executor.runAll();
+
+        Assert.assertEquals("value", cache.get("key").get());
+    }
+
+    @Test
+    public void testCacheStatisticsRecorded() {
+        GuavaCacheManager manager = new GuavaCacheManager("stats");
+        GuavaCache cache = (GuavaCache) manager.getCache("stats");
+
+        cache.get("key");
+        cache.put("key", "value");
+        cache.get("key");
+        cache.get("key");
+
+        Assert.assertEquals(2, cache.getStats().hitCount());
+        Assert.assertEquals(1, cache.getStats().missCount());
+    }
+
+    @Test
+    public void testManagerBuildsRefreshingCacheFromSpecification() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        GuavaCacheManager manager = new GuavaCacheManager("refreshing", "plain");
+        manager.setReloadExecutor(executor);
+        manager.setCacheSpecifications(Collections.singletonMap("refreshing", "maximumSize=10"));
+        manager.setCacheRefreshIntervals(Collections.singletonMap("refreshing", 60L));
+
+        Assert.assertTrue(((GuavaCache) manager.getCache("refreshing")).isRefreshing());
+        Assert.assertFalse(((GuavaCache) manager.getCache("plain")).isRefreshing());
+        Assert.assertEquals("value1", manager.getCache("refreshing").get("key", new CountingLoader()));
+    }
+
+    @Test
+    public void testTypedGetReturnsStoredValue() {
+        GuavaCacheManager manager = new GuavaCacheManager("typed");
+        Cache cache = manager.getCache("typed");
+
+        Assert.assertNull(cache.get("key", byte[].class));
+        cache.put("key", "value".getBytes());
+
+        Assert.assertArrayEquals("value".getBytes(), cache.get("key", byte[].class));
+        Assert.assertArrayEquals("value".getBytes(), (byte[]) cache.get("key", (Class<?>) null));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTypedGetRejectsValueOfOtherType() {
+        GuavaCacheManager manager = new GuavaCacheManager("typed");
+        Cache cache = manager.getCache("typed");
+        cache.put("key", "value");
+
+        cache.get("key", byte[].class);
+    }
+
+    @Test
+    public void testTypedGetUnwrapsAndRefreshesLoadedValue() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        FakeTicker ticker = new FakeTicker();
+        GuavaCache cache = refreshingCache(executor, ticker);
+        cache.get("key", new CountingLoader());
+        ticker.advance(2, TimeUnit.MINUTES);
+
+        Assert.assertEquals("value1", cache.get("key", String.class));
+        executor.runAll();
+
+        Assert.assertEquals("value2", cache.get("key", String.class));
+    }
+
+    @Test
+    public void testPutIfAbsentKeepsExistingValue() throws Exception {
+        ManualExecutor executor = new ManualExecutor();
+        FakeTicker ticker = new FakeTicker();
+        GuavaCache cache = refreshingCache(executor, ticker);
+
+        Assert.assertNull(cache.putIfAbsent("put", "value"));
+        Assert.assertEquals("value", cache.putIfAbsent("put", "other").get());
+        Assert.assertEquals("value", cache.get("put", String.class));
+
+        cache.get("loaded", new CountingLoader());
+        Assert.assertEquals("value1", cache.putIfAbsent("loaded", "other").get());
+        Assert.assertEquals("value1", cache.get("loaded", String.class));
+    }
+
+    @Test
+    public void testPutIfAbsentStoresNullValue() {
+        GuavaCacheManager manager = new GuavaCacheManager("nulls");
+        Cache cache = manager.getCache("nulls");
+
+        Assert.assertNull(cache.putIfAbsent("key", null));
+        Assert.assertNull(cache.putIfAbsent("key", "value").get());
+    }
+
+    private GuavaCache refreshingCache(Executor executor, Ticker ticker) {
+        return new GuavaCache("refreshing", CacheBuilder.newBuilder().recordStats().build(), true,
+                TimeUnit.MINUTES.toNanos(1), ticker, executor);
+    }
+
+    private static class ManualExecutor implements Executor {
+        private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            for (Runnable task : tasks) {
+                task.run();
+            }
+            tasks.clear();
+        }
+    }
+
+    private static class FakeTicker extends Ticker {
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        void advance(long time, TimeUnit unit) {
+            nanos.addAndGet(unit.toNanos(time));
+        }
+    }
+
+    private static class CountingLoader implements Callable<String> {
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile boolean failing;
+
+        @Override
+        public String call() throws Exception {
+            if (failing) {
+                throw new IllegalStateException("loader failed");
+            }
+            return "value" + calls.incrementAndGet();
+        }
+    }
+
 }
@@ -0,0 +1,125 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.converter;
+
+import org.junit.Test;
+
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+public class JsonXMLBidirectionalConverterTest {
+    private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<root xmlns:x=\"http://x\">\n  <item x:id=\"1\">first</item>\n  <item>2</item>\n"
+            + "  <x:empty/>\n</root>";
+    private JsonXMLBidirectionalConverter converter = new JsonXMLBidirectionalConverter();
+
+    @Test
+    public void streamedTransformationResultIsConvertedSameAsSerializedXml() throws Exception {
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+
+        TransformerFactory.newInstance().newTransformer().transform(
+                new StreamSource(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8))),
+                converter.xmlToJsonResult(json));
+
+        assertThat(withoutWhitespace(json.toByteArray()),
+                equalTo(withoutWhitespace(converter.convertXmlToJson(XML.getBytes(StandardCharsets.UTF_8)))));
+    }
+
+    @Test
+    public void transformationResultIsWrittenAsIndentedJson() throws Exception {
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+
+        TransformerFactory.newInstance().newTransformer().transform(
+                new StreamSource(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8))),
+                converter.xmlToJsonResult(json));
+
+        assertThat(json.toByteArray(), equalTo(converter.convertXmlToJson(XML.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void streamedXmlToJsonConversionIsSameAsByteArrayConversion() throws Exception {
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+
+        converter.convertXmlToJson(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)), json, true);
+
+        assertThat(json.toByteArray(), equalTo(converter.convertXmlToJson(XML.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void compactJsonDiffersFromPrettyJsonOnlyByWhitespace() throws Exception {
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+
+        converter.convertXmlToJson(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)), json, false);
+
+        String compact = new String(json.toByteArray(), StandardCharsets.UTF_8);
+        assertFalse(compact.contains("\n"));
+        assertThat(withoutWhitespace(json.toByteArray()),
+                equalTo(withoutWhitespace(converter.convertXmlToJson(XML.getBytes(StandardCharsets.UTF_8)))));
+    }
+
+    @Test
+    public void jsonIsConvertedBackToXmlKeepingNamespacesAndAttributeOrder() throws Exception {
+        byte[] json = converter.convertXmlToJson(XML.getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+
+        converter.convertJsonToXml(new ByteArrayInputStream(json), xml, false);
+
+        assertThat(new String(xml.toByteArray(), StandardCharsets.UTF_8),
+                equalTo("<?xml version=\"1.0\" encoding=\"UTF-8\"?><root xmlns:x=\"http://x\">"
+                        + "<item x:id=\"1\">first</item><item>2</item><x:empty></x:empty></root>"));
+        String prettyXml = new String(converter.convertJsonToXml(json), StandardCharsets.UTF_8);
+        assertThat(prettyXml.trim().replaceAll(">\\s+<", "><"), equalTo(new String(xml.toByteArray(), StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void normalizedXmlIsSameAsXmlConvertedToJsonAndBack() throws Exception {
+        String xml = "<?xml version=\"1.0\"?><root xmlns=\"urn:d\" xmlns:x=\"http://x\"><!-- comment -->\n"
+                + "  <item x:id=\"1\" text=\"a &amp; &quot;b&quot;\">first</item><item>2</item><single>1.50</single>\n"
+                + "  <flag>true</flag><x:empty/><cdata><![CDATA[<a>]]></cdata></root>";
+        byte[] source = xml.getBytes(StandardCharsets.UTF_8);
+
+        assertThat(converter.normalizeXml(source), equalTo(converter.convertJsonToXml(converter.convertXmlToJson(source))));
+        assertThat(converter.normalizeXml(XML.getBytes(StandardCharsets.UTF_8)),
+                equalTo(converter.convertJsonToXml(converter.convertXmlToJson(XML.getBytes(StandardCharsets.UTF_8)))));
+    }
+
+    @Test
+    public void streamedNormalizationWithoutIndentation() throws Exception {
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+
+        converter.normalizeXml(new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)), xml, false);
+
+        assertThat(new String(xml.toByteArray(), StandardCharsets.UTF_8),
+                equalTo("<?xml version=\"1.0\" encoding=\"UTF-8\"?><root xmlns:x=\"http://x\">"
+                        + "<item x:id=\"1\">first</item><item>2</item><x:empty></x:empty></root>"));
+    }
+
+    private String withoutWhitespace(byte[] json) {
+        return new String(json, StandardCharsets.UTF_8).replaceAll("\\s", "");
+    }
+}
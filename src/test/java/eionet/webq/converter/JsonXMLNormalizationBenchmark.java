@@ -0,0 +1,87 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.converter;
+
+import org.apache.log4j.Logger;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Compares single pass xml normalization with xml to json to xml conversion. Skipped unless run with
+ * {@code mvn test -Dtest=JsonXMLNormalizationBenchmark -Dbenchmark=true}.
+ */
+public class JsonXMLNormalizationBenchmark {
+    private static final Logger LOGGER = Logger.getLogger(JsonXMLNormalizationBenchmark.class);
+    private static final int WARM_UP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 50;
+    private static final int ROWS = 5000;
+    private JsonXMLBidirectionalConverter converter = new JsonXMLBidirectionalConverter();
+    private byte[] xml;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+        StringBuilder document = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<report xmlns:x=\"http://x\">\n");
+        for (int i = 0; i < ROWS; i++) {
+            document.append("  <row x:id=\"").append(i).append("\">\n    <name>Row ").append(i)
+                    .append(" &amp; more</name>\n    <value>").append(i * 1.5).append("</value>\n    <valid>")
+                    .append(i % 2 == 0).append("</valid>\n    <note/>\n  </row>\n");
+        }
+        xml = document.append("</report>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void normalizationIsFasterThanDoubleConversion() throws Exception {
+        assertThat(converter.normalizeXml(xml), equalTo(converter.convertJsonToXml(converter.convertXmlToJson(xml))));
+
+        long doubleConversion = measure(new Runnable() {
+            @Override
+            public void run() {
+                converter.convertJsonToXml(converter.convertXmlToJson(xml));
+            }
+        });
+        long normalization = measure(new Runnable() {
+            @Override
+            public void run() {
+                converter.normalizeXml(xml);
+            }
+        });
+        LOGGER.info(String.format("%d KB xml, %d rounds: double conversion %d ms, normalization %d ms",
+                xml.length / 1024, MEASURED_ROUNDS, doubleConversion, normalization));
+    }
+
+    private long measure(Runnable conversion) {
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            conversion.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            conversion.run();
+        }
+        return (System.nanoTime() - start) / 1000000;
+    }
+}
@@ -24,6 +24,7 @@ import configuration.ApplicationTestContextWithMockSession;
 import eionet.webq.dao.orm.UserFile;
 import eionet.webq.dao.orm.util.UserFileInfo;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -32,12 +33,20 @@ import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.web.multipart.MultipartFile;
+import org.zeroturnaround.zip.ByteSource;
+import org.zeroturnaround.zip.ZipEntrySource;
+import org.zeroturnaround.zip.ZipUtil;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 
 import static eionet.webq.converter.MultipartFileToUserFileConverter.ZIP_ATTACHMENT_MEDIA_TYPE;
+import static eionet.webq.converter.MultipartFileToUserFileConverter.ZIP_ENTRY_MEMORY_THRESHOLD;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
@@ -61,7 +70,7 @@ public class MultipartFileToUserFileConverterTest {
         UserFile xmlFile = fileConverter.convert(xmlFileUpload).iterator().next();
 
         assertThat(xmlFile.getName(), equalTo(originalFilename));
-        assertThat(xmlFile.getContent(), equalTo(fileContent));
+        assertThat(readContentSource(xmlFile), equalTo(fileContent));
         assertThat(xmlFile.getXmlSchema(), equalTo(schemaLocation));
         assertThat(xmlFile.getSizeInBytes(), equalTo(xmlFileUpload.getSize()));
     }
@@ -123,6 +132,41 @@ public class MultipartFileToUserFileConverterTest {
         assertThat(it.next().getXmlSchema(), equalTo(UserFileInfo.DUMMY_XML_SCHEMA));
     }
 
+    @Test
+    public void whenConvertingMultipartFile_zipEntriesContentIsAvailableFromSource() throws Exception {
+        byte[] smallEntry = "small".getBytes();
+        byte[] largeEntry = new byte[ZIP_ENTRY_MEMORY_THRESHOLD * 2];
+        Arrays.fill(largeEntry, (byte) 'a');
+        byte[] zip = zip(new ZipEntrySource[] {new ByteSource("small.txt", smallEntry),
+                new ByteSource("large.txt", largeEntry)});
+
+        Collection<UserFile> files = fileConverter.convert(createMultipartFile(ZIP_ATTACHMENT_MEDIA_TYPE, zip));
+
+        assertThat(files.size(), equalTo(2));
+        Iterator<UserFile> it = files.iterator();
+        UserFile small = it.next();
+        UserFile large = it.next();
+        assertThat(readContentSource(small), equalTo(smallEntry));
+        assertThat(small.getSizeInBytes(), equalTo((long) smallEntry.length));
+        assertThat(readContentSource(large), equalTo(largeEntry));
+        assertThat(large.getSizeInBytes(), equalTo((long) largeEntry.length));
+    }
+
+    private byte[] zip(ZipEntrySource[] entries) {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        ZipUtil.pack(entries, zip);
+        return zip.toByteArray();
+    }
+
+    private byte[] readContentSource(UserFile file) throws IOException {
+        InputStream input = file.getFile().getContentSource().getInputStream();
+        try {
+            return IOUtils.toByteArray(input);
+        } finally {
+            input.close();
+        }
+    }
+
     private void verifyContentExtractedFromTestZipFile(Collection<UserFile> files) {
         String expectedXmlSchema = "http://biodiversity.eionet.europa.eu/schemas/bernconvention/derogations.xsd";
 
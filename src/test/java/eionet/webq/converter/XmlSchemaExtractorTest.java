@@ -20,11 +20,15 @@
  */
 package eionet.webq.converter;
 
+import org.apache.commons.io.input.CountingInputStream;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertTrue;
 
 /**
  */
@@ -87,5 +91,20 @@ public class XmlSchemaExtractorTest {
         String schema = schemaExtractor.extractXmlSchema(inlineXml.getBytes("UTF-8"));
         assertThat(schema, nullValue());
     }
-}
 
+    @Test
+    public void extractsSchemaFromStreamReadingOnlyItsBeginning() throws Exception {
+        String root = "<root xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:noNamespaceSchemaLocation=\"schema.xsd\">";
+        StringBuilder xml = new StringBuilder(root);
+        while (xml.length() < XmlSchemaExtractor.PREFIX_LIMIT * 2) {
+            xml.append("<child>value</child>");
+        }
+        CountingInputStream input = new CountingInputStream(new ByteArrayInputStream(xml.append("</root>").toString()
+                .getBytes("UTF-8")));
+
+        String schema = new XmlSchemaExtractor().extractXmlSchema(input);
+
+        assertThat(schema, equalTo("schema.xsd"));
+        assertTrue(input.getByteCount() <= XmlSchemaExtractor.PREFIX_LIMIT);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.dao;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.log4j.Logger;
+import org.h2.tools.Server;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares per request latency of short queries with connection opened per request and with pooled connections.
+ * Runs against in-memory H2 and against H2 server in MySQL mode over TCP, standing in for local MySQL. Skipped unless
+ * run with {@code mvn test -Dtest=ConnectionPoolBenchmark -Dbenchmark=true}.
+ */
+public class ConnectionPoolBenchmark {
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPoolBenchmark.class);
+    private static final int WARM_UP_ROUNDS = 500;
+    private static final int MEASURED_ROUNDS = 5000;
+    private Server server;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+        server = Server.createTcpServer("-tcpPort", "0").start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void pooledConnectionsAreFasterInMemory() throws Exception {
+        compare("H2 in-memory", "jdbc:h2:mem:poolBenchmark;DB_CLOSE_DELAY=-1");
+    }
+
+    @Test
+    public void pooledConnectionsAreFasterOverTcp() throws Exception {
+        compare("H2 TCP, MySQL mode", "jdbc:h2:tcp://localhost:" + server.getPort() + "/mem:poolBenchmark;MODE=MySQL;DB_CLOSE_DELAY=-1");
+    }
+
+    private void compare(String database, String url) throws Exception {
+        DriverManagerDataSource target = new DriverManagerDataSource(url, "sa", "");
+        target.setDriverClassName("org.h2.Driver");
+        createTable(target);
+        HikariDataSource pooled = new HikariDataSource();
+        pooled.setDataSource(target);
+        pooled.setMinimumIdle(4);
+        pooled.setMaximumPoolSize(8);
+        try {
+            double unpooledMicros = measure(target);
+            double pooledMicros = measure(pooled);
+            LOGGER.info(database + ": connection per request " + unpooledMicros + " us/request, pooled "
+                    + pooledMicros + " us/request");
+            assertTrue(pooledMicros < unpooledMicros);
+        } finally {
+            pooled.close();
+        }
+    }
+
+    private double measure(DataSource dataSource) throws SQLException {
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            request(dataSource, i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            request(dataSource, i);
+        }
+        return (System.nanoTime() - start) / 1000.0 / MEASURED_ROUNDS;
+    }
+
+    private void request(DataSource dataSource, int i) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement("SELECT name FROM benchmark_host WHERE id = ?");
+            statement.setInt(1, i % 100);
+            ResultSet result = statement.executeQuery();
+            result.next();
+            statement.close();
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void createTable(DataSource dataSource) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            statement.execute("CREATE TABLE IF NOT EXISTS benchmark_host (id INT PRIMARY KEY, name VARCHAR(255))");
+            statement.execute("DELETE FROM benchmark_host");
+            for (int i = 0; i < 100; i++) {
+                statement.execute("INSERT INTO benchmark_host VALUES (" + i + ", 'host" + i + "')");
+            }
+            statement.close();
+        } finally {
+            connection.close();
+        }
+    }
+}
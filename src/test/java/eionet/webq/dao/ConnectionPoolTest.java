@@ -0,0 +1,110 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.dao;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionPoolTest {
+    private HikariDataSource dataSource;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:connectionPoolTest;DB_CLOSE_DELAY=-1");
+        dataSource.setDriverClassName("org.h2.Driver");
+        dataSource.setMaximumPoolSize(1);
+        dataSource.setConnectionTimeout(250);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        dataSource.close();
+    }
+
+    @Test
+    public void reusesPhysicalConnection() throws Exception {
+        Connection connection = dataSource.getConnection();
+        Connection physical = connection.unwrap(Connection.class);
+        connection.close();
+
+        connection = dataSource.getConnection();
+        assertThat(connection.unwrap(Connection.class), sameInstance(physical));
+        connection.close();
+    }
+
+    @Test
+    public void statementDoesNotExposePhysicalConnection() throws Exception {
+        Connection connection = dataSource.getConnection();
+        Statement statement = connection.createStatement();
+
+        assertThat(statement.getConnection(), sameInstance(connection));
+        assertThat(connection.getMetaData().getConnection(), sameInstance(connection));
+        connection.close();
+    }
+
+    @Test(expected = SQLTransientConnectionException.class)
+    public void failsAfterConnectionTimeoutWhenAllConnectionsAreInUse() throws Exception {
+        dataSource.getConnection();
+
+        dataSource.getConnection();
+    }
+
+    @Test
+    public void rollsBackUncommittedWorkAndResetsStateWhenConnectionIsReturned() throws Exception {
+        Connection connection = dataSource.getConnection();
+        int isolation = connection.getTransactionIsolation();
+        execute(connection, "CREATE TABLE IF NOT EXISTS pool_test (id INT)");
+        execute(connection, "DELETE FROM pool_test");
+        connection.setAutoCommit(false);
+        connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        execute(connection, "INSERT INTO pool_test VALUES (1)");
+        connection.close();
+
+        connection = dataSource.getConnection();
+        assertTrue(connection.getAutoCommit());
+        assertThat(connection.getTransactionIsolation(), equalTo(isolation));
+        ResultSet rows = connection.createStatement().executeQuery("SELECT COUNT(*) FROM pool_test");
+        rows.next();
+        assertThat(rows.getInt(1), equalTo(0));
+        execute(connection, "DROP TABLE pool_test");
+        connection.close();
+    }
+
+    private void execute(Connection connection, String sql) throws SQLException {
+        Statement statement = connection.createStatement();
+        statement.execute(sql);
+        statement.close();
+    }
+}
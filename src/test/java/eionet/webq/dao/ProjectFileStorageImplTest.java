@@ -27,9 +27,11 @@ import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.util.Collection;
 import java.util.Iterator;
 
@@ -38,6 +40,7 @@ import javax.validation.ConstraintViolationException;
 import org.hibernate.FlushMode;
 import org.hibernate.LazyInitializationException;
 import org.hibernate.Session;
+import org.hibernate.Hibernate;
 import org.hibernate.SessionFactory;
 import org.junit.Before;
 import org.junit.Test;
@@ -108,6 +111,25 @@ public class ProjectFileStorageImplTest {
         file.getFileContent();
     }
 
+    @Test
+    public void metadataQueryReturnsDetachedFilesWithoutContent() throws Exception {
+        ProjectFile savedFile = addOneFile("fileName1");
+        currentSession.flush();
+
+        Collection<ProjectFile> projectFiles = projectFileStorage.findAllFilesMetadataFor(projectEntry);
+        assertThat(projectFiles.size(), equalTo(1));
+        ProjectFile file = projectFiles.iterator().next();
+
+        assertFalse(currentSession.contains(file));
+        assertThat(file.getId(), equalTo(savedFile.getId()));
+        assertThat(file.getFileName(), equalTo("fileName1"));
+        assertThat(file.getFileSizeInBytes(), equalTo(savedFile.getFileSizeInBytes()));
+        assertThat(file.getTitle(), equalTo(savedFile.getTitle()));
+        assertThat(file.getFileType(), equalTo(savedFile.getFileType()));
+        assertTrue(file.isActive());
+        assertNull(file.getFileContent());
+    }
+
     @Test
     public void saveWebformAndRetrieveItBackWithSameData() throws Exception {
         ProjectFile projectFile = addOneFile("fileName1");
@@ -294,6 +316,16 @@ public class ProjectFileStorageImplTest {
         assertThat(file.getFileContent(), equalTo(testFileForUpload.getFileContent()));
     }
 
+    @Test
+    public void fileContentCouldBeWrittenToStream() throws Exception {
+        projectFileStorage.save(testFileForUpload, projectEntry);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        assertTrue(projectFileStorage.writeContent(testFileForUpload.getId(), output));
+
+        assertThat(output.toByteArray(), equalTo(testFileForUpload.getFileContent()));
+    }
+
     @Test
     public void removingProjectFileWillAlsoRemoveUploadedFile() throws Exception {
         assertThat(getFileContentRowsCount(sessionFactory), equalTo(1));
@@ -303,6 +335,59 @@ public class ProjectFileStorageImplTest {
         assertThat(getFileContentRowsCount(sessionFactory), equalTo(0));
     }
     
+    @Test
+    public void contentHashIsSelectedIfContentIsNotLoaded() throws Exception {
+        projectFileStorage.save(testFileForUpload, projectEntry);
+        currentSession.clear();
+
+        ProjectFile file = projectFileStorage.findByNameAndProject(testFileForUpload.getFileName(), projectEntry);
+
+        assertThat(projectFileStorage.contentHash(file), equalTo(UploadedFile.FileContent.hash(testFileForUpload.getFileContent())));
+        assertFalse(Hibernate.isInitialized(file.getFile().getContent()));
+    }
+
+    @Test
+    public void identicalContentIsStoredOnce() throws Exception {
+        projectFileStorage.save(testFileForUpload, projectEntry);
+
+        assertThat(getFileContentRowsCount(sessionFactory), equalTo(1));
+    }
+
+    @Test
+    public void cleanInsertReusesContentOfReplacedFiles() throws Exception {
+        ProjectFile replacedFile = projectFileWithContent("replaced content");
+        projectFileStorage.save(replacedFile, projectEntry);
+        assertThat(getFileContentRowsCount(sessionFactory), equalTo(2));
+
+        projectFileStorage.cleanInsert(projectEntry, Arrays.asList(projectFileWithContent("replaced content")));
+
+        assertThat(getFileContentRowsCount(sessionFactory), equalTo(2));
+        ProjectFile insertedFile = projectFileStorage.findAllFilesFor(projectEntry).iterator().next();
+        assertThat(insertedFile.getFile().getContent().getId(), equalTo(replacedFile.getFile().getContent().getId()));
+    }
+
+    @Test
+    public void cleanInsertRemovesContentNotReferencedAnymore() throws Exception {
+        projectFileStorage.save(projectFileWithContent("replaced content"), projectEntry);
+
+        projectFileStorage.cleanInsert(projectEntry, Arrays.asList(projectFileWithContent("new content")));
+
+        assertThat(getFileContentRowsCount(sessionFactory), equalTo(2));
+    }
+
+    @Test
+    public void previousContentIsRemovedOnUpdateIfNotReferenced() throws Exception {
+        ProjectFile file = projectFileWithContent("initial content");
+        projectFileStorage.save(file, projectEntry);
+
+        file.setFileContent("changed content".getBytes());
+        projectFileStorage.update(file, projectEntry);
+        currentSession.clear();
+
+        assertThat(getFileContentRowsCount(sessionFactory), equalTo(2));
+        assertThat(projectFileStorage.findById(file.getId()).getFileContent(), equalTo("changed content".getBytes()));
+    }
+
     @Test
     public void testCleanInsert() {
         ProjectFile testFile1 = new ProjectFile();
@@ -363,6 +448,12 @@ public class ProjectFileStorageImplTest {
         return projectFile;
     }
 
+    private ProjectFile projectFileWithContent(String content) {
+        ProjectFile projectFile = projectFileWithoutTypeSet();
+        projectFile.setFileContent(content.getBytes());
+        return projectFile;
+    }
+
     private ProjectFile projectFileWithFileType(ProjectFileType type) {
         ProjectFile projectFile = projectFileWithoutTypeSet();
         projectFile.setFileType(type);
@@ -79,7 +79,7 @@ public class ProjectFoldersAndFilesTest {
         // assert that project files and project folder is related
         Collection<ProjectFile> project1Files = projectFileStorage.findAllFilesFor(savedProject1);
         assertThat(project1Files.size(), equalTo(1));
-        assertThat(getFileContentRowsCount(sessionFactory), equalTo(2));
+        assertThat(getFileContentRowsCount(sessionFactory), equalTo(1));
 
         // remove project
         folders.remove(savedProject1.getProjectId());
@@ -195,7 +195,7 @@ public class ProjectFoldersAndFilesTest {
         projectFile.setFileType(ProjectFileType.FILE);
         projectFile.setTitle("Simple file");
         projectFile.setUserName("User Name");
-        projectFile.setFile(new UploadedFile("test-file.xml", "Web-form content".getBytes()));
+        projectFile.setFile(new UploadedFile("test-file.xml", "Simple file content".getBytes()));
         projectFile.setRemoteFileUrl("localhost/test-file.xml");
         return projectFile;
     }
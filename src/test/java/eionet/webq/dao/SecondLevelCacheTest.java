@@ -0,0 +1,160 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.dao;
+
+import configuration.ApplicationTestContextWithMockSession;
+import eionet.webq.cache.GuavaCache;
+import eionet.webq.dao.orm.ProjectEntry;
+import eionet.webq.service.CacheAdminService;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.spi.UpdateTimestampsCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Entities are read in separate transactions, so that second-level cache is used as in consecutive requests.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {ApplicationTestContextWithMockSession.class})
+public class SecondLevelCacheTest {
+    private static final String QUERY_CACHE = "org.hibernate.cache.internal.StandardQueryCache";
+    private final String projectId = "cachedProject";
+    private final String renamedProjectId = "renamedCachedProject";
+    @Autowired
+    private ProjectFolders projectFolders;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private CacheAdminService cacheAdminService;
+    @Autowired
+    private SessionFactory sessionFactory;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Before
+    public void setUp() throws Exception {
+        ProjectEntry project = new ProjectEntry();
+        project.setProjectId(projectId);
+        project.setDescription("description");
+        projectFolders.save(project);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (String id : new String[] {projectId, renamedProjectId}) {
+            if (projectFolders.getByProjectId(id) != null) {
+                projectFolders.remove(id);
+            }
+        }
+    }
+
+    @Test
+    public void projectEntryIsServedFromCacheAfterFirstRead() throws Exception {
+        projectFolders.getByProjectId(projectId);
+        long queryHits = hitCount(QUERY_CACHE);
+        long entityHits = hitCount(ProjectEntry.CACHE_REGION);
+
+        ProjectEntry project = projectFolders.getByProjectId(projectId);
+
+        assertThat(project.getDescription(), equalTo("description"));
+        assertThat(hitCount(QUERY_CACHE), equalTo(queryHits + 1));
+        assertThat(hitCount(ProjectEntry.CACHE_REGION), equalTo(entityHits + 1));
+    }
+
+    @Test
+    public void updatedProjectEntryIsReadAnew() throws Exception {
+        ProjectEntry project = projectFolders.getByProjectId(projectId);
+        project.setDescription("changed");
+
+        projectFolders.update(project);
+
+        assertThat(projectFolders.getByProjectId(projectId).getDescription(), equalTo("changed"));
+    }
+
+    @Test
+    public void removedProjectEntryIsNotFound() throws Exception {
+        projectFolders.getByProjectId(projectId);
+
+        projectFolders.remove(projectId);
+
+        assertNull(projectFolders.getByProjectId(projectId));
+    }
+
+    @Test
+    public void bulkUpdateInvalidatesCachedQueryResults() throws Exception {
+        projectFolders.getByProjectId(projectId);
+
+        renameProjectWithHql();
+
+        assertNull(projectFolders.getByProjectId(projectId));
+        assertThat(projectFolders.getByProjectId(renamedProjectId).getDescription(), equalTo("description"));
+    }
+
+    @Test
+    public void bulkUpdateInvalidatesCachedQueryResultsAfterAllCachesButQueryCacheAreCleared() throws Exception {
+        projectFolders.getByProjectId(projectId);
+
+        renameProjectWithHql();
+        for (String cacheName : cacheManager.getCacheNames()) {
+            if (!QUERY_CACHE.equals(cacheName)) {
+                cacheAdminService.invalidate(cacheName);
+            }
+        }
+
+        assertNull(projectFolders.getByProjectId(projectId));
+    }
+
+    @Test
+    public void updateTimestampsAreNotManagedByCacheManager() throws Exception {
+        assertFalse(cacheManager.getCacheNames().contains(UpdateTimestampsCache.REGION_NAME));
+    }
+
+    private void renameProjectWithHql() {
+        new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                sessionFactory.getCurrentSession()
+                        .createQuery("UPDATE ProjectEntry SET projectId=:renamedProjectId WHERE projectId=:projectId")
+                        .setString("renamedProjectId", renamedProjectId).setString("projectId", projectId)
+                        .executeUpdate();
+            }
+        });
+    }
+
+    private long hitCount(String region) {
+        return ((GuavaCache) cacheManager.getCache(region)).getStats().hitCount();
+    }
+}
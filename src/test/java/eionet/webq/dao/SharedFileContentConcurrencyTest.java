@@ -0,0 +1,151 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.dao;
+
+import configuration.ApplicationTestContextWithMockSession;
+import eionet.webq.dao.orm.UploadedFile;
+import eionet.webq.dao.orm.UserFile;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * File contents are reused and removed in concurrent transactions, so that locking of reused content rows is exercised.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {ApplicationTestContextWithMockSession.class})
+public class SharedFileContentConcurrencyTest {
+    private static final String USER_ID = "sharedContentConcurrencyUser";
+    @Autowired
+    private ApplicationContext context;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private SessionFactory sessionFactory;
+
+    @After
+    public void tearDown() throws Exception {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("DELETE FROM user_xml WHERE user_id = ?", USER_ID);
+        jdbcTemplate.update("DELETE FROM file_content WHERE " + AbstractDao.FILE_CONTENT_UNREFERENCED);
+    }
+
+    @Test
+    public void reusedContentIsNotRemovedAsUnreferencedBeforeFileReferencingItIsSaved() throws Exception {
+        final byte[] content = "content shared between transactions".getBytes();
+        final UserFileDao dao = context.getAutowireCapableBeanFactory().createBean(UserFileDao.class);
+        final TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        final int orphanContentId = transaction.execute(new TransactionCallback<Integer>() {
+            @Override
+            public Integer doInTransaction(TransactionStatus status) {
+                UploadedFile.FileContent orphan = new UploadedFile.FileContent(content);
+                sessionFactory.getCurrentSession().save(orphan);
+                return orphan.getId();
+            }
+        });
+        final CountDownLatch contentReused = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final UserFile file = new UserFile(new UploadedFile("shared.xml", content), "schema");
+            file.setUserId(USER_ID);
+            Future<?> saved = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    transaction.execute(new TransactionCallbackWithoutResult() {
+                        @Override
+                        protected void doInTransactionWithoutResult(TransactionStatus status) {
+                            dao.reuseContent(file.getFile());
+                            contentReused.countDown();
+                            sleep(300);
+                            sessionFactory.getCurrentSession().save(file);
+                        }
+                    });
+                }
+            });
+            contentReused.await(5, TimeUnit.SECONDS);
+            transaction.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    dao.removeContent(orphanContentId);
+                }
+            });
+            saved.get(5, TimeUnit.SECONDS);
+
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            assertThat(jdbcTemplate.queryForObject("SELECT file_content_id FROM user_xml WHERE id = ?", Integer.class,
+                    file.getId()), equalTo(orphanContentId));
+            assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM file_content WHERE id = ?", Integer.class,
+                    orphanContentId), equalTo(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Exposes content reuse and removal of user files, so that it could be done separately from saving or removing file.
+     */
+    static class UserFileDao extends AbstractDao<UserFile> {
+        void reuseContent(UploadedFile file) {
+            useStoredContent(file);
+        }
+
+        void removeContent(int contentId) {
+            removeUnreferencedFileContent(Collections.singleton(contentId));
+        }
+
+        @Override
+        Class<UserFile> getEntityClass() {
+            return UserFile.class;
+        }
+    }
+}
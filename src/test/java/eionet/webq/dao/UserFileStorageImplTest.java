@@ -24,6 +24,7 @@ import configuration.ApplicationTestContextWithMockSession;
 import eionet.webq.dao.orm.UploadedFile;
 import eionet.webq.dao.orm.UserFile;
 import eionet.webq.dto.UserFileIdUpdate;
+import org.apache.commons.lang3.time.DateUtils;
 import org.hibernate.FlushMode;
 import org.hibernate.LazyInitializationException;
 import org.hibernate.Session;
@@ -33,20 +34,28 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.validation.ConstraintViolationException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 
 import static eionet.webq.dao.FileContentUtil.getFileContentRowsCount;
 import static junit.framework.Assert.assertNull;
 import static junit.framework.TestCase.assertNotNull;
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(classes = {ApplicationTestContextWithMockSession.class})
@@ -97,6 +106,20 @@ public class UserFileStorageImplTest {
         assertNotNull(fileFromDb.getUpdated());
     }
 
+    @Test
+    public void savesContentStreamedFromSource() throws Exception {
+        final byte[] content = "streamed_content".getBytes();
+        UserFile userFile = new UserFile(new UploadedFile("name", new ByteArrayResource(content), 0), "xmlSchema");
+
+        int id = storage.save(userFile, userId);
+
+        assertThat(userFile.getSizeInBytes(), equalTo((long) content.length));
+        sessionFactory.getCurrentSession().clear();
+        UserFile fileFromDb = storage.findFile(id, userId);
+        assertThat(fileFromDb.getContent(), equalTo(content));
+        assertThat(fileFromDb.getSizeInBytes(), equalTo((long) content.length));
+    }
+
     @Test(expected = ConstraintViolationException.class)
     public void saveIgnoresId() throws Exception {
         UserFile userFile = new UserFile();
@@ -117,6 +140,21 @@ public class UserFileStorageImplTest {
         Assert.assertNull(storage.findFile(fileUploadedByAnotherUser.getId(), userId));
     }
 
+    @Test
+    public void findsFilesInOrderOfIdsSkippingOtherUserFiles() throws Exception {
+        int first = storage.save(fileWithContentAndXmlSchema("first".getBytes()), userId);
+        int second = storage.save(fileWithContentAndXmlSchema("second".getBytes()), userId);
+        int otherUserFile = storage.save(fileWithContentAndXmlSchema("other".getBytes()), otherUserId);
+        sessionFactory.getCurrentSession().clear();
+
+        List<UserFile> files = storage.findFiles(userId, second, otherUserFile, first);
+
+        assertThat(files.size(), equalTo(2));
+        assertThat(files.get(0).getContent(), equalTo("second".getBytes()));
+        assertThat(files.get(1).getContent(), equalTo("first".getBytes()));
+        assertThat(storage.findFiles(userId).size(), equalTo(0));
+    }
+
     @Test
     public void savedFileCanBeRetrieved() throws Exception {
         String savedFileName = "file_to_retrieve.xml";
@@ -207,6 +245,70 @@ public class UserFileStorageImplTest {
         assertThat(storage.findFile(uploadedFileByOtherUser.getId(), userId).getContent(), equalTo(originalContent));
     }
 
+    @Test
+    public void fileContentCouldBeWrittenToStream() throws Exception {
+        byte[] content = "streamed content".getBytes();
+        saveFileForUser(userId, fileWithContentAndXmlSchema(content));
+        UserFile uploadedFile = getFirstUploadedFileAndAssertThatItIsTheOnlyOneAvailableFor(userId);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        assertTrue(storage.writeContent(uploadedFile.getId(), userId, output));
+
+        assertThat(output.toByteArray(), equalTo(content));
+    }
+
+    @Test
+    public void userCannotWriteOtherUserContentToStream() throws Exception {
+        saveFileForUser(userId, fileWithContentAndXmlSchema("content".getBytes()));
+        UserFile uploadedFile = getFirstUploadedFileAndAssertThatItIsTheOnlyOneAvailableFor(userId);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        assertFalse(storage.writeContent(uploadedFile.getId(), otherUserId, output));
+
+        assertThat(output.size(), equalTo(0));
+    }
+
+    @Test
+    public void fileContentCouldBeChangedFromStream() throws Exception {
+        saveFileForUser(userId, fileWithContentAndXmlSchema("initial content".getBytes()));
+        byte[] newContent = "new streamed content".getBytes();
+        UserFile uploadedFile = getFirstUploadedFileAndAssertThatItIsTheOnlyOneAvailableFor(userId);
+
+        assertThat(storage.updateContent(uploadedFile.getId(), userId, new ByteArrayInputStream(newContent)),
+                equalTo(UploadedFile.FileContent.hash(newContent)));
+        sessionFactory.getCurrentSession().clear();
+
+        UserFile updatedFile = storage.findFile(uploadedFile.getId(), userId);
+        assertThat(updatedFile.getContent(), equalTo(newContent));
+        assertThat(updatedFile.getSizeInBytes(), equalTo((long) newContent.length));
+        assertThat(getFileContentRowsCount(sessionFactory), equalTo(1));
+    }
+
+    @Test
+    public void fileContentIsCreatedFromStreamIfFileHasNoContent() throws Exception {
+        UserFile fileWithoutContent = new UserFile();
+        fileWithoutContent.setXmlSchema("xml-schema");
+        saveFileForUser(userId, fileWithoutContent);
+        byte[] newContent = "first content".getBytes();
+
+        storage.updateContent(fileWithoutContent.getId(), userId, new ByteArrayInputStream(newContent));
+        sessionFactory.getCurrentSession().clear();
+
+        assertThat(storage.findFile(fileWithoutContent.getId(), userId).getContent(), equalTo(newContent));
+    }
+
+    @Test
+    public void userCannotChangeOtherUserContentFromStream() throws Exception {
+        byte[] originalContent = "original content".getBytes();
+        saveFileForUser(userId, fileWithContentAndXmlSchema(originalContent));
+        UserFile uploadedFile = getFirstUploadedFileAndAssertThatItIsTheOnlyOneAvailableFor(userId);
+
+        assertNull(storage.updateContent(uploadedFile.getId(), otherUserId, new ByteArrayInputStream("other".getBytes())));
+        sessionFactory.getCurrentSession().clear();
+
+        assertThat(storage.findFile(uploadedFile.getId(), userId).getContent(), equalTo(originalContent));
+    }
+
     public void getByIdNotImplemented() throws Exception {
         UserFile file = fileWithContentAndXmlSchema(userId.getBytes());
         saveFileForUser(userId, file);
@@ -280,6 +382,79 @@ public class UserFileStorageImplTest {
         assertThat(getFileContentRowsCount(sessionFactory), equalTo(0));
     }
 
+    @Test
+    public void contentHashCouldBeSelected() throws Exception {
+        UserFile userFile = saveAndGetBackSavedFileForDefaultUser();
+
+        assertThat(storage.contentHash(userFile.getId(), userId),
+                equalTo(UploadedFile.FileContent.hash("test-content".getBytes())));
+        assertNull(storage.contentHash(userFile.getId(), otherUserId));
+    }
+
+    @Test
+    public void identicalContentIsStoredOnce() throws Exception {
+        saveFileForUser(userId, fileWithContentAndXmlSchema("shared content".getBytes()));
+        saveFileForUser(otherUserId, fileWithContentAndXmlSchema("shared content".getBytes()));
+
+        assertThat(getFileContentRowsCount(sessionFactory), equalTo(1));
+    }
+
+    @Test
+    public void sharedContentIsRemovedWithLastFileReferencingIt() throws Exception {
+        saveFileForUser(userId, fileWithContentAndXmlSchema("shared content".getBytes()));
+        saveFileForUser(otherUserId, fileWithContentAndXmlSchema("shared content".getBytes()));
+
+        storage.remove(userId, getFirstUploadedFileAndAssertThatItIsTheOnlyOneAvailableFor(userId).getId());
+        sessionFactory.getCurrentSession().clear();
+
+        assertThat(getFileContentRowsCount(sessionFactory), equalTo(1));
+        UserFile otherUserFile = getFirstUploadedFileAndAssertThatItIsTheOnlyOneAvailableFor(otherUserId);
+        assertThat(otherUserFile.getContent(), equalTo("shared content".getBytes()));
+
+        storage.remove(otherUserId, otherUserFile.getId());
+
+        assertThat(getFileContentRowsCount(sessionFactory), equalTo(0));
+    }
+
+    @Test
+    public void changingSharedContentDoesNotAffectOtherFiles() throws Exception {
+        saveFileForUser(userId, fileWithContentAndXmlSchema("shared content".getBytes()));
+        saveFileForUser(otherUserId, fileWithContentAndXmlSchema("shared content".getBytes()));
+        UserFile userFile = getFirstUploadedFileAndAssertThatItIsTheOnlyOneAvailableFor(userId);
+
+        userFile.setContent("changed content".getBytes());
+        storage.update(userFile, userId);
+        sessionFactory.getCurrentSession().clear();
+
+        assertThat(storage.findFile(userFile.getId(), userId).getContent(), equalTo("changed content".getBytes()));
+        assertThat(getFirstUploadedFileAndAssertThatItIsTheOnlyOneAvailableFor(otherUserId).getContent(),
+                equalTo("shared content".getBytes()));
+        assertThat(getFileContentRowsCount(sessionFactory), equalTo(2));
+    }
+
+    @Test
+    public void previousContentIsRemovedOnUpdateIfNotReferenced() throws Exception {
+        UserFile userFile = saveAndGetBackSavedFileForDefaultUser();
+
+        userFile.setContent("changed content".getBytes());
+        storage.update(userFile, userId);
+
+        assertThat(getFileContentRowsCount(sessionFactory), equalTo(1));
+    }
+
+    @Test
+    public void streamedContentIdenticalToStoredContentIsNotDuplicated() throws Exception {
+        saveFileForUser(userId, fileWithContentAndXmlSchema("shared content".getBytes()));
+        saveFileForUser(otherUserId, fileWithContentAndXmlSchema("initial content".getBytes()));
+        UserFile otherUserFile = getFirstUploadedFileAndAssertThatItIsTheOnlyOneAvailableFor(otherUserId);
+
+        storage.updateContent(otherUserFile.getId(), otherUserId, new ByteArrayInputStream("shared content".getBytes()));
+        sessionFactory.getCurrentSession().clear();
+
+        assertThat(getFileContentRowsCount(sessionFactory), equalTo(1));
+        assertThat(storage.findFile(otherUserFile.getId(), otherUserId).getContent(), equalTo("shared content".getBytes()));
+    }
+
     @Test
     public void allowToUpdateUserIdForFiles() throws Exception {
         saveAndGetBackSavedFileForDefaultUser();
@@ -336,6 +511,111 @@ public class UserFileStorageImplTest {
         assertThat(storage.findAllUserFiles(otherUserId).size(), equalTo(0));
     }
 
+    @Test
+    public void metadataQueryReturnsDetachedFilesWithoutContentAndCredentials() throws Exception {
+        UserFile userFile = fileWithContentAndXmlSchema("test-content".getBytes());
+        userFile.setName("file.xml");
+        userFile.setAuthorization("Basic secret");
+        userFile.setFromCdr(true);
+        saveFileForUser(userId, userFile);
+        uploadSingleFileFor(otherUserId);
+
+        Collection<UserFile> files = storage.findAllUserFilesMetadata(userId);
+        assertThat(files.size(), equalTo(1));
+        UserFile metadata = files.iterator().next();
+
+        assertFalse(sessionFactory.getCurrentSession().contains(metadata));
+        assertThat(metadata.getId(), equalTo(userFile.getId()));
+        assertThat(metadata.getName(), equalTo("file.xml"));
+        assertThat(metadata.getSizeInBytes(), equalTo(userFile.getSizeInBytes()));
+        assertThat(metadata.getXmlSchema(), equalTo("xml-schema"));
+        assertTrue(metadata.isFromCdr());
+        assertNotNull(metadata.getUpdated());
+        assertNull(metadata.getAuthorization());
+        assertNull(metadata.getFile().getContent());
+
+        assertThat(storage.findFileMetadata(userFile.getId(), userId).getName(), equalTo("file.xml"));
+        assertNull(storage.findFileMetadata(userFile.getId(), otherUserId));
+    }
+
+    @Test
+    public void removesExpiredFilesInBatchesOldestFirst() throws Exception {
+        saveFilesFor(userId, 3);
+        List<UserFile> files = new ArrayList<UserFile>(storage.findAllUserFiles(userId));
+        sessionFactory.getCurrentSession().createQuery("UPDATE UserFile SET updated=:updated WHERE id=:id")
+                .setTimestamp("updated", DateUtils.addMinutes(new Date(), -10)).setInteger("id", files.get(2).getId())
+                .executeUpdate();
+        Date expirationDate = DateUtils.addMinutes(new Date(), 1);
+
+        List<Integer> firstBatch = storage.removeExpired(expirationDate, 2);
+        assertThat(firstBatch.size(), equalTo(2));
+        assertThat(firstBatch.get(0), equalTo(files.get(2).getId()));
+        assertThat(storage.findAllUserFiles(userId).size(), equalTo(1));
+        assertThat(getFileContentRowsCount(sessionFactory), equalTo(1));
+
+        List<Integer> secondBatch = storage.removeExpired(expirationDate, 2);
+        assertThat(secondBatch.size(), equalTo(1));
+        assertFalse(firstBatch.contains(secondBatch.get(0)));
+        assertThat(storage.findAllUserFiles(userId).size(), equalTo(0));
+        assertThat(getFileContentRowsCount(sessionFactory), equalTo(0));
+    }
+
+    @Test
+    public void doesNotRemoveFilesUpdatedAfterExpirationDate() throws Exception {
+        uploadSingleFileFor(userId);
+
+        assertTrue(storage.removeExpired(DateUtils.addMinutes(new Date(), -1), 10).isEmpty());
+        assertThat(storage.findAllUserFiles(userId).size(), equalTo(1));
+    }
+
+    @Test
+    public void webFormFileNumberStartsAfterHighestNumberInFileNames() throws Exception {
+        saveFileWithName(userId, "form_3.xml");
+        saveFileWithName(userId, "form_7.xml");
+
+        assertThat(storage.nextWebFormFileNum(userId, "xml-schema", "form.xml", '_', '.'), equalTo(8L));
+        assertThat(storage.nextWebFormFileNum(userId, "xml-schema", "form.xml", '_', '.'), equalTo(9L));
+        assertThat(storage.nextWebFormFileNum(userId, "xml-schema", "other.xml", '_', '.'), equalTo(1L));
+        assertThat(storage.nextWebFormFileNum(otherUserId, "xml-schema", "form.xml", '_', '.'), equalTo(1L));
+    }
+
+    @Test
+    public void webFormFileNumberSkipsNumbersOfFilesNamedByUser() throws Exception {
+        saveFileWithName(userId, "form_1.xml");
+        assertThat(storage.nextWebFormFileNum(userId, "xml-schema", "form.xml", '_', '.'), equalTo(2L));
+
+        saveFileWithName(userId, "form_3.xml");
+        saveFileWithName(userId, "form_4.xml");
+
+        assertThat(storage.nextWebFormFileNum(userId, "xml-schema", "form.xml", '_', '.'), equalTo(5L));
+        assertThat(storage.nextWebFormFileNum(userId, "xml-schema", "form.xml", '_', '.'), equalTo(6L));
+    }
+
+    @Test
+    public void webFormFileNumberIsCountedAnewAfterUserIdUpdate() throws Exception {
+        saveFileWithName(userId, "form_3.xml");
+        assertThat(storage.nextWebFormFileNum(otherUserId, "xml-schema", "form.xml", '_', '.'), equalTo(1L));
+        assertThat(storage.nextWebFormFileNum(otherUserId, "xml-schema", "form.xml", '_', '.'), equalTo(2L));
+
+        storage.updateUserId(createUserFileIdUpdateData(userId, otherUserId, null));
+
+        assertThat(storage.nextWebFormFileNum(otherUserId, "xml-schema", "form.xml", '_', '.'), equalTo(4L));
+    }
+
+    @Test
+    public void removesWebFormFileNumbersNotUsedSinceDate() throws Exception {
+        storage.nextWebFormFileNum(userId, "xml-schema", "form.xml", '_', '.');
+
+        assertThat(storage.removeExpiredWebFormFileNums(DateUtils.addMinutes(new Date(), -1)), equalTo(0));
+        assertThat(storage.removeExpiredWebFormFileNums(DateUtils.addMinutes(new Date(), 1)), equalTo(1));
+    }
+
+    private void saveFileWithName(String userId, String name) {
+        UserFile userFile = fileWithContentAndXmlSchema("test-content".getBytes());
+        userFile.setName(name);
+        saveFileForUser(userId, userFile);
+    }
+
     private UserFileIdUpdate createUserFileIdUpdateData(String oldUserId, String newUserId, String userAgent) {
 
         if (userAgent == null){
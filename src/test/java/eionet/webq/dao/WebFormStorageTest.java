@@ -22,6 +22,7 @@ package eionet.webq.dao;
 
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -88,6 +89,18 @@ public class WebFormStorageTest {
         assertIsRemoteWebForm(form);
     }
 
+    @Test
+    public void allowsToFetchMetadataOfLocalWebforms() throws Exception {
+        Collection<ProjectFile> activeWebForms = webFormStorage.getAllActiveWebFormsMetadata(WebFormType.LOCAL);
+
+        assertThat(activeWebForms.size(), equalTo(2));
+        for (ProjectFile webForm : activeWebForms) {
+            assertIsLocalWebForm(webForm);
+            assertNotNull(webForm.getXmlSchema());
+            assertNull(webForm.getFile().getContent());
+        }
+    }
+
     @Test
     public void localAndRemoteWebFormsMustBeActiveToBeFetched() throws Exception {
         saveAsInactive(getFirstActiveFormOfType(WebFormType.LOCAL));
@@ -24,6 +24,7 @@ import eionet.webq.dao.orm.ProjectFile;
 import eionet.webq.dao.orm.UploadedFile;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -54,4 +55,10 @@ public class WebQFileInfoTest {
         file.setFile(new UploadedFile(null, new byte[1]));
         assertFalse(WebQFileInfo.fileIsEmpty(file.getFile()));
     }
+
+    @Test
+    public void fileNumberIsInsertedBeforeExtension() throws Exception {
+        assertEquals("form_3.xml", WebQFileInfo.numberedFileName("form.xml", 3, '_', '.'));
+        assertEquals("form_3", WebQFileInfo.numberedFileName("form", 3, '_', '.'));
+    }
 }
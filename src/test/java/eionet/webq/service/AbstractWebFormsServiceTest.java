@@ -28,6 +28,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.util.ArrayList;
@@ -41,6 +42,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -48,6 +50,8 @@ import static org.mockito.Mockito.when;
 public class AbstractWebFormsServiceTest {
     @Mock
     private WebFormStorage storage;
+    @Spy
+    private WebFormCatalog catalog = new WebFormCatalog();
     @InjectMocks
     private AbstractWebFormsService webFormsService = new AbstractWebFormsService() {
         @Override
@@ -63,28 +67,28 @@ public class AbstractWebFormsServiceTest {
 
     @Test
     public void returnsAllAvailableFormsIfProvidedXmlSchemasArrayIsEmpty() throws Exception {
-        when(webFormsService.getAllActiveWebForms()).thenReturn(Arrays.asList(file1, file2, file3));
+        doReturn(Arrays.asList(file1, file2, file3)).when(catalog).activeWebForms(null);
 
         assertThat(webFormsService.findWebFormsForSchemas(new ArrayList<String>()).size(), equalTo(3));
     }
 
     @Test
     public void forNullXmlSchemasArgumentReturnTheSameResultAsForEmptyArray() throws Exception {
-        when(webFormsService.getAllActiveWebForms()).thenReturn(Arrays.asList(file1, file2));
+        doReturn(Arrays.asList(file1, file2)).when(catalog).activeWebForms(null);
 
         assertThat(webFormsService.findWebFormsForSchemas(null), equalTo(webFormsService.findWebFormsForSchemas(new ArrayList<String>())));
     }
 
     @Test
     public void findWebFormsForSchemasReturnSpecificResultForSchemaInParameter() throws Exception {
-        when(storage.findWebFormsForSchemas(any(WebFormType.class), anyCollectionOf(String.class)))
-                .thenReturn(Arrays.asList(file1));
+        doReturn(Arrays.asList(file1)).when(catalog)
+                .activeWebFormsForSchemas(any(WebFormType.class), anyCollectionOf(String.class));
 
         Collection<ProjectFile> xForms = webFormsService.findWebFormsForSchemas(Arrays.asList(file1.getXmlSchema()));
 
         assertThat(xForms.size(), equalTo(1));
         assertThat(xForms.iterator().next(), equalTo(file1));
-        verify(storage).findWebFormsForSchemas(any(WebFormType.class), anyCollectionOf(String.class));
+        verify(catalog).activeWebFormsForSchemas(any(WebFormType.class), anyCollectionOf(String.class));
     }
     
     @Test
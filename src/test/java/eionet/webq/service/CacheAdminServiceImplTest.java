@@ -0,0 +1,75 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.service;
+
+import eionet.webq.cache.GuavaCacheManager;
+import org.hibernate.cache.internal.StandardQueryCache;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+
+import java.util.Arrays;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class CacheAdminServiceImplTest {
+    private static final String QUERY_CACHE = StandardQueryCache.class.getName();
+    @Spy
+    private GuavaCacheManager cacheManager = new GuavaCacheManager();
+    @InjectMocks
+    private CacheAdminServiceImpl cacheAdminService;
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        cacheManager.setCacheNames(Arrays.asList("conversions", QUERY_CACHE));
+        cacheManager.getCache("conversions").put("schema", "conversion");
+        cacheManager.getCache(QUERY_CACHE).put("query", "result");
+    }
+
+    @Test
+    public void invalidatesOnlyGivenCache() throws Exception {
+        assertTrue(cacheAdminService.invalidate("conversions"));
+
+        assertNull(cacheManager.getCache("conversions").get("schema"));
+        assertNotNull(cacheManager.getCache(QUERY_CACHE).get("query"));
+    }
+
+    @Test
+    public void evictsEntriesByKey() throws Exception {
+        assertThat(cacheAdminService.evict(QUERY_CACHE, "query"), equalTo(1));
+
+        assertNull(cacheManager.getCache(QUERY_CACHE).get("query"));
+        assertNotNull(cacheManager.getCache("conversions").get("schema"));
+    }
+
+    @Test
+    public void unknownCacheIsNotInvalidated() throws Exception {
+        assertFalse(cacheAdminService.invalidate("unknown"));
+    }
+}
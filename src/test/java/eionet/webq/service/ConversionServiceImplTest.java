@@ -29,6 +29,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.Cache;
 import org.springframework.http.HttpEntity;
@@ -38,22 +40,29 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.AopTestUtils;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.RestOperations;
 import util.CacheCleaner;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -100,6 +109,79 @@ public class ConversionServiceImplTest {
         verify(restOperations).getForObject(anyString(), eq(ListConversionResponse.class), eq(xmlSchema));
     }
 
+    @Test
+    public void noConversionsForMissingSchema() throws Exception {
+        assertThat(conversionService.conversionsFor(null).size(), equalTo(0));
+        assertThat(conversionService.conversionsFor("").size(), equalTo(0));
+        verifyZeroInteractions(restOperations);
+    }
+
+    @Test
+    public void bulkLookupTakesCachedConversionsAndLoadsMissingSchemasOnce() throws Exception {
+        String otherSchema = "other.xsd";
+        restTemplateWillReturnConversionsForSchema(createResponse(new Conversion()), xmlSchema);
+        restTemplateWillReturnConversionsForSchema(createResponse(new Conversion(), new Conversion()), otherSchema);
+        conversionService.conversionsFor(xmlSchema);
+
+        Map<String, List<Conversion>> conversions =
+                conversionService.conversionsForSchemas(Arrays.asList(xmlSchema, otherSchema, otherSchema, "", null));
+
+        assertThat(conversions.size(), equalTo(2));
+        assertThat(conversions.get(xmlSchema).size(), equalTo(1));
+        assertThat(conversions.get(otherSchema).size(), equalTo(2));
+        assertNotNull(conversionsCache.get(otherSchema));
+        verify(restOperations).getForObject(anyString(), eq(ListConversionResponse.class), eq(xmlSchema));
+        verify(restOperations).getForObject(anyString(), eq(ListConversionResponse.class), eq(otherSchema));
+    }
+
+    @Test
+    public void bulkLookupReturnsPartialResultIfConvertersApiIsSlow() throws Exception {
+        final String slowSchema = "slow.xsd";
+        final CountDownLatch release = new CountDownLatch(1);
+        restTemplateWillReturnConversionsForSchema(createResponse(new Conversion()), xmlSchema);
+        when(restOperations.getForObject(anyString(), eq(ListConversionResponse.class), eq(slowSchema)))
+                .thenAnswer(new Answer<ListConversionResponse>() {
+                    @Override
+                    public ListConversionResponse answer(InvocationOnMock invocation) throws Throwable {
+                        release.await();
+                        return createResponse(new Conversion());
+                    }
+                });
+        ConversionServiceImpl service = AopTestUtils.getTargetObject(conversionService);
+        long lookupTimeout = service.lookupTimeout;
+        service.lookupTimeout = 100;
+        try {
+            Map<String, List<Conversion>> conversions =
+                    conversionService.conversionsForSchemas(Arrays.asList(xmlSchema, slowSchema));
+
+            assertThat(conversions.keySet(), equalTo(Collections.singleton(xmlSchema)));
+        } finally {
+            service.lookupTimeout = lookupTimeout;
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void bulkLookupLoadsConversionsInRequestThreadIfExecutorRejectsLookup() throws Exception {
+        restTemplateWillReturnConversionsForSchema(createResponse(new Conversion()), xmlSchema);
+        ConversionServiceImpl service = AopTestUtils.getTargetObject(conversionService);
+        Executor lookupExecutor = service.lookupExecutor;
+        service.lookupExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        };
+        try {
+            Map<String, List<Conversion>> conversions =
+                    conversionService.conversionsForSchemas(Collections.singletonList(xmlSchema));
+
+            assertThat(conversions.get(xmlSchema).size(), equalTo(1));
+        } finally {
+            service.lookupExecutor = lookupExecutor;
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void convertRequestShouldContainRequiredAttributes() throws Exception {
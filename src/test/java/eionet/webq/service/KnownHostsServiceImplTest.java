@@ -28,7 +28,13 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.Arrays;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  */
@@ -75,4 +81,51 @@ public class KnownHostsServiceImplTest {
 
         verify(knownHosts).remove(1);
     }
+
+    @Test
+    public void getKnownHost_returnsMostSpecificHost() throws Exception {
+        KnownHost host = knownHost("http://cdr.eionet.europa.eu");
+        KnownHost morespecific = knownHost("http://cdr.eionet.europa.eu/de");
+        KnownHost other = knownHost("http://cdr.eionet.europa.eu/dk");
+        when(knownHosts.findAll()).thenReturn(Arrays.asList(host, other, morespecific));
+
+        assertSame(morespecific, service.getKnownHost("http://cdr.eionet.europa.eu/de/envelope/file.xml"));
+        assertSame(other, service.getKnownHost("http://cdr.eionet.europa.eu/dk"));
+        assertSame(host, service.getKnownHost("http://cdr.eionet.europa.eu/ee/envelope"));
+        assertSame(host, service.getKnownHost("http://cdr.eionet.europa.eu/"));
+        assertNull(service.getKnownHost("http://cdr.eionet.europa.e"));
+        assertNull(service.getKnownHost("http://bdr.eionet.europa.eu/de"));
+    }
+
+    @Test
+    public void getKnownHost_loadsHostsOnce() throws Exception {
+        when(knownHosts.findAll()).thenReturn(Arrays.asList(knownHost("http://cdr.eionet.europa.eu")));
+
+        service.getKnownHost("http://cdr.eionet.europa.eu/de");
+        service.getKnownHost("http://cdr.eionet.europa.eu/dk");
+
+        verify(knownHosts, times(1)).findAll();
+    }
+
+    @Test
+    public void getKnownHost_reloadsHostsAfterChange() throws Exception {
+        KnownHost host = knownHost("http://cdr.eionet.europa.eu");
+        when(knownHosts.findAll()).thenReturn(Arrays.<KnownHost>asList());
+        assertNull(service.getKnownHost("http://cdr.eionet.europa.eu/de"));
+
+        when(knownHosts.findAll()).thenReturn(Arrays.asList(host));
+        service.save(host);
+        assertSame(host, service.getKnownHost("http://cdr.eionet.europa.eu/de"));
+
+        when(knownHosts.findAll()).thenReturn(Arrays.<KnownHost>asList());
+        service.remove(1);
+        assertNull(service.getKnownHost("http://cdr.eionet.europa.eu/de"));
+        verify(knownHosts, times(3)).findAll();
+    }
+
+    private KnownHost knownHost(String url) {
+        KnownHost host = new KnownHost();
+        host.setHostURL(url);
+        return host;
+    }
 }
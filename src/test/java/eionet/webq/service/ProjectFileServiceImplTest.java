@@ -20,6 +20,7 @@
  */
 package eionet.webq.service;
 
+import eionet.webq.cache.GuavaCacheManager;
 import eionet.webq.converter.XmlSchemaExtractor;
 import eionet.webq.dao.ProjectFileStorage;
 import eionet.webq.dao.orm.ProjectEntry;
@@ -48,7 +49,9 @@ import java.util.List;
 import static org.hamcrest.core.IsEqual.equalTo;
 import org.junit.Assert;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertNotSame;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -65,6 +68,12 @@ public class ProjectFileServiceImplTest {
     
     @Mock
     private XmlSchemaExtractor xmlSchemaExtractor;
+
+    @Mock
+    private WebFormCatalog webFormCatalog;
+
+    @Spy
+    private GuavaCacheManager cacheManager = new GuavaCacheManager(ProjectFileServiceImpl.PROJECT_FILES_CACHE);
     
     @InjectMocks
     private ProjectFileService service = new ProjectFileServiceImpl();
@@ -89,7 +98,7 @@ public class ProjectFileServiceImplTest {
         service.saveOrUpdate(testFile, testProject);
 
         verify(projectFileStorage).save(testFile, testProject);
-        verify(xmlSchemaExtractor).extractXmlSchema(null);
+        verify(xmlSchemaExtractor).extractXmlSchema((byte[]) null);
     }
 
     @Test
@@ -124,27 +133,28 @@ public class ProjectFileServiceImplTest {
         service.saveOrUpdate(testFile, testProject);
 
         verify(projectFileStorage).update(testFile, testProject);
+        verify(webFormCatalog).invalidate();
     }
 
     @Test
     public void testAllFilesFor() throws Exception {
         service.filesDividedByTypeFor(testProject);
 
-        verify(projectFileStorage).findAllFilesFor(testProject);
+        verify(projectFileStorage).findAllFilesMetadataFor(testProject);
     }
 
     @Test
     public void whenFetchingAllFilesTheyAreDividedByType() throws Exception {
         ProjectFile projectXmlFile = fileWithType(FILE);
         ProjectFile webform = fileWithType(WEBFORM);
-        when(projectFileStorage.findAllFilesFor(testProject))
+        when(projectFileStorage.findAllFilesMetadataFor(testProject))
                 .thenReturn(Arrays.asList(projectXmlFile, webform));
 
         MultiValueMap<ProjectFileType,ProjectFile> filesByType = service.filesDividedByTypeFor(testProject);
 
         assertThat(filesByType.get(FILE), equalTo(Arrays.asList(projectXmlFile)));
         assertThat(filesByType.get(WEBFORM), equalTo(Arrays.asList(webform)));
-        verify(projectFileStorage).findAllFilesFor(testProject);
+        verify(projectFileStorage).findAllFilesMetadataFor(testProject);
     }
 
     @Test
@@ -154,11 +164,42 @@ public class ProjectFileServiceImplTest {
         verify(projectFileStorage).findByNameAndProject("name", testProject);
     }
 
+    @Test
+    public void fileContentIsCachedAndEachCallerGetsItsOwnCopy() throws Exception {
+        testFile.setFileName("name");
+        testFile.setFileContent("content".getBytes());
+        when(projectFileStorage.findByNameAndProject("name", testProject)).thenReturn(testFile);
+
+        ProjectFile first = service.fileContentBy("name", testProject);
+        first.getFileContent()[0] = 'C';
+        first.setTitle("changed");
+        ProjectFile second = service.fileContentBy("name", testProject);
+        ProjectFile third = service.fileContentBy("name", testProject);
+
+        assertNotSame(second, third);
+        assertThat(second.getFileContent(), equalTo("content".getBytes()));
+        assertThat(second.getFileName(), equalTo("name"));
+        assertThat(second.getFile().getContent().getHash(), equalTo(UploadedFile.FileContent.hash("content".getBytes())));
+        verify(projectFileStorage, times(1)).findByNameAndProject("name", testProject);
+    }
+
+    @Test
+    public void fileLargerThanCachedFileSizeIsNotCached() throws Exception {
+        testFile.setFileSizeInBytes(ProjectFileService.MAX_CACHED_FILE_SIZE + 1);
+        when(projectFileStorage.findByNameAndProject("name", testProject)).thenReturn(testFile);
+
+        service.fileContentBy("name", testProject);
+        service.fileContentBy("name", testProject);
+
+        verify(projectFileStorage, times(2)).findByNameAndProject("name", testProject);
+    }
+
     @Test
     public void testRemove() throws Exception {
         service.remove(testProject, 1);
 
         verify(projectFileStorage).remove(testProject, 1);
+        verify(webFormCatalog).invalidate();
     }
 
     @Test
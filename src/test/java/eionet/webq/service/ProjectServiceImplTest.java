@@ -36,6 +36,7 @@ import eionet.webq.dao.orm.ProjectEntry;
 public class ProjectServiceImplTest {
     private ProjectService service;
     private ProjectFolders folders;
+    private WebFormCatalog webFormCatalog;
 
     @Before
     public void createService() {
@@ -43,6 +44,8 @@ public class ProjectServiceImplTest {
         service = projectService;
         folders = Mockito.mock(ProjectFolders.class);
         projectService.folders = folders;
+        webFormCatalog = Mockito.mock(WebFormCatalog.class);
+        projectService.webFormCatalog = webFormCatalog;
     }
 
     @Test
@@ -51,6 +54,7 @@ public class ProjectServiceImplTest {
         service.remove(projectId);
 
         verifyOnly().remove(projectId);
+        verify(webFormCatalog).invalidate();
     }
 
     @Test
@@ -0,0 +1,112 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.service;
+
+import eionet.webq.cache.GuavaCacheManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+public class RemoteStylesheetServiceImplTest {
+    private static final String STYLESHEET_URI = "http://remote.host/stylesheet.xsl";
+    private static final String STYLESHEET = "<xsl:stylesheet version=\"1.0\" "
+            + "xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\"><xsl:template match=\"/\"><result/></xsl:template>"
+            + "</xsl:stylesheet>";
+    private RemoteStylesheetServiceImpl service = new RemoteStylesheetServiceImpl();
+    private MockRestServiceServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        GuavaCacheManager cacheManager = new GuavaCacheManager();
+        cacheManager.setCacheNames(Arrays.asList(RemoteStylesheetServiceImpl.REMOTE_STYLESHEETS_CACHE));
+        service.cacheManager = cacheManager;
+        RestTemplate restTemplate = new RestTemplate();
+        server = MockRestServiceServer.createServer(restTemplate);
+        service.restOperations = restTemplate;
+    }
+
+    @Test
+    public void compilesStylesheetOnceWithinTimeToLive() throws Exception {
+        stylesheetWillBeReturned("\"v1\"");
+
+        Templates templates = service.getTemplates(STYLESHEET_URI);
+
+        assertSame(templates, service.getTemplates(STYLESHEET_URI));
+        server.verify();
+    }
+
+    @Test
+    public void keepsCompiledStylesheetIfNotModifiedAfterTimeToLive() throws Exception {
+        stylesheetWillBeReturned("\"v1\"");
+        server.expect(requestTo(STYLESHEET_URI)).andExpect(header("If-None-Match", "\"v1\""))
+                .andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+
+        Templates templates = service.getTemplates(STYLESHEET_URI);
+        service.timeToLive = 0;
+
+        assertSame(templates, service.getTemplates(STYLESHEET_URI));
+        server.verify();
+    }
+
+    @Test
+    public void recompilesStylesheetIfModifiedAfterTimeToLive() throws Exception {
+        stylesheetWillBeReturned("\"v1\"");
+        stylesheetWillBeReturned("\"v2\"");
+
+        Templates templates = service.getTemplates(STYLESHEET_URI);
+        service.timeToLive = 0;
+
+        assertNotSame(templates, service.getTemplates(STYLESHEET_URI));
+        server.verify();
+    }
+
+    @Test(expected = TransformerConfigurationException.class)
+    public void throwsTransformerConfigurationExceptionIfStylesheetIsInvalid() throws Exception {
+        server.expect(requestTo(STYLESHEET_URI))
+                .andRespond(withSuccess("not a stylesheet", MediaType.APPLICATION_XML));
+
+        service.getTemplates(STYLESHEET_URI);
+    }
+
+    private void stylesheetWillBeReturned(String eTag) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(eTag);
+        server.expect(requestTo(STYLESHEET_URI)).andExpect(method(HttpMethod.GET))
+                .andRespond(withSuccess(STYLESHEET, MediaType.APPLICATION_XML).headers(headers));
+    }
+}
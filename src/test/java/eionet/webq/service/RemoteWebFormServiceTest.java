@@ -43,6 +43,8 @@ import static org.mockito.Mockito.when;
 public class RemoteWebFormServiceTest {
     @Mock
     private WebFormStorage storage;
+    @Mock
+    private WebFormCatalog catalog;
     @InjectMocks
     private RemoteWebFormService webFormService;
 
@@ -60,24 +62,24 @@ public class RemoteWebFormServiceTest {
     @Test
     public void fetchRemoteWebFormById() throws Exception {
         ProjectFile expected = new ProjectFile();
-        when(storage.getActiveWebFormById(WebFormType.REMOTE, 1)).thenReturn(expected);
+        when(catalog.activeWebForm(WebFormType.REMOTE, 1)).thenReturn(expected);
 
         ProjectFile actual = webFormService.findActiveWebFormById(1);
 
         assertTrue(expected == actual);
-        verify(storage).getActiveWebFormById(WebFormType.REMOTE, 1);
+        verify(catalog).activeWebForm(WebFormType.REMOTE, 1);
     }
 
     @Test
     public void fetchRemoteWebFormsFilteredByXmlSchemas() throws Exception {
         List<String> xmlSchemas = Arrays.asList("1", "2", "3");
         List<ProjectFile> expected = Arrays.asList(new ProjectFile());
-        when(storage.findWebFormsForSchemas(WebFormType.REMOTE, xmlSchemas))
+        when(catalog.activeWebFormsForSchemas(WebFormType.REMOTE, xmlSchemas))
                 .thenReturn(expected);
 
         Collection<ProjectFile> actual = webFormService.findWebFormsForSchemas(xmlSchemas);
 
         assertTrue(expected == actual);
-        verify(storage).findWebFormsForSchemas(WebFormType.REMOTE, xmlSchemas);
+        verify(catalog).activeWebFormsForSchemas(WebFormType.REMOTE, xmlSchemas);
     }
 }
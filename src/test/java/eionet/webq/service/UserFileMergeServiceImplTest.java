@@ -20,27 +20,32 @@
  */
 package eionet.webq.service;
 
+import eionet.webq.cache.GuavaCacheManager;
 import eionet.webq.dao.orm.MergeModule;
 import eionet.webq.dao.orm.UploadedFile;
 import eionet.webq.dao.orm.UserFile;
 import org.apache.commons.io.IOUtils;
 import org.custommonkey.xmlunit.XMLUnit;
 import org.junit.AfterClass;
+import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.xml.sax.InputSource;
 
+import javax.xml.transform.TransformerConfigurationException;
 import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 
 import static org.custommonkey.xmlunit.XMLAssert.assertXMLEqual;
 import static org.custommonkey.xmlunit.XMLAssert.assertXpathEvaluatesTo;
+import static org.junit.Assert.fail;
 
 public class UserFileMergeServiceImplTest {
-    private UserFileMergeService service = new UserFileMergeServiceImpl();
+    private UserFileMergeServiceImpl service = new UserFileMergeServiceImpl();
     private static UserFile file1;
     private static UserFile file2;
     private static byte[] expectedResult;
@@ -56,6 +61,13 @@ public class UserFileMergeServiceImplTest {
         testMergeModule.setXslFile(new UploadedFile("merge_file", readBytesFromFile("test_merge.xsl")));
     }
 
+    @Before
+    public void injectCacheManager() throws Exception {
+        GuavaCacheManager cacheManager = new GuavaCacheManager();
+        cacheManager.setCacheNames(Arrays.asList(UserFileMergeServiceImpl.MERGE_MODULE_TEMPLATES_CACHE));
+        service.cacheManager = cacheManager;
+    }
+
     @AfterClass
     public static void tearDown() throws Exception {
         XMLUnit.setIgnoreWhitespace(false);
@@ -68,6 +80,27 @@ public class UserFileMergeServiceImplTest {
                 createSource(mergeResult));
     }
 
+    @Test
+    public void reusesCompiledStylesheetUntilMergeModuleIsUpdated() throws Exception {
+        MergeModule module = new MergeModule();
+        module.setId(1);
+        module.setUpdated(new Date(1000));
+        module.setXslFile(new UploadedFile("merge_file", readBytesFromFile("test_merge.xsl")));
+        service.mergeFiles(Arrays.asList(file1, file2), module);
+
+        module.getXslFile().getContent().setFileContent("not a stylesheet".getBytes());
+        byte[] mergeResult = service.mergeFiles(Arrays.asList(file1, file2), module);
+        assertXMLEqual(createSource(expectedResult), createSource(mergeResult));
+
+        module.setUpdated(new Date(2000));
+        try {
+            service.mergeFiles(Arrays.asList(file1, file2), module);
+            fail("Updated merge module stylesheet must be compiled again");
+        } catch (TransformerConfigurationException expected) {
+            // updated stylesheet is invalid
+        }
+    }
+
     @Test
     public void shouldMerge4FilesUsingMergeModule() throws Exception {
         List<UserFile> fourUserFiles = Arrays.asList(file1,
@@ -83,6 +116,26 @@ public class UserFileMergeServiceImplTest {
         assertXpathEvaluatesTo("2", "count(beans/bean[@name='file2Bean2'])", createSource(mergeResult));
     }
 
+    @Test
+    public void mergesAllFilesInSinglePassIfStylesheetDeclaresAllFilesParameter() throws Exception {
+        MergeModule module = new MergeModule();
+        module.setId(2);
+        module.setXslFile(new UploadedFile("merge_file", readBytesFromFile("test_merge_all_files.xsl")));
+
+        assertXMLEqual(createSource(expectedResult),
+                createSource(service.mergeFiles(Arrays.asList(file1, file2), module)));
+
+        List<UserFile> fourUserFiles = Arrays.asList(file1,
+                file2,
+                createUserFileFromFile(3, "file3.xml", file1.getContent()),
+                createUserFileFromFile(4, "file4.xml", file2.getContent()));
+        byte[] mergeResult = service.mergeFiles(fourUserFiles, module);
+
+        assertXpathEvaluatesTo("2", "count(beans/bean[@name='file1Bean1'])", createSource(mergeResult));
+        assertXpathEvaluatesTo("2", "count(beans/bean[@name='file2Bean2'])", createSource(mergeResult));
+        assertXpathEvaluatesTo("8", "count(beans/bean)", createSource(mergeResult));
+    }
+
     @Test
     public void ifMerging1File_returnFileContent() throws Exception {
         byte[] mergeResult = service.mergeFiles(Arrays.asList(file1), testMergeModule);
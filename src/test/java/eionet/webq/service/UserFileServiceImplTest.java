@@ -21,9 +21,12 @@
 
 package eionet.webq.service;
 
+import eionet.webq.cache.GuavaCacheManager;
+import eionet.webq.converter.JsonXMLBidirectionalConverter;
 import eionet.webq.dao.UserFileDownload;
 import eionet.webq.dao.UserFileStorage;
 import eionet.webq.dao.orm.ProjectFile;
+import eionet.webq.dao.orm.UploadedFile;
 import eionet.webq.dao.orm.UserFile;
 import eionet.webq.dto.UserFileIdUpdate;
 import org.junit.After;
@@ -34,21 +37,31 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.sql.Timestamp;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -71,12 +84,17 @@ public class UserFileServiceImplTest {
     private UserIdProvider userIdProvider;
     @Mock
     private HttpServletRequest request;
+    @Mock
+    private JsonXMLBidirectionalConverter jsonXMLConverter;
 
     @Before
     public void prepare() {
         MockitoAnnotations.initMocks(this);
         Mockito.when(userIdProvider.getUserId()).thenReturn(userId);
         when(request.getHeader(userAgentHeaderName)).thenReturn(expectedUserAgent);
+        GuavaCacheManager cacheManager = new GuavaCacheManager();
+        cacheManager.setCacheNames(Arrays.asList(UserFileServiceImpl.USER_FILE_JSON_CACHE));
+        service.cacheManager = cacheManager;
     }
 
     @After
@@ -107,15 +125,24 @@ public class UserFileServiceImplTest {
         verify(userFileDownload).updateDownloadTime(FILE_ID);
     }
 
+    @Test
+    public void fetchesFilesByIdsWithSingleStorageCall() throws Exception {
+        List<UserFile> filesInStorage = Arrays.asList(new UserFile(), new UserFile());
+        when(storage.findFiles(userId, 1, 2)).thenReturn(filesInStorage);
+
+        assertThat(service.getByIds(Arrays.asList(1, 2)), equalTo(filesInStorage));
+        verify(storage).findFiles(userId, 1, 2);
+    }
+
     @Test
     public void testAllUploadedFiles() throws Exception {
         Collection<UserFile> filesInStorage = Arrays.asList(new UserFile());
-        when(storage.findAllUserFiles(userId)).thenReturn(filesInStorage);
+        when(storage.findAllUserFilesMetadata(userId)).thenReturn(filesInStorage);
 
         Collection<UserFile> uploadedFiles = service.allUploadedFiles();
 
         assertThat(uploadedFiles, equalTo(filesInStorage));
-        verify(storage).findAllUserFiles(userId);
+        verify(storage).findAllUserFilesMetadata(userId);
     }
 
     @Test
@@ -132,6 +159,74 @@ public class UserFileServiceImplTest {
         assertNotEquals(lastDate, fileToUpdate.getUpdated());
     }
 
+    @Test
+    public void jsonRenditionIsConvertedOnContentUpdateAndReadFromCache() throws Exception {
+        UserFile fileToUpdate = new UserFile();
+        fileToUpdate.setId(3);
+        fileToUpdate.setUserId(userId);
+        fileToUpdate.setContent("<root/>".getBytes());
+        String hash = UploadedFile.FileContent.hash(fileToUpdate.getContent());
+        convertedJsonWillBe("{\"root\":null}");
+        when(storage.contentHash(3, userId)).thenReturn(hash);
+
+        service.updateContent(fileToUpdate);
+        UserFile storedFile = new UserFile();
+        storedFile.setId(3);
+        storedFile.setUserId(userId);
+
+        assertThat(service.jsonContent(storedFile), equalTo("{\"root\":null}".getBytes()));
+        verify(storage).update(fileToUpdate, userId);
+        verify(storage).contentHash(3, userId);
+        verify(jsonXMLConverter, times(1)).convertXmlToJson(any(InputStream.class), any(OutputStream.class), eq(true));
+    }
+
+    @Test
+    public void contentUpdateDoesNotFailIfContentIsNotConvertibleToJson() throws Exception {
+        UserFile fileToUpdate = new UserFile();
+        fileToUpdate.setContent("not xml".getBytes());
+        doThrow(new RuntimeException("not xml")).when(jsonXMLConverter)
+                .convertXmlToJson(any(InputStream.class), any(OutputStream.class), eq(true));
+
+        service.updateContent(fileToUpdate);
+
+        verify(storage).update(fileToUpdate, userId);
+    }
+
+    @Test
+    public void updatesContentFromStreamForCurrentUser() throws Exception {
+        UserFile fileToUpdate = new UserFile();
+        fileToUpdate.setId(3);
+        InputStream content = new ByteArrayInputStream("content".getBytes());
+        when(storage.updateContent(3, userId, content)).thenReturn("hash");
+
+        service.updateContent(fileToUpdate, content);
+
+        verify(storage).updateContent(3, userId, content);
+    }
+
+    @Test
+    public void jsonRenditionIsConvertedOnFirstReadAfterContentUpdateFromStream() throws Exception {
+        UserFile fileToUpdate = new UserFile();
+        fileToUpdate.setId(3);
+        InputStream content = new ByteArrayInputStream("<root/>".getBytes());
+        convertedJsonWillBe("{\"root\":null}");
+        when(storage.updateContent(3, userId, content)).thenReturn("hash");
+        when(storage.contentHash(3, userId)).thenReturn("hash");
+
+        service.updateContent(fileToUpdate, content);
+        verify(jsonXMLConverter, never()).convertXmlToJson(any(InputStream.class), any(OutputStream.class), eq(true));
+        UserFile storedFile = new UserFile();
+        storedFile.setId(3);
+        storedFile.setUserId(userId);
+        storedFile.setContent("<root/>".getBytes());
+
+        assertThat(service.jsonContent(storedFile), equalTo("{\"root\":null}".getBytes()));
+        assertThat(service.jsonContent(storedFile), equalTo("{\"root\":null}".getBytes()));
+        verify(storage).updateContent(3, userId, content);
+        verify(storage, times(2)).contentHash(3, userId);
+        verify(jsonXMLConverter, times(1)).convertXmlToJson(any(InputStream.class), any(OutputStream.class), eq(true));
+    }
+
     @Test
     public void testUpdate() throws Exception {
         UserFile fileToUpdate = new UserFile();
@@ -159,12 +254,11 @@ public class UserFileServiceImplTest {
         webForm.setEmptyInstanceUrl(url);
         byte[] fileContent = "remote-file-content".getBytes();
         when(remoteFileService.fileContent(url)).thenReturn(fileContent);
-        when(storage.getUserWebFormFileMaxNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'))).thenReturn(
-                new Integer(0));
+        when(storage.nextWebFormFileNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'))).thenReturn(1L);
         service.saveBasedOnWebForm(new UserFile(), webForm);
 
         ArgumentCaptor<UserFile> userFileArgument = ArgumentCaptor.forClass(UserFile.class);
-        verify(storage).getUserWebFormFileMaxNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'));
+        verify(storage).nextWebFormFileNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'));
         verify(storage).save(userFileArgument.capture(), anyString());
         assertThat(userFileArgument.getValue().getContent(), equalTo(fileContent));
     }
@@ -175,11 +269,10 @@ public class UserFileServiceImplTest {
         ProjectFile webForm = new ProjectFile();
         webForm.setNewXmlFileName(fileName);
         UserFile userFile = new UserFile();
-        when(storage.getUserWebFormFileMaxNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'))).thenReturn(
-                new Integer(0));
+        when(storage.nextWebFormFileNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'))).thenReturn(1L);
         service.saveBasedOnWebForm(userFile, webForm);
 
-        verify(storage).getUserWebFormFileMaxNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'));
+        verify(storage).nextWebFormFileNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'));
         verify(storage).save(eq(userFile), anyString());
         assertThat(userFile.getName(), equalTo(fileName + "_" + 1));
     }
@@ -189,22 +282,20 @@ public class UserFileServiceImplTest {
         String fileName = "multiple web form file name";
         ProjectFile webForm = new ProjectFile();
         webForm.setNewXmlFileName(fileName);
-        when(storage.getUserWebFormFileMaxNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'))).thenReturn(
-                new Integer(0));
+        when(storage.nextWebFormFileNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'))).thenReturn(1L);
         UserFile userFile = new UserFile();
         service.saveBasedOnWebForm(userFile, webForm);
         //check first file
         assertThat(userFile.getName(), equalTo(fileName + "_" + 1));
         verify(storage).save(eq(userFile), anyString());
 
-        when(storage.getUserWebFormFileMaxNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'))).thenReturn(
-                new Integer(1));
+        when(storage.nextWebFormFileNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'))).thenReturn(2L);
         userFile = new UserFile();
         service.saveBasedOnWebForm(userFile, webForm);
         //check second file
         assertThat(userFile.getName(), equalTo(fileName + "_" + 2));
 
-        verify(storage, times(2)).getUserWebFormFileMaxNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'));
+        verify(storage, times(2)).nextWebFormFileNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'));
         verify(storage).save(eq(userFile), anyString());
     }
 
@@ -214,22 +305,20 @@ public class UserFileServiceImplTest {
         String fileExtension = ".xml";
         ProjectFile webForm = new ProjectFile();
         webForm.setNewXmlFileName(fileName + fileExtension);
-        when(storage.getUserWebFormFileMaxNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'))).thenReturn(
-                new Integer(0));
+        when(storage.nextWebFormFileNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'))).thenReturn(1L);
         UserFile userFile = new UserFile();
         service.saveBasedOnWebForm(userFile, webForm);
         //check first file
         assertThat(userFile.getName(), equalTo(fileName + "_" + 1 + fileExtension));
         verify(storage).save(eq(userFile), anyString());
 
-        when(storage.getUserWebFormFileMaxNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'))).thenReturn(
-                new Integer(1));
+        when(storage.nextWebFormFileNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'))).thenReturn(2L);
         userFile = new UserFile();
         service.saveBasedOnWebForm(userFile, webForm);
         //check second file
         assertThat(userFile.getName(), equalTo(fileName + "_" + 2 + fileExtension));
 
-        verify(storage, times(2)).getUserWebFormFileMaxNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'));
+        verify(storage, times(2)).nextWebFormFileNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'));
         verify(storage).save(eq(userFile), anyString());
     }
 
@@ -239,14 +328,13 @@ public class UserFileServiceImplTest {
         String fileExtension = ".xml";
         ProjectFile webForm = new ProjectFile();
         webForm.setNewXmlFileName(fileName + fileExtension);
-        when(storage.getUserWebFormFileMaxNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'))).thenReturn(
-                null);
+        when(storage.nextWebFormFileNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'))).thenReturn(1L);
         UserFile userFile = new UserFile();
         service.saveBasedOnWebForm(userFile, webForm);
         //check file
         assertThat(userFile.getName(), equalTo(fileName + "_" + 1 + fileExtension));
         verify(storage).save(eq(userFile), anyString());
-        verify(storage).getUserWebFormFileMaxNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'));
+        verify(storage).nextWebFormFileNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'));
     }
 
     @Test
@@ -257,13 +345,12 @@ public class UserFileServiceImplTest {
         webForm.setEmptyInstanceUrl("empty.instance");
         UserFile userFile = new UserFile();
         when(remoteFileService.fileContent(anyString())).thenReturn(fileContent);
-        when(storage.getUserWebFormFileMaxNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'))).thenReturn(
-                new Integer(0));
+        when(storage.nextWebFormFileNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'))).thenReturn(1L);
         service.saveBasedOnWebForm(userFile, webForm);
 
         assertThat(userFile.getContent(), equalTo(fileContent));
         verify(remoteFileService).fileContent(webForm.getEmptyInstanceUrl());
-        verify(storage).getUserWebFormFileMaxNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'));
+        verify(storage).nextWebFormFileNum(eq(userId), eq(webForm.getXmlSchema()), anyString(), eq('_'), eq('.'));
         verify(storage).save(eq(userFile), anyString());
     }
 
@@ -306,4 +393,14 @@ public class UserFileServiceImplTest {
         UserFileIdUpdate updateData = updateDataCaptor.getValue();
         assertThat(updateData.getUserAgent(), equalTo(expectedUserAgent));
     }
+
+    private void convertedJsonWillBe(final String json) {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((OutputStream) invocation.getArguments()[1]).write(json.getBytes());
+                return null;
+            }
+        }).when(jsonXMLConverter).convertXmlToJson(any(InputStream.class), any(OutputStream.class), eq(true));
+    }
 }
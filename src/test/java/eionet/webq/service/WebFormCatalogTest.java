@@ -0,0 +1,144 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.service;
+
+import eionet.webq.dao.ProjectFolders;
+import eionet.webq.dao.WebFormStorage;
+import eionet.webq.dao.orm.ProjectEntry;
+import eionet.webq.dao.orm.ProjectFile;
+import eionet.webq.dto.WebFormType;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ */
+public class WebFormCatalogTest {
+    @Mock
+    private WebFormStorage storage;
+    @Mock
+    private ProjectFolders projectFolders;
+    @InjectMocks
+    private WebFormCatalog catalog;
+
+    private ProjectFile localForm = webForm(1, "b-local", "schema1", true, false);
+    private ProjectFile remoteForm = webForm(2, "C-remote", "schema2", false, true);
+    private ProjectFile bothForm = webForm(3, "a-both", "schema1", true, true);
+
+    @Before
+    public void setUp() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(storage.getAllActiveWebFormsMetadata(null)).thenReturn(Arrays.asList(localForm, remoteForm, bothForm));
+    }
+
+    @Test
+    public void returnsWebFormsOfTypeSortedByTitle() throws Exception {
+        assertThat(titles(catalog.activeWebForms(null)), equalTo(Arrays.asList("a-both", "b-local", "C-remote")));
+        assertThat(titles(catalog.activeWebForms(WebFormType.LOCAL)), equalTo(Arrays.asList("a-both", "b-local")));
+        assertThat(titles(catalog.activeWebForms(WebFormType.REMOTE)), equalTo(Arrays.asList("a-both", "C-remote")));
+    }
+
+    @Test
+    public void findsWebFormsBySchemaAndId() throws Exception {
+        List<ProjectFile> forSchema = catalog.activeWebFormsForSchemas(WebFormType.LOCAL, Arrays.asList("schema1", "unknown"));
+
+        assertThat(titles(forSchema), equalTo(Arrays.asList("a-both", "b-local")));
+        assertThat(catalog.activeWebForm(WebFormType.REMOTE, 2).getTitle(), equalTo("C-remote"));
+        assertThat(catalog.activeWebForm(WebFormType.LOCAL, 2), nullValue());
+    }
+
+    @Test
+    public void returnsCopiesSoThatCatalogIsNotModified() throws Exception {
+        ProjectFile webForm = catalog.activeWebForm(null, 1);
+        webForm.setTitle("changed");
+
+        assertThat(webForm, not(equalTo(localForm)));
+        assertThat(catalog.activeWebForm(null, 1).getTitle(), equalTo("b-local"));
+        assertThat(catalog.activeWebForm(null, 1).getXmlSchema(), equalTo("schema1"));
+    }
+
+    @Test
+    public void loadsWebFormsOnceUntilInvalidated() throws Exception {
+        catalog.activeWebForms(null);
+        catalog.activeWebForm(WebFormType.LOCAL, 1);
+        verify(storage, times(1)).getAllActiveWebFormsMetadata(null);
+
+        catalog.invalidate();
+        catalog.activeWebForms(WebFormType.REMOTE);
+        verify(storage, times(2)).getAllActiveWebFormsMetadata(null);
+    }
+
+    @Test
+    public void resolvesProjectIdentifiersWithSingleLookup() throws Exception {
+        ProjectEntry project = new ProjectEntry();
+        project.setId(7);
+        project.setProjectId("project");
+        when(projectFolders.getAllFolders()).thenReturn(Arrays.asList(project));
+        localForm.setProjectId(7);
+        bothForm.setProjectId(7);
+
+        List<ProjectFile> webForms = catalog.activeWebForms(WebFormType.LOCAL);
+
+        assertThat(webForms.get(0).getProjectIdentifier(), equalTo("project"));
+        assertThat(webForms.get(1).getProjectIdentifier(), equalTo("project"));
+        assertThat(catalog.activeWebForm(null, 2).getProjectIdentifier(), nullValue());
+        verify(projectFolders, times(1)).getAllFolders();
+    }
+
+    @Test
+    public void sortsTitlesIgnoringCase() throws Exception {
+        List<ProjectFile> sorted = catalog.sortByTitle(Arrays.asList(remoteForm, webForm(4, null, null, true, false), localForm));
+
+        assertThat(titles(sorted), equalTo(Arrays.asList(null, "b-local", "C-remote")));
+    }
+
+    private List<String> titles(List<ProjectFile> webForms) {
+        String[] titles = new String[webForms.size()];
+        for (int i = 0; i < titles.length; i++) {
+            titles[i] = webForms.get(i).getTitle();
+        }
+        return Arrays.asList(titles);
+    }
+
+    private ProjectFile webForm(int id, String title, String xmlSchema, boolean local, boolean remote) {
+        ProjectFile webForm = new ProjectFile();
+        webForm.setId(id);
+        webForm.setTitle(title);
+        webForm.setXmlSchema(xmlSchema);
+        webForm.setLocalForm(local);
+        webForm.setRemoteForm(remote);
+        webForm.setActive(true);
+        return webForm;
+    }
+}
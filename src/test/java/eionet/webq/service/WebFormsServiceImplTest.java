@@ -44,6 +44,8 @@ import eionet.webq.dto.WebFormType;
 public class WebFormsServiceImplTest {
     @Mock
     private WebFormStorage storage;
+    @Mock
+    private WebFormCatalog catalog;
     @InjectMocks
     private WebFormsServiceImpl webFormService;
 
@@ -67,25 +69,25 @@ public class WebFormsServiceImplTest {
     @Test
     public void findActiveWebFormById() throws Exception {
         ProjectFile expectedResult = new ProjectFile();
-        when(storage.getActiveWebFormById(WebFormType.LOCAL, 1)).thenReturn(expectedResult);
+        when(catalog.activeWebForm(WebFormType.LOCAL, 1)).thenReturn(expectedResult);
 
         ProjectFile actualResult = webFormService.findActiveWebFormById(1);
 
         assertTrue(expectedResult == actualResult);
-        verify(storage).getActiveWebFormById(WebFormType.LOCAL, 1);
+        verify(catalog).activeWebForm(WebFormType.LOCAL, 1);
     }
 
     @Test
-    public void whenFilteringByXmlSchemas_performsSearchInStorage() throws Exception {
+    public void whenFilteringByXmlSchemas_performsSearchInCatalog() throws Exception {
         List<String> xmlSchemas = Arrays.asList("1", "2");
         List<ProjectFile> result = Arrays.asList(new ProjectFile());
-        when(storage.findWebFormsForSchemas(WebFormType.LOCAL, xmlSchemas))
+        when(catalog.activeWebFormsForSchemas(WebFormType.LOCAL, xmlSchemas))
                 .thenReturn(result);
 
         Collection<ProjectFile> webForms = webFormService.findWebFormsForSchemas(xmlSchemas);
 
         assertTrue(webForms == result);
-        verify(storage).findWebFormsForSchemas(WebFormType.LOCAL, xmlSchemas);
+        verify(catalog).activeWebFormsForSchemas(WebFormType.LOCAL, xmlSchemas);
     }
 
     @Test
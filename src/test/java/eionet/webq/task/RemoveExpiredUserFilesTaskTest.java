@@ -20,12 +20,8 @@
  */
 package eionet.webq.task;
 
+import eionet.webq.dao.UserFileStorage;
 import org.apache.commons.lang3.time.DateUtils;
-import org.hibernate.Criteria;
-import org.hibernate.Session;
-import org.hibernate.SessionFactory;
-import org.hibernate.criterion.Criterion;
-import org.hibernate.criterion.SimpleExpression;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -33,12 +29,16 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
-import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
-import java.util.Properties;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -46,15 +46,7 @@ import static org.mockito.Mockito.when;
  */
 public class RemoveExpiredUserFilesTaskTest {
     @Mock
-    private SessionFactory factory;
-    @Mock
-    private Session session;
-    @Mock
-    private Criteria criteria;
-    @Mock
-    private Properties properties;
-
-    private String expirationHours = "1";
+    private UserFileStorage userFileStorage;
 
     @InjectMocks
     private RemoveExpiredUserFilesTask removeExpiredUserFilesTask;
@@ -63,22 +55,48 @@ public class RemoveExpiredUserFilesTaskTest {
     @Before
     public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
-        //when(properties.getProperty("user.file.expiration.hours")).thenReturn(Integer.toString(expirationTimeInHours));
-        when(factory.getCurrentSession()).thenReturn(session);
-        when(session.createCriteria(any(Class.class))).thenReturn(criteria);
-        when(criteria.add(any(Criterion.class))).thenReturn(criteria);
+        removeExpiredUserFilesTask.setExpirationHours("1");
+        removeExpiredUserFilesTask.batchSize = 2;
+        when(userFileStorage.removeExpired(any(Date.class), anyInt())).thenReturn(Collections.<Integer>emptyList());
     }
 
     @Test
     public void performsRemovalBasedOnConfiguredProperties() throws Exception {
-        removeExpiredUserFilesTask.setExpirationHours("1");
         removeExpiredUserFilesTask.removeExpiredUserFiles();
 
-        ArgumentCaptor<SimpleExpression> criterionCaptor = ArgumentCaptor.forClass(SimpleExpression.class);
-        verify(criteria).add(criterionCaptor.capture());
+        ArgumentCaptor<Date> dateCaptor = ArgumentCaptor.forClass(Date.class);
+        verify(userFileStorage).removeExpired(dateCaptor.capture(), eq(2));
 
         Date expectedDate = DateUtils.addHours(new Date(), -expirationTimeInHours);
-        Timestamp date = (Timestamp) criterionCaptor.getValue().getValue();
-        assertEquals(expectedDate.getTime(), date.getTime(), 1000);
+        assertEquals(expectedDate.getTime(), dateCaptor.getValue().getTime(), 1000);
+    }
+
+    @Test
+    public void removesFilesInBatchesUntilLastBatchIsIncomplete() throws Exception {
+        when(userFileStorage.removeExpired(any(Date.class), eq(2))).thenReturn(Arrays.asList(3, 5), Arrays.asList(8));
+
+        removeExpiredUserFilesTask.removeExpiredUserFiles();
+
+        verify(userFileStorage, times(2)).removeExpired(any(Date.class), eq(2));
+        assertEquals(3, removeExpiredUserFilesTask.getRemovedFiles());
+        assertEquals(2, removeExpiredUserFilesTask.getCompletedBatches());
+    }
+
+    @Test
+    public void continuesWithRemainingFilesIfRunFailed() throws Exception {
+        when(userFileStorage.removeExpired(any(Date.class), eq(2))).thenReturn(Arrays.asList(3, 5))
+                .thenThrow(new IllegalStateException()).thenReturn(Arrays.asList(8));
+
+        try {
+            removeExpiredUserFilesTask.removeExpiredUserFiles();
+            fail("Removal expected to fail");
+        } catch (IllegalStateException e) {
+            assertEquals(2, removeExpiredUserFilesTask.getRemovedFiles());
+        }
+
+        removeExpiredUserFilesTask.removeExpiredUserFiles();
+
+        assertEquals(1, removeExpiredUserFilesTask.getRemovedFiles());
+        verify(userFileStorage, times(3)).removeExpired(any(Date.class), eq(2));
     }
 }
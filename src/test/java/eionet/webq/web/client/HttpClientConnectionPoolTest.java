@@ -0,0 +1,119 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.web.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class HttpClientConnectionPoolTest {
+    private static final byte[] CONTENT = "content".getBytes(StandardCharsets.UTF_8);
+    private HttpServer server;
+    private String url;
+    private ConnPoolControl<HttpRoute> xformsConnections = mock(ConnPoolControl.class);
+    private HttpClientConnectionPool pool = new HttpClientConnectionPool(10, 4, 1000, 1000, 1000, xformsConnections, 4, 2);
+
+    @Before
+    public void startServer() throws Exception {
+        when(xformsConnections.getTotalStats()).thenReturn(new PoolStats(0, 0, 0, 10));
+        when(xformsConnections.getMaxTotal()).thenReturn(4);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, CONTENT.length);
+                OutputStream body = exchange.getResponseBody();
+                body.write(CONTENT);
+                body.close();
+            }
+        });
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.stop(0);
+        pool.destroy();
+    }
+
+    @Test
+    public void restTemplateReusesPooledConnection() throws Exception {
+        RestTemplate restTemplate = new RestTemplate(pool.createRequestFactory());
+
+        assertThat(restTemplate.getForObject(url, byte[].class), equalTo(CONTENT));
+        assertThat(restTemplate.getForObject(url, byte[].class), equalTo(CONTENT));
+
+        assertThat(pool.getLeased(), equalTo(0));
+        assertThat(pool.getAvailable(), equalTo(1));
+    }
+
+    @Test
+    public void connectionIsReturnedToPoolWhenResponseIsClosed() throws Exception {
+        CloseableHttpResponse response = pool.getHttpClient().execute(new HttpGet(url));
+        assertThat(pool.getLeased(), equalTo(1));
+
+        response.close();
+
+        assertThat(pool.getLeased(), equalTo(0));
+    }
+
+    @Test
+    public void maxTotalIncludesXFormsConnections() throws Exception {
+        assertThat(pool.getMaxTotal(), equalTo(10));
+    }
+
+    @Test
+    public void xformsConnectionsGetReservedPartOfLimits() throws Exception {
+        verify(xformsConnections).setMaxTotal(4);
+        verify(xformsConnections).setDefaultMaxPerRoute(2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void xformsConnectionsCannotTakeWholeLimit() throws Exception {
+        new HttpClientConnectionPool(10, 4, 1000, 1000, 1000, xformsConnections, 10, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void xformsConnectionsCannotTakeWholeLimitPerRoute() throws Exception {
+        new HttpClientConnectionPool(10, 4, 1000, 1000, 1000, xformsConnections, 4, 4);
+    }
+}
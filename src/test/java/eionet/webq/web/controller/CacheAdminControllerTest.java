@@ -0,0 +1,102 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.web.controller;
+
+import eionet.webq.web.AbstractContextControllerTests;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+public class CacheAdminControllerTest extends AbstractContextControllerTests {
+    @Autowired
+    private CacheManager cacheManager;
+
+    private Cache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = cacheManager.getCache("conversions");
+        cache.clear();
+    }
+
+    @Test
+    public void listsStatisticsOfAllCaches() throws Exception {
+        request(get("/caches")).andExpect(jsonPath("$[?(@.name == 'conversions')]").exists());
+    }
+
+    @Test
+    public void showsCacheSizeAndRefreshMode() throws Exception {
+        cache.put("schema", "value");
+
+        request(get("/caches/conversions"))
+                .andExpect(jsonPath("$.name", equalTo("conversions")))
+                .andExpect(jsonPath("$.size", equalTo(1)))
+                .andExpect(jsonPath("$.refreshing", equalTo(true)));
+    }
+
+    @Test
+    public void unknownCacheNotFound() throws Exception {
+        mvc().perform(get("/caches/unknown")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void invalidatesCache() throws Exception {
+        cache.put("schema", "value");
+
+        request(post("/caches/conversions/invalidate")).andExpect(jsonPath("$.size", equalTo(0)));
+        assertNull(cache.get("schema"));
+    }
+
+    @Test
+    public void evictsEntryByKey() throws Exception {
+        cache.put("schema", "value");
+        cache.put("other", "value");
+
+        request(post("/caches/conversions/evict").param("key", "schema")).andExpect(jsonPath("$.size", equalTo(1)));
+        assertNull(cache.get("schema"));
+        assertNotNull(cache.get("other"));
+    }
+
+    @Test
+    public void evictsCompositeKeyByItsStringRepresentation() throws Exception {
+        SimpleKey key = new SimpleKey("project", "file");
+        cache.put(key, "value");
+
+        request(post("/caches/conversions/evict").param("key", key.toString()));
+        assertNull(cache.get(key));
+    }
+}
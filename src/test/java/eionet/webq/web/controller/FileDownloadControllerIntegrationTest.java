@@ -110,6 +110,38 @@ public class FileDownloadControllerIntegrationTest extends AbstractContextContro
                 .andExpect(MockMvcResultMatchers.handler().methodName("downloadUserFileJsonToXml"));
     }
 
+    @Test
+    public void userFileIsDownloadedWithContentHashAsEtagAndMustBeRevalidated() throws Exception {
+        byte[] content = "<root/>".getBytes();
+        int id = userFileService.save(new UserFile(new UploadedFile("test.xml", content), XML_SCHEMA));
+
+        request(get("/download/user_file?fileId={id}", id).session(session))
+                .andExpect(MockMvcResultMatchers.header().string("ETag", "\"" + UploadedFile.FileContent.hash(content) + "\""))
+                .andExpect(MockMvcResultMatchers.header().string("Cache-Control", "no-cache"))
+                .andExpect(MockMvcResultMatchers.content().bytes(content));
+    }
+
+    @Test
+    public void whenUserFileEtagMatches_ReturnResponseCode304WithoutContent() throws Exception {
+        byte[] content = "<root/>".getBytes();
+        int id = userFileService.save(new UserFile(new UploadedFile("test.xml", content), XML_SCHEMA));
+
+        mvc().perform(get("/download/user_file?fileId={id}", id).session(session)
+                .header("If-None-Match", "\"" + UploadedFile.FileContent.hash(content) + "\""))
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.content().bytes(new byte[0]));
+    }
+
+    @Test
+    public void whenUserFileEtagDoesNotMatch_ReturnContent() throws Exception {
+        byte[] content = "<root/>".getBytes();
+        int id = userFileService.save(new UserFile(new UploadedFile("test.xml", content), XML_SCHEMA));
+
+        request(get("/download/user_file?fileId={id}", id).session(session)
+                .header("If-None-Match", "\"" + UploadedFile.FileContent.hash("<changed/>".getBytes()) + "\""))
+                .andExpect(MockMvcResultMatchers.content().bytes(content));
+    }
+
     @Test
     public void whenRequestingMissingProjectFile_ReturnResponseCode404() throws Exception {
         mvc().perform(MockMvcRequestBuilders.get("/project/22/file/unknown.xml"))
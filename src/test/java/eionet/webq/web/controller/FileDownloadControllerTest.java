@@ -43,7 +43,6 @@ import static eionet.webq.web.controller.FileDownloadController.MergeModuleChoic
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.anyCollectionOf;
-import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.spy;
@@ -80,7 +79,7 @@ public class FileDownloadControllerTest {
         MergeModule mergeModule = new MergeModule();
         byte[] mergeResult = "merge-result".getBytes();
 
-        when(userFileService.getById(anyInt())).thenReturn(userFile, userFile);
+        when(userFileService.getByIds(Arrays.asList(1, 2))).thenReturn(Arrays.asList(userFile, userFile));
         when(mergeModules.findByXmlSchemas(anyCollectionOf(String.class))).thenReturn(Arrays.asList(mergeModule));
         when(userFileMergeService.mergeFiles(anyCollectionOf(UserFile.class), eq(mergeModule)))
                 .thenReturn(mergeResult);
@@ -114,7 +113,7 @@ public class FileDownloadControllerTest {
         userFile1.setXmlSchema("schema1");
         userFile2.setXmlSchema("schema2");
 
-        when(userFileService.getById(anyInt())).thenReturn(userFile1, userFile2);
+        when(userFileService.getByIds(Arrays.asList(1, 2))).thenReturn(Arrays.asList(userFile1, userFile2));
         controller.mergeFiles(Arrays.asList(1, 2), null, new MockHttpServletRequest(), new MockHttpServletResponse());
     }
 
@@ -123,7 +122,7 @@ public class FileDownloadControllerTest {
         int mergeModuleId = 5;
         MergeModule mergeModule = new MergeModule();
 
-        when(userFileService.getById(anyInt())).thenReturn(new UserFile(), new UserFile());
+        when(userFileService.getByIds(Arrays.asList(1, 2))).thenReturn(Arrays.asList(new UserFile(), new UserFile()));
         when(mergeModules.findById(mergeModuleId)).thenReturn(mergeModule);
         when(userFileMergeService.mergeFiles(anyCollectionOf(UserFile.class), eq(mergeModule)))
                 .thenReturn("merge-result".getBytes());
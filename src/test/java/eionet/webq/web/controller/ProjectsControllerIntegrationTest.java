@@ -20,6 +20,7 @@
  */
 package eionet.webq.web.controller;
 
+import eionet.webq.cache.GuavaCache;
 import eionet.webq.dao.ProjectFolders;
 import eionet.webq.dao.orm.ProjectEntry;
 import eionet.webq.dao.orm.ProjectFile;
@@ -45,6 +46,7 @@ import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.RestOperations;
+import util.CacheCleaner;
 
 import java.net.URI;
 import java.security.Principal;
@@ -56,6 +58,7 @@ import static java.lang.String.valueOf;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.hamcrest.core.IsNull.nullValue;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
@@ -65,7 +68,9 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -84,6 +89,8 @@ public class ProjectsControllerIntegrationTest extends AbstractProjectsControlle
     private RestOperations fileDownload;
     @Autowired
     MessageSourceAccessor messages;
+    @Autowired
+    private CacheCleaner cacheCleaner;
 
     @Test
     public void returnsAllProjectsViewName() throws Exception {
@@ -266,6 +273,99 @@ public class ProjectsControllerIntegrationTest extends AbstractProjectsControlle
                 content().bytes(testWebFormUpload().getFileContent()));
     }
 
+    @Test
+    public void webFormContentIsCacheableAndHasContentHashAsEtag() throws Exception {
+        uploadFilesForDefaultProject(1);
+        ProjectFile projectFile = theOnlyOneUploadedFile();
+
+        request(get("/download/project/" + DEFAULT_PROJECT_ID + "/file/" + projectFile.getFileName()))
+                .andExpect(header().string("ETag", "\"" + UploadedFile.FileContent.hash(testWebFormUpload().getFileContent()) + "\""))
+                .andExpect(header().string("Cache-Control", "public, max-age=600"));
+    }
+
+    @Test
+    public void whenWebFormEtagMatches_ReturnResponseCode304WithoutContent() throws Exception {
+        uploadFilesForDefaultProject(1);
+        ProjectFile projectFile = theOnlyOneUploadedFile();
+
+        mvc().perform(get("/download/project/" + DEFAULT_PROJECT_ID + "/file/" + projectFile.getFileName())
+                .header("If-None-Match", "\"" + UploadedFile.FileContent.hash(testWebFormUpload().getFileContent()) + "\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    public void whenWebFormNotModifiedSinceRequestedTime_ReturnResponseCode304() throws Exception {
+        uploadFilesForDefaultProject(1);
+        ProjectFile projectFile = theOnlyOneUploadedFile();
+
+        mvc().perform(get("/download/project/" + DEFAULT_PROJECT_ID + "/file/" + projectFile.getFileName())
+                .header("If-Modified-Since", System.currentTimeMillis() + 60000))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    public void projectFileIsCachedUntilContentIsUpdated() throws Exception {
+        GuavaCache cache = (GuavaCache) cacheCleaner.cleanProjectFilesCacheAndReturnIt();
+        uploadFilesForDefaultProject(1);
+        ProjectFile uploadedFile = theOnlyOneUploadedFile();
+        ProjectEntry defaultProject = projectFolders.getByProjectId(DEFAULT_PROJECT_ID);
+
+        ProjectFile cachedFile = projectFileService.fileContentBy(uploadedFile.getFileName(), defaultProject);
+        sessionFactory.getCurrentSession().clear();
+        ProjectFile cachedCopy = projectFileService.fileContentBy(uploadedFile.getFileName(), defaultProject);
+        assertNotSame(cachedFile, cachedCopy);
+        assertThat(cachedCopy.getFileContent(), equalTo(cachedFile.getFileContent()));
+        assertNotSame(cachedCopy, projectFileService.fileContentBy(uploadedFile.getFileName(), defaultProject));
+        assertThat(cache.size(), equalTo(1L));
+
+        byte[] newContent = "new-file-content".getBytes();
+        projectFileService.updateContent(uploadedFile.getId(), newContent, defaultProject);
+        sessionFactory.getCurrentSession().flush();
+        sessionFactory.getCurrentSession().clear();
+
+        ProjectFile updatedFile = projectFileService.fileContentBy(uploadedFile.getFileName(), defaultProject);
+        assertNotSame(cachedFile, updatedFile);
+        assertThat(updatedFile.getFileContent(), equalTo(newContent));
+    }
+
+    @Test
+    public void projectFileIsNotCachedAfterRemoval() throws Exception {
+        cacheCleaner.cleanProjectFilesCacheAndReturnIt();
+        uploadFilesForDefaultProject(1);
+        ProjectFile uploadedFile = theOnlyOneUploadedFile();
+        ProjectEntry defaultProject = projectFolders.getByProjectId(DEFAULT_PROJECT_ID);
+        assertNotNull(projectFileService.fileContentBy(uploadedFile.getFileName(), defaultProject));
+
+        projectFileService.remove(defaultProject, uploadedFile.getId());
+
+        assertNull(projectFileService.fileContentBy(uploadedFile.getFileName(), defaultProject));
+    }
+
+    @Test
+    public void missingProjectFileIsNotCached() throws Exception {
+        GuavaCache cache = (GuavaCache) cacheCleaner.cleanProjectFilesCacheAndReturnIt();
+        saveProjectWithId(DEFAULT_PROJECT_ID);
+        ProjectEntry defaultProject = projectFolders.getByProjectId(DEFAULT_PROJECT_ID);
+
+        assertNull(projectFileService.fileContentBy("missing-file", defaultProject));
+
+        assertThat(cache.size(), equalTo(0L));
+    }
+
+    @Test
+    public void projectFileIsNotCachedAfterProjectRemoval() throws Exception {
+        cacheCleaner.cleanProjectFilesCacheAndReturnIt();
+        uploadFilesForDefaultProject(1);
+        ProjectFile uploadedFile = theOnlyOneUploadedFile();
+        ProjectEntry defaultProject = projectFolders.getByProjectId(DEFAULT_PROJECT_ID);
+        assertNotNull(projectFileService.fileContentBy(uploadedFile.getFileName(), defaultProject));
+
+        request(get("/projects/remove?projectId=" + DEFAULT_PROJECT_ID));
+
+        assertNull(projectFileService.fileContentBy(uploadedFile.getFileName(), defaultProject));
+    }
+
     @Test
     public void checkFileChangesFromRemoteLocation() throws Exception {
         uploadFilesForDefaultProject(1);
@@ -34,6 +34,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.*;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.context.ContextConfiguration;
@@ -42,6 +44,8 @@ import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.List;
 
@@ -178,14 +182,20 @@ public class PublicPageControllerTest {
     public void whenUploadingEditToExistingFileInJsonFormat_convertToXmlAndSaveToStorage() throws Exception {
         int fileId = 1;
         UserFile file = new UserFile();
-        when(jsonXMLConverter.convertJsonToXml(any(byte[].class)))
-                .thenReturn("xml content".getBytes());
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((OutputStream) invocation.getArguments()[1]).write("xml content".getBytes());
+                return null;
+            }
+        }).when(jsonXMLConverter).convertJsonToXml(any(InputStream.class), any(OutputStream.class), eq(true));
         when(userFileHelper.getUserFile(anyInt(), any(HttpServletRequest.class))).thenReturn(file);
 
         publicPageController.saveJsonAsXml(fileId, requestWillHaveContent(), model);
 
-        verify(jsonXMLConverter).convertJsonToXml(any(byte[].class));
+        verify(jsonXMLConverter).convertJsonToXml(any(InputStream.class), any(OutputStream.class), eq(true));
         verify(userFileService).updateContent(file);
+        assertThat(file.getContent(), equalTo("xml content".getBytes()));
     }
 
     @Test
@@ -197,8 +207,7 @@ public class PublicPageControllerTest {
         UserFile file1 = Mockito.mock(UserFile.class);
         UserFile file2 = Mockito.mock(UserFile.class);
         UserFile file5 = Mockito.mock(UserFile.class);
-        when(userFileService.getById(1)).thenReturn(file1);
-        when(userFileService.getById(5)).thenReturn(file5);
+        when(userFileService.getByIds(userFiles)).thenReturn(Arrays.asList(file1, file5));
 
         publicPageController.editUserFile(userFiles, model);
 
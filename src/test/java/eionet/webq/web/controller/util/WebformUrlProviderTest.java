@@ -33,8 +33,12 @@ import org.springframework.beans.factory.annotation.Value;
 
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
+
 @RunWith(MockitoJUnitRunner.class)
 public class WebformUrlProviderTest extends AbstractProjectsControllerTests {
 
@@ -84,4 +88,30 @@ public class WebformUrlProviderTest extends AbstractProjectsControllerTests {
         assertThat(webformUrlProvider.getWebformPath(webformFile), equalTo(webqUrl + "/webform/project/projectId/file/webform.html?"));
 
     }
+
+    @Test
+    public void setsLinksResolvingProjectIdentifiersOnce() {
+        ProjectFile xform = new ProjectFile();
+        xform.setId(1);
+        xform.setFileName("xform.xhtml");
+        ProjectFile htmlForm1 = new ProjectFile();
+        htmlForm1.setFileName("webform1.html");
+        htmlForm1.setProjectId(1);
+        ProjectFile htmlForm2 = new ProjectFile();
+        htmlForm2.setFileName("webform2.html");
+        htmlForm2.setProjectId(1);
+
+        ProjectEntry projectEntry = new ProjectEntry();
+        projectEntry.setId(1);
+        projectEntry.setProjectId("projectId");
+
+        when(projectService.getAllFolders()).thenReturn(Arrays.asList(projectEntry));
+
+        webformUrlProvider.setWebformLinks(Arrays.asList(xform, htmlForm1, htmlForm2));
+
+        assertThat(xform.getWebformLink(), equalTo(webqUrl + "/xform/?formId=1&"));
+        assertThat(htmlForm1.getWebformLink(), equalTo(webqUrl + "/webform/project/projectId/file/webform1.html?"));
+        assertThat(htmlForm2.getWebformLink(), equalTo(webqUrl + "/webform/project/projectId/file/webform2.html?"));
+        verify(projectService, times(1)).getAllFolders();
+    }
 }
@@ -20,6 +20,7 @@
  */
 package eionet.webq.web.interceptor;
 
+import eionet.webq.cache.GuavaCacheManager;
 import eionet.webq.converter.CookiesToStringBidirectionalConverter;
 import org.apache.http.ProtocolVersion;
 import org.apache.http.client.methods.CloseableHttpResponse;
@@ -42,11 +43,11 @@ import org.springframework.web.client.RestOperations;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import java.util.Arrays;
 
 import static eionet.webq.web.interceptor.CdrAuthorizationInterceptor.ALLOWED_AUTHORIZATION_FAILURES_COUNT;
 import static eionet.webq.web.interceptor.CdrAuthorizationInterceptor.AUTHORIZATION_FAILED_ATTRIBUTE;
 import static eionet.webq.web.interceptor.CdrAuthorizationInterceptor.AUTHORIZATION_TRY_COUNT;
-import org.apache.http.HttpResponse;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.hamcrest.core.StringContains.containsString;
 import static org.junit.Assert.assertFalse;
@@ -59,12 +60,16 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 /**
  */
 public class CdrAuthorizationInterceptorTest {
+    private static final String CDR_URL = "https://cdr.eionet.europa.eu";
+    private static final String ENVELOPE_URL = CDR_URL + "/envelope";
     private final String loginUrl = "login";
     @Mock
     CookiesToStringBidirectionalConverter cookiesConverter;
@@ -79,12 +84,18 @@ public class CdrAuthorizationInterceptorTest {
     public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
         interceptor.setCdrLoginMethod(loginUrl);
+        GuavaCacheManager cacheManager = new GuavaCacheManager();
+        cacheManager.setCacheNames(Arrays.asList(CdrAuthorizationVerdicts.CDR_AUTHORIZATIONS_CACHE));
+        interceptor.authorizationVerdicts = new CdrAuthorizationVerdicts();
+        interceptor.authorizationVerdicts.cacheManager = cacheManager;
     }
 
     @Test
     public void whenQueryForUrlThroughInterceptor_ifAuthorizationHeaderNotSpecified_CommenceBasicAuthorization() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setParameter("envelope", ENVELOPE_URL);
         MockHttpServletResponse response = new MockHttpServletResponse();
-        boolean proceed = interceptor.preHandle(new MockHttpServletRequest(), response, null);
+        boolean proceed = interceptor.preHandle(request, response, null);
 
         assertFalse(proceed);
         assertThatResponseIsBasicAuthorizationCommence(response);
@@ -92,43 +103,49 @@ public class CdrAuthorizationInterceptorTest {
 
     @Test
     public void whenQueryForUrlThroughInterceptor_ifAuthorizationNotEmptyAndResponseCodeIsFound_AllowToProceed() throws Exception {
-        MockHttpServletRequest request = requestWithNonEmptyAuthHeader();
-        when(restOperations.postForEntity(anyString(), anyObject(), any(Class.class))).thenReturn(
-                new ResponseEntity(HttpStatus.FOUND));
+        MockHttpServletRequest request = requestWithNonEmptyAuthHeaderForEnvelope();
+        restClientWillAuthorize();
 
         assertTrue(interceptor.preHandle(request, new MockHttpServletResponse(), null));
     }
 
     @Test
-    public void whenQueryForUrlThroughInterceptor_extractUrlFromBaseUriRequestParameter() throws Exception {
+    public void whenQueryForUrlThroughInterceptor_ifEnvelopeIsNotInEionetDomain_RejectWithoutCallingCdr() throws Exception {
         MockHttpServletRequest request = requestWithNonEmptyAuthHeader();
-        String expectedValue = "http://cdr.eu";
+        request.setParameter("envelope", "http://cdr.eu/envelope");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertFalse(interceptor.preHandle(request, response, null));
+
+        assertThat(response.getStatus(), equalTo(HttpServletResponse.SC_UNAUTHORIZED));
+        verifyZeroInteractions(restOperations);
+    }
+
+    @Test
+    public void whenQueryForUrlThroughInterceptor_extractUrlFromBaseUriRequestParameter() throws Exception {
+        MockHttpServletRequest request = requestWithNonEmptyAuthHeaderForEnvelope();
+        String expectedValue = "https://bdr.eionet.europa.eu";
         request.setParameter("base_uri", expectedValue);
-        assertUrlIsExtracted(request, "http://cdr.eu");
+        assertUrlIsExtracted(request, expectedValue);
     }
 
     @Test
     public void whenQueryForUrlThroughInterceptor_extractUrlFromEnvelopeRequestParameter() throws Exception {
-        MockHttpServletRequest request = requestWithNonEmptyAuthHeader();
-        String expectedValue = "http://cdr.eu";
-        request.setParameter("envelope", expectedValue + "/envelope");
-        assertUrlIsExtracted(request, "http://cdr.eu");
+        assertUrlIsExtracted(requestWithNonEmptyAuthHeaderForEnvelope(), CDR_URL);
     }
 
     @Test
     public void whenQueryForUrlThroughInterceptor_extractUrlFromInstanceRequestParameterAndUseCookies() throws Exception {
         MockHttpServletRequest request = requestWithCookies();
-        String expectedValue = "https://cdr.eionet.europa.eu/envelope";
-        request.setParameter("instance", "https://cdr.eionet.europa.eu/envelope/instance.xml");
-        assertUrlIsExtractedFromCookieRequest(request, "https://cdr.eionet.europa.eu/envelope");
+        request.setParameter("instance", ENVELOPE_URL + "/instance.xml");
+        assertUrlIsExtractedFromCookieRequest(request, ENVELOPE_URL);
     }
 
     @Test
     public void whenQueryForUrlThroughInterceptor_extractUrlFromInstanceRequestParameter() throws Exception {
         MockHttpServletRequest request = requestWithNonEmptyAuthHeader();
-        String expectedValue = "http://cdr.eu";
-        request.setParameter("instance", expectedValue + "/instance");
-        assertUrlIsExtracted(request, "http://cdr.eu");
+        request.setParameter("instance", ENVELOPE_URL + "/instance.xml");
+        assertUrlIsExtracted(request, CDR_URL);
     }
 
     @Test
@@ -136,7 +153,7 @@ public class CdrAuthorizationInterceptorTest {
         restClientWillThrowException();
 
         MockHttpServletResponse response = new MockHttpServletResponse();
-        boolean proceed = interceptor.preHandle(requestWithNonEmptyAuthHeader(), response, null);
+        boolean proceed = interceptor.preHandle(requestWithNonEmptyAuthHeaderForEnvelope(), response, null);
 
         assertFalse(proceed);
         assertThatResponseIsBasicAuthorizationCommence(response);
@@ -146,7 +163,7 @@ public class CdrAuthorizationInterceptorTest {
     public void whenQueryForUrlThroughInterceptor_IfLoginAttemptIsUnsuccessful_FailedAuthAttemptsCountIs1() throws Exception {
         restClientWillThrowException();
 
-        assertFalse(interceptor.preHandle(requestWithNonEmptyAuthHeader(), new MockHttpServletResponse(), null));
+        assertFalse(interceptor.preHandle(requestWithNonEmptyAuthHeaderForEnvelope(), new MockHttpServletResponse(), null));
 
         verify(session).setAttribute(AUTHORIZATION_TRY_COUNT, 1);
     }
@@ -157,7 +174,7 @@ public class CdrAuthorizationInterceptorTest {
         when(session.getAttribute(AUTHORIZATION_TRY_COUNT)).thenReturn(1);
         restClientWillThrowException();
 
-        assertFalse(interceptor.preHandle(requestWithNonEmptyAuthHeader(), new MockHttpServletResponse(), null));
+        assertFalse(interceptor.preHandle(requestWithNonEmptyAuthHeaderForEnvelope(), new MockHttpServletResponse(), null));
 
         verify(session).setAttribute(AUTHORIZATION_TRY_COUNT, 2);
     }
@@ -168,7 +185,7 @@ public class CdrAuthorizationInterceptorTest {
         when(session.getAttribute(AUTHORIZATION_TRY_COUNT)).thenReturn(ALLOWED_AUTHORIZATION_FAILURES_COUNT);
         restClientWillThrowException();
 
-        assertTrue(interceptor.preHandle(requestWithNonEmptyAuthHeader(), new MockHttpServletResponse(), null));
+        assertTrue(interceptor.preHandle(requestWithNonEmptyAuthHeaderForEnvelope(), new MockHttpServletResponse(), null));
     }
 
     @Test
@@ -177,13 +194,92 @@ public class CdrAuthorizationInterceptorTest {
         when(session.getAttribute(AUTHORIZATION_TRY_COUNT)).thenReturn(ALLOWED_AUTHORIZATION_FAILURES_COUNT);
         restClientWillThrowException();
 
-        MockHttpServletRequest request = requestWithNonEmptyAuthHeader();
+        MockHttpServletRequest request = requestWithNonEmptyAuthHeaderForEnvelope();
 
         assertTrue(interceptor.preHandle(request, new MockHttpServletResponse(), null));
         assertNotNull(request.getAttribute(AUTHORIZATION_FAILED_ATTRIBUTE));
         verify(session).removeAttribute(AUTHORIZATION_TRY_COUNT);
     }
 
+    @Test
+    public void whenQueryForUrlThroughInterceptor_ifAuthorizationVerdictIsCached_DoNotCallCdr() throws Exception {
+        restClientWillAuthorize();
+
+        assertTrue(interceptor.preHandle(requestWithNonEmptyAuthHeaderForEnvelope(), new MockHttpServletResponse(), null));
+        assertTrue(interceptor.preHandle(requestWithNonEmptyAuthHeaderForEnvelope(), new MockHttpServletResponse(), null));
+
+        verify(restOperations, times(1)).postForEntity(anyString(), anyObject(), any(Class.class));
+    }
+
+    @Test
+    public void whenQueryForUrlThroughInterceptor_ifAuthorizationVerdictIsNotCachedForCheckedUrl_CallCdr() throws Exception {
+        restClientWillAuthorize();
+        MockHttpServletRequest requestWithOtherBaseUri = requestWithNonEmptyAuthHeaderForEnvelope();
+        requestWithOtherBaseUri.setParameter("base_uri", "https://bdr.eionet.europa.eu");
+
+        assertTrue(interceptor.preHandle(requestWithNonEmptyAuthHeaderForEnvelope(), new MockHttpServletResponse(), null));
+        assertTrue(interceptor.preHandle(requestWithOtherBaseUri, new MockHttpServletResponse(), null));
+
+        ArgumentCaptor<String> urlCaptor = ArgumentCaptor.forClass(String.class);
+        verify(restOperations, times(2)).postForEntity(urlCaptor.capture(), anyObject(), any(Class.class));
+        assertThat(urlCaptor.getAllValues().get(1), containsString("https://bdr.eionet.europa.eu"));
+    }
+
+    @Test
+    public void whenQueryForUrlThroughInterceptor_ifCdrRejectsCredentials_DoNotCacheVerdict() throws Exception {
+        restClientWillThrowException();
+
+        assertFalse(interceptor.preHandle(requestWithNonEmptyAuthHeaderForEnvelope(), new MockHttpServletResponse(), null));
+        assertFalse(interceptor.preHandle(requestWithNonEmptyAuthHeaderForEnvelope(), new MockHttpServletResponse(), null));
+
+        verify(restOperations, times(2)).postForEntity(anyString(), anyObject(), any(Class.class));
+    }
+
+    @Test
+    public void whenRequestCompletesWithUnauthorizedStatus_InvalidateCachedVerdict() throws Exception {
+        restClientWillAuthorize();
+        MockHttpServletRequest request = requestWithNonEmptyAuthHeaderForEnvelope();
+        assertTrue(interceptor.preHandle(request, new MockHttpServletResponse(), null));
+        MockHttpServletResponse unauthorized = new MockHttpServletResponse();
+        unauthorized.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+
+        interceptor.afterCompletion(request, unauthorized, null, null);
+        assertTrue(interceptor.preHandle(requestWithNonEmptyAuthHeaderForEnvelope(), new MockHttpServletResponse(), null));
+
+        verify(restOperations, times(2)).postForEntity(anyString(), anyObject(), any(Class.class));
+    }
+
+    @Test
+    public void whenRequestCompletesSuccessfully_KeepCachedVerdict() throws Exception {
+        restClientWillAuthorize();
+        MockHttpServletRequest request = requestWithNonEmptyAuthHeaderForEnvelope();
+        assertTrue(interceptor.preHandle(request, new MockHttpServletResponse(), null));
+
+        interceptor.afterCompletion(request, new MockHttpServletResponse(), null, null);
+        assertTrue(interceptor.preHandle(requestWithNonEmptyAuthHeaderForEnvelope(), new MockHttpServletResponse(), null));
+
+        verify(restOperations, times(1)).postForEntity(anyString(), anyObject(), any(Class.class));
+    }
+
+    @Test
+    public void whenQueryForUrlThroughInterceptor_ifCookieVerdictIsCached_DoNotFetchEnvelope() throws Exception {
+        interceptor = spy(interceptor);
+        CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+        when(response.getStatusLine()).thenReturn(new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 200, "OK"));
+        doReturn(response).when(interceptor).fetchUrlWithoutRedirection(anyString(), (HttpHeaders) anyObject());
+        when(cookiesConverter.convertCookieToString(any(Cookie.class))).thenReturn("_ZopeId=\"68673848A6sbSTxqyEQ\"");
+        when(cookiesConverter.convertCookiesToString(any(Cookie[].class))).thenReturn("_ZopeId=\"68673848A6sbSTxqyEQ\"");
+
+        MockHttpServletRequest request = requestWithCookies();
+        request.setParameter("envelope", ENVELOPE_URL);
+        assertTrue(interceptor.preHandle(request, new MockHttpServletResponse(), null));
+        MockHttpServletRequest cachedRequest = requestWithCookies();
+        cachedRequest.setParameter("envelope", ENVELOPE_URL);
+        assertTrue(interceptor.preHandle(cachedRequest, new MockHttpServletResponse(), null));
+
+        verify(interceptor, times(1)).fetchUrlWithoutRedirection(anyString(), any(HttpHeaders.class));
+        assertNotNull(cachedRequest.getAttribute(CdrAuthorizationInterceptor.PARSED_COOKIES_ATTRIBUTE));
+    }
 
     @Test
     public void testIsInstanceUrlWhiteListedWithCorrectUrl() throws Exception{
@@ -198,14 +294,19 @@ public class CdrAuthorizationInterceptorTest {
         boolean result = interceptor.isInstanceURLWhiteListed(correctUrl);
         Assert.assertFalse(result);
     }
+
+    private void restClientWillAuthorize() {
+        when(restOperations.postForEntity(anyString(), anyObject(), any(Class.class))).thenReturn(
+                new ResponseEntity(HttpStatus.FOUND));
+    }
+
     private void restClientWillThrowException() {
         when(restOperations.postForEntity(anyString(), anyObject(), any(Class.class)))
                 .thenThrow(new HttpClientErrorException(HttpStatus.UNAUTHORIZED));
     }
 
     private void assertUrlIsExtracted(MockHttpServletRequest request, String expectedValue) throws Exception {
-        when(restOperations.postForEntity(anyString(), anyObject(), any(Class.class))).thenReturn(
-                new ResponseEntity(HttpStatus.FOUND));
+        restClientWillAuthorize();
 
         interceptor.preHandle(request, new MockHttpServletResponse(), null);
 
@@ -236,6 +337,12 @@ public class CdrAuthorizationInterceptorTest {
         return request;
     }
 
+    private MockHttpServletRequest requestWithNonEmptyAuthHeaderForEnvelope() {
+        MockHttpServletRequest request = requestWithNonEmptyAuthHeader();
+        request.setParameter("envelope", ENVELOPE_URL);
+        return request;
+    }
+
     private MockHttpServletRequest requestWithCookies() {
         MockHttpServletRequest request = new MockHttpServletRequest();
         Cookie cookie = new Cookie("_ZopeId", "\"68673848A6sbSTxqyEQ\"");
@@ -0,0 +1,90 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.web.interceptor;
+
+import eionet.webq.cache.GuavaCacheManager;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CdrAuthorizationVerdictsTest {
+    private static final String ENVELOPE = "https://cdr.eionet.europa.eu/envelope";
+    private static final String CREDENTIALS = "Basic 1jkahsd==";
+    private CdrAuthorizationVerdicts verdicts = new CdrAuthorizationVerdicts();
+
+    @Before
+    public void setUp() throws Exception {
+        GuavaCacheManager cacheManager = new GuavaCacheManager();
+        cacheManager.setCacheNames(Arrays.asList(CdrAuthorizationVerdicts.CDR_AUTHORIZATIONS_CACHE));
+        verdicts.cacheManager = cacheManager;
+    }
+
+    @Test
+    public void rememberedVerdictIsAuthorized() throws Exception {
+        String key = verdicts.key(ENVELOPE, CREDENTIALS);
+        assertFalse(verdicts.isAuthorized(key));
+
+        verdicts.authorized(key);
+
+        assertTrue(verdicts.isAuthorized(verdicts.key(ENVELOPE, CREDENTIALS)));
+    }
+
+    @Test
+    public void invalidatedVerdictIsNotAuthorized() throws Exception {
+        String key = verdicts.key(ENVELOPE, CREDENTIALS);
+        verdicts.authorized(key);
+
+        verdicts.invalidate(key);
+
+        assertFalse(verdicts.isAuthorized(key));
+    }
+
+    @Test
+    public void verdictsAreSeparatedByEnvelopeAndCredentials() throws Exception {
+        verdicts.authorized(verdicts.key(ENVELOPE, CREDENTIALS));
+
+        assertFalse(verdicts.isAuthorized(verdicts.key(ENVELOPE + "2", CREDENTIALS)));
+        assertFalse(verdicts.isAuthorized(verdicts.key(ENVELOPE, CREDENTIALS + "2")));
+    }
+
+    @Test
+    public void keyDoesNotContainCredentials() throws Exception {
+        String key = verdicts.key(ENVELOPE, CREDENTIALS);
+
+        assertFalse(key.contains(CREDENTIALS));
+        assertNotEquals(key, verdicts.key(ENVELOPE, "other"));
+    }
+
+    @Test
+    public void verdictsWithoutCredentialsAreNotCached() throws Exception {
+        String key = verdicts.key(ENVELOPE, " ");
+        verdicts.authorized(key);
+
+        assertNull(key);
+        assertFalse(verdicts.isAuthorized(key));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * The contents of this file are subject to the Mozilla Public
+ * License Version 1.1 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of
+ * the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS
+ * IS" basis, WITHOUT WARRANTY OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * rights and limitations under the License.
+ *
+ * The Original Code is Web Questionnaires 2
+ *
+ * The Initial Owner of the Original Code is European Environment
+ * Agency. Portions created by TripleDev are Copyright
+ * (C) European Environment Agency.  All Rights Reserved.
+ *
+ * Contributor(s):
+ *        Anton Dmitrijev
+ */
+package eionet.webq.xforms;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import eionet.webq.web.client.HttpClientConnectionPool;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.BasicHttpParams;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+@SuppressWarnings("deprecation")
+public class WebQConnectorFactoryTest {
+    private static final byte[] CONTENT = "content".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LARGE_CONTENT = new byte[WebQConnectorFactory.MAX_BUFFERED_RESPONSE_BYTES + 1];
+    private HttpServer server;
+    private String url;
+    private PoolingClientConnectionManager xformsConnectionManager = new PoolingClientConnectionManager();
+    private HttpClientConnectionPool pool =
+            new HttpClientConnectionPool(10, 4, 1000, 1000, 1000, xformsConnectionManager, 4, 2);
+    private WebQConnectorFactory connectorFactory = new WebQConnectorFactory();
+
+    @Before
+    public void startServer() throws Exception {
+        Arrays.fill(LARGE_CONTENT, (byte) 'a');
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new ContentHandler(CONTENT, CONTENT.length));
+        server.createContext("/chunked", new ContentHandler(CONTENT, 0));
+        server.createContext("/large", new ContentHandler(LARGE_CONTENT, 0));
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/";
+        connectorFactory.httpClientConnectionPool = pool;
+        connectorFactory.xformsConnectionManager = xformsConnectionManager;
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.stop(0);
+        pool.destroy();
+        xformsConnectionManager.shutdown();
+    }
+
+    @Test
+    public void releasesConnectionBeforeSmallResponseBodyIsRead() throws Exception {
+        HttpResponse response = connectorFactory.getHttpClient(new BasicHttpParams()).execute(new HttpGet(url));
+
+        assertThat(pool.getLeased(), equalTo(0));
+        assertThat(IOUtils.toByteArray(response.getEntity().getContent()), equalTo(CONTENT));
+    }
+
+    @Test
+    public void releasesConnectionBeforeSmallChunkedResponseBodyIsRead() throws Exception {
+        HttpResponse response = connectorFactory.getHttpClient(new BasicHttpParams())
+                .execute(new HttpGet(url + "chunked"));
+
+        assertThat(pool.getLeased(), equalTo(0));
+        assertThat(IOUtils.toByteArray(response.getEntity().getContent()), equalTo(CONTENT));
+    }
+
+    @Test
+    public void streamsLargeResponseBodyAndReleasesConnectionWhenBodyIsRead() throws Exception {
+        HttpResponse response = connectorFactory.getHttpClient(new BasicHttpParams())
+                .execute(new HttpGet(url + "large"));
+
+        assertThat(pool.getLeased(), equalTo(1));
+        assertThat(IOUtils.toByteArray(response.getEntity().getContent()), equalTo(LARGE_CONTENT));
+        assertThat(pool.getLeased(), equalTo(0));
+    }
+
+    @Test
+    public void xformsConnectionsAreLimitedToReservedPartOfMaxTotal() throws Exception {
+        assertThat(xformsConnectionManager.getMaxTotal(), equalTo(4));
+        assertThat(xformsConnectionManager.getDefaultMaxPerRoute(), equalTo(2));
+        assertThat(pool.getMaxTotal(), equalTo(10));
+    }
+
+    /**
+     * Responds with given content, zero length means chunked response.
+     */
+    private static class ContentHandler implements HttpHandler {
+        private final byte[] content;
+        private final int length;
+
+        ContentHandler(byte[] content, int length) {
+            this.content = content;
+            this.length = length;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            exchange.sendResponseHeaders(200, length);
+            OutputStream body = exchange.getResponseBody();
+            body.write(content);
+            body.close();
+        }
+    }
+}
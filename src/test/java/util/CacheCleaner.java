@@ -33,4 +33,10 @@ public class CacheCleaner {
         cache.clear();
         return cache;
     }
+
+    public Cache cleanProjectFilesCacheAndReturnIt() {
+        Cache cache = cacheManager.getCache("projectFiles");
+        cache.clear();
+        return cache;
+    }
 }
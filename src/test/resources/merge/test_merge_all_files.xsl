@@ -0,0 +1,18 @@
+<xsl:stylesheet version="1.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+    <xsl:output indent="yes"/>
+    <xsl:param name="allFiles"/>
+
+    <xsl:template match="/">
+        <xsl:variable name="files" select="document($allFiles)/files/file"/>
+        <beans>
+            <xsl:attribute name="version">
+                <xsl:value-of select="document($files[last()]/@href)/beans/@version"/>
+            </xsl:attribute>
+
+            <xsl:for-each select="$files">
+                <xsl:copy-of select="document(@href)/beans/bean"/>
+            </xsl:for-each>
+        </beans>
+    </xsl:template>
+
+</xsl:stylesheet>